@@ -0,0 +1,97 @@
+package hudson.plugins.redmine;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole metrics build, {@link RedmineMetricsCalculator#calc()}, against a {@link StubRedmine}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class CalculatorBenchmark {
+
+    public enum FetchMode {
+        /** Downloads every issue of every version. */
+        FULL,
+        /** One count query per (version, status). */
+        COUNT_ONLY,
+        /** Merges the issues updated since the previous build into a snapshot. */
+        INCREMENTAL
+    }
+
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int issues;
+
+    @Param({ "10" })
+    public int versions;
+
+    @Param({ "FULL", "COUNT_ONLY", "INCREMENTAL" })
+    public FetchMode mode;
+
+    @Param({ "0", "3" })
+    public int prefetchPages;
+
+    @Param({ "4" })
+    public int threads;
+
+    private StubRedmine redmine;
+    private File snapshotDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        redmine = new StubRedmine(issues, versions);
+        redmine.start();
+        if (mode == FetchMode.INCREMENTAL) {
+            snapshotDir = Files.createTempDirectory("redmine-benchmark").toFile();
+            // the first build of a job fetches everything, later ones only the churn
+            newCalculator().calc();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        redmine.stop();
+        if (snapshotDir != null) {
+            new File(snapshotDir, MetricsSnapshot.FILE_NAME).delete();
+            snapshotDir.delete();
+        }
+    }
+
+    @Benchmark
+    public List<MetricsResult> calc() throws MetricsException {
+        return newCalculator().calc();
+    }
+
+    private RedmineMetricsCalculator newCalculator() {
+        RedmineMetricsCalculator calculator = new RedmineMetricsCalculator(redmine.getUrl(), "APIKEY",
+                StubRedmine.PROJECT_IDENTIFIER, "", "Support", "Rejected");
+        calculator.setThreads(threads);
+        calculator.setPrefetchPages(prefetchPages);
+        calculator.setCountOnly(mode == FetchMode.COUNT_ONLY);
+        if (mode == FetchMode.INCREMENTAL) {
+            calculator.setSnapshotFile(new File(snapshotDir, MetricsSnapshot.FILE_NAME));
+            calculator.setFullSyncInterval(365, TimeUnit.DAYS);
+        }
+        return calculator;
+    }
+}
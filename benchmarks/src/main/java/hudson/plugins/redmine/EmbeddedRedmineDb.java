@@ -0,0 +1,261 @@
+package hudson.plugins.redmine;
+
+import hudson.plugins.redmine.util.CipherUtil;
+import hudson.plugins.redmine.util.Constants;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Properties;
+
+/**
+ * Embedded H2 database holding the Redmine <code>users</code> table, in MySQL or PostgreSQL
+ * compatibility mode, for {@link RedmineSecurityRealm} to log in against.
+ *
+ * The realm connects with <code>jdbc:mysql:</code> and <code>jdbc:postgresql:</code> URLs, so the
+ * real drivers are deregistered and a driver answering those URLs with H2 connections takes their
+ * place. The catalog queries H2 does not know (<code>SHOW FIELDS</code> and <code>pg_tables</code>)
+ * are rewritten to their H2 equivalents, and the streaming fetch size of Connector/J is ignored.
+ *
+ * User <code>i</code> (1-based) is <code>user{i}</code> with password <code>password{i}</code>,
+ * hashed as Redmine 1.2 does. Like in Redmine, <code>login</code> is not indexed.
+ */
+public class EmbeddedRedmineDb {
+
+    public static final String DATABASE_NAME = "redmine";
+    public static final String DB_USER = "sa";
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final String dbms;
+    private final int users;
+
+    private Connection conn;
+
+    /**
+     * @param dbms {@link Constants#DBMS_MYSQL} or {@link Constants#DBMS_POSTGRESQL}
+     */
+    public EmbeddedRedmineDb(String dbms, int users) {
+        this.dbms = dbms;
+        this.users = users;
+    }
+
+    public static String username(int user) {
+        return "user" + user;
+    }
+
+    public static String password(int user) {
+        return "password" + user;
+    }
+
+    public void start() throws Exception {
+        RedirectingDriver.install();
+        conn = new org.h2.Driver().connect(h2Url(dbms, DATABASE_NAME), credentials());
+
+        Statement statement = conn.createStatement();
+        try {
+            statement.execute("DROP TABLE IF EXISTS users");
+            statement.execute("CREATE TABLE users (id INT PRIMARY KEY, login VARCHAR(255) NOT NULL,"
+                    + " hashed_password VARCHAR(40), salt VARCHAR(64), status INT, type VARCHAR(30),"
+                    + " lastname VARCHAR(255), updated_on TIMESTAMP)");
+            statement.execute("CREATE INDEX index_users_on_id_and_type ON users (id, type)");
+        } finally {
+            statement.close();
+        }
+
+        PreparedStatement insert = conn.prepareStatement("INSERT INTO users VALUES (?, ?, ?, ?, 1, 'User', ?, ?)");
+        try {
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            for (int user = 1; user <= users; user++) {
+                String salt = CipherUtil.encodeSHA1("salt" + user);
+                insert.setInt(1, user);
+                insert.setString(2, username(user));
+                insert.setString(3, CipherUtil.encodeSHA1(salt + CipherUtil.encodeSHA1(password(user))));
+                insert.setString(4, salt);
+                insert.setString(5, "User " + user);
+                insert.setTimestamp(6, now);
+                insert.addBatch();
+                if (user % BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        } finally {
+            insert.close();
+        }
+    }
+
+    public void stop() throws SQLException {
+        Statement statement = conn.createStatement();
+        try {
+            // closes the connections still held by the realm's pool
+            statement.execute("SHUTDOWN");
+        } finally {
+            conn.close();
+        }
+    }
+
+    /**
+     * A realm on this database, with the default login table and columns.
+     */
+    public RedmineSecurityRealm newRealm() {
+        String port = Constants.DBMS_MYSQL.equals(dbms) ? Constants.DEFAULT_PORT_MYSQL : Constants.DEFAULT_PORT_POSTGRESQL;
+        return new RedmineSecurityRealm(dbms, "127.0.0.1", DATABASE_NAME, port, DB_USER, "", Constants.VERSION_1_2_0,
+                "", "", "", "");
+    }
+
+    private static String h2Url(String dbms, String databaseName) {
+        return "jdbc:h2:mem:" + databaseName + "-" + dbms + ";MODE=" + dbms + ";DATABASE_TO_LOWER=TRUE";
+    }
+
+    private static Properties credentials() {
+        Properties info = new Properties();
+        info.setProperty("user", DB_USER);
+        info.setProperty("password", "");
+        return info;
+    }
+
+    /**
+     * Answers the MySQL and PostgreSQL URLs of the realm with connections to the embedded database.
+     */
+    static final class RedirectingDriver implements Driver {
+
+        private static final String MYSQL_PREFIX = "jdbc:mysql://";
+        private static final String POSTGRESQL_PREFIX = "jdbc:postgresql://";
+
+        private static boolean installed;
+
+        private final Driver h2 = new org.h2.Driver();
+
+        static synchronized void install() throws SQLException {
+            if (installed) {
+                return;
+            }
+            for (String driverName : new String[] { Constants.JDBC_DRIVER_NAME_MYSQL, Constants.JDBC_DRIVER_NAME_POSTGRESQL }) {
+                try {
+                    // registers the real driver now, so that it is not registered again after this
+                    Class.forName(driverName);
+                } catch (ClassNotFoundException e) {
+                    // nothing to replace
+                }
+            }
+            for (Driver driver : Collections.list(DriverManager.getDrivers())) {
+                if (accepts(driver, MYSQL_PREFIX) || accepts(driver, POSTGRESQL_PREFIX)) {
+                    DriverManager.deregisterDriver(driver);
+                }
+            }
+            DriverManager.registerDriver(new RedirectingDriver());
+            installed = true;
+        }
+
+        private static boolean accepts(Driver driver, String prefix) {
+            try {
+                return driver.acceptsURL(prefix + "localhost/" + DATABASE_NAME);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith(MYSQL_PREFIX) || url.startsWith(POSTGRESQL_PREFIX);
+        }
+
+        @Override
+        public Connection connect(String url, Properties info) throws SQLException {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            String dbms = url.startsWith(MYSQL_PREFIX) ? Constants.DBMS_MYSQL : Constants.DBMS_POSTGRESQL;
+            String databaseName = url.substring(url.lastIndexOf('/') + 1);
+            if (databaseName.indexOf('?') >= 0) {
+                databaseName = databaseName.substring(0, databaseName.indexOf('?'));
+            }
+            Connection connection = h2.connect(h2Url(dbms, databaseName), info);
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+                    new Handler(connection));
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        static String rewrite(String sql) {
+            if (sql.startsWith("SHOW FIELDS FROM ")) {
+                return "SHOW COLUMNS FROM " + sql.substring("SHOW FIELDS FROM ".length());
+            }
+            if (sql.equals("select tablename from pg_tables")) {
+                return "SELECT table_name FROM information_schema.tables";
+            }
+            return sql;
+        }
+
+        /**
+         * Rewrites the SQL of prepared statements, and drops negative fetch sizes on them.
+         */
+        private static final class Handler implements InvocationHandler {
+            private final Object target;
+
+            Handler(Object target) {
+                this.target = target;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("equals") && args.length == 1) {
+                    return proxy == args[0];
+                }
+                if (method.getName().equals("setFetchSize") && (Integer) args[0] < 0) {
+                    return null;
+                }
+                boolean prepare = method.getName().equals("prepareStatement");
+                if (prepare) {
+                    args[0] = rewrite((String) args[0]);
+                }
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                if (prepare) {
+                    return Proxy.newProxyInstance(Handler.class.getClassLoader(),
+                            new Class<?>[] { PreparedStatement.class }, new Handler(result));
+                }
+                return result;
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package hudson.plugins.redmine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.taskadapter.redmineapi.bean.IssueStatus;
+import com.taskadapter.redmineapi.bean.Tracker;
+
+/**
+ * The client-side part of a metrics build: ignored trackers and statuses filtered out of the
+ * fetched issues and the rest counted per status, either while streaming pages or from a
+ * {@link MetricsSnapshot}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmark {
+
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int issues;
+
+    @Param({ "10" })
+    public int versions;
+
+    /** Whether the ignored names were resolved to ids, or are matched by name. */
+    @Param({ "true", "false" })
+    public boolean resolved;
+
+    private List<List<IssueRecord>> pages;
+    private MetricsSnapshot snapshot;
+    private Set<Integer> versionIds;
+    private IssueFilter filter;
+
+    @Setup
+    public void setUp() {
+        pages = new ArrayList<List<IssueRecord>>();
+        List<IssueRecord> page = null;
+        for (int id = 1; id <= issues; id++) {
+            if (page == null || page.size() == IssuePages.PAGE_SIZE) {
+                page = new ArrayList<IssueRecord>(IssuePages.PAGE_SIZE);
+                pages.add(page);
+            }
+            page.add(StubRedmine.record(id, versions));
+        }
+
+        snapshot = new MetricsSnapshot("benchmark");
+        snapshot.startSync(true);
+        for (List<IssueRecord> p : pages) {
+            snapshot.merge(p);
+        }
+        snapshot.finishSync(System.currentTimeMillis());
+
+        versionIds = new HashSet<Integer>();
+        for (int v = 0; v <= versions; v++) {
+            versionIds.add(v);
+        }
+
+        filter = new IssueFilter("Support", "Rejected");
+        if (resolved) {
+            List<Tracker> trackers = new ArrayList<Tracker>();
+            for (int i = 0; i < StubRedmine.TRACKERS.length; i++) {
+                Tracker tracker = new Tracker();
+                tracker.setId(i + 1);
+                tracker.setName(StubRedmine.TRACKERS[i]);
+                trackers.add(tracker);
+            }
+            filter.resolveTrackers(trackers);
+            List<IssueStatus> statuses = new ArrayList<IssueStatus>();
+            for (int i = 0; i < StubRedmine.STATUSES.length; i++) {
+                statuses.add(new IssueStatus(i + 1, StubRedmine.STATUSES[i]));
+            }
+            filter.resolveStatuses(statuses);
+        }
+    }
+
+    @Benchmark
+    public Map<String, Integer> streamedPages() {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (List<IssueRecord> page : pages) {
+            for (IssueRecord issue : page) {
+                if (filter.accepts(issue.getTrackerId(), issue.getTrackerName(), issue.getStatusId(),
+                        issue.getStatusName())) {
+                    Integer count = counts.get(issue.getStatusName());
+                    counts.put(issue.getStatusName(), count == null ? 1 : count + 1);
+                }
+            }
+        }
+        return counts;
+    }
+
+    @Benchmark
+    public MetricsCube snapshotCube() {
+        MetricsCube cube = new MetricsCube();
+        snapshot.fillCube(versionIds, filter, cube);
+        return cube;
+    }
+
+    @Benchmark
+    public MetricsCube streamedPagesCube() {
+        MetricsCube cube = new MetricsCube();
+        for (List<IssueRecord> page : pages) {
+            for (IssueRecord issue : page) {
+                if (filter.accepts(issue.getTrackerId(), issue.getTrackerName(), issue.getStatusId(),
+                        issue.getStatusName())) {
+                    cube.add(issue);
+                }
+            }
+        }
+        return cube;
+    }
+
+    @Benchmark
+    public MetricsCube snapshotSingleVersion() {
+        MetricsCube cube = new MetricsCube();
+        snapshot.fillCube(new HashSet<Integer>(Arrays.asList(1)), filter, cube);
+        return cube;
+    }
+}
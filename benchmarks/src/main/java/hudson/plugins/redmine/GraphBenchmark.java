@@ -0,0 +1,61 @@
+package hudson.plugins.redmine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jfree.data.category.DefaultCategoryDataset;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the trend graph's data from the metrics stored with each build.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    public int builds;
+
+    /** Every tenth build has no metrics, which the dataset fills with zeros. */
+    @Param({ "10" })
+    public int emptyEvery;
+
+    private List<String> labels;
+    private List<List<MetricsResult>> metricsLists;
+
+    @Setup
+    public void setUp() {
+        labels = new ArrayList<String>(builds);
+        metricsLists = new ArrayList<List<MetricsResult>>(builds);
+        for (int b = 1; b <= builds; b++) {
+            labels.add("#" + b);
+            List<MetricsResult> metrics = new ArrayList<MetricsResult>();
+            if (b % emptyEvery != 0) {
+                for (int s = 0; s < StubRedmine.STATUSES.length; s++) {
+                    metrics.add(new MetricsResult(StubRedmine.STATUSES[s], (b * 31 + s * 7) % 500));
+                }
+            }
+            metricsLists.add(metrics);
+        }
+    }
+
+    @Benchmark
+    public DefaultCategoryDataset createDataset() {
+        return MetricsGraph.createDataset(labels, metricsLists);
+    }
+}
@@ -0,0 +1,85 @@
+package hudson.plugins.redmine;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.userdetails.UserDetails;
+
+/**
+ * Concurrent logins of random users through {@link RedmineSecurityRealm#authenticate2}, against an
+ * {@link EmbeddedRedmineDb}. The time spent in each phase of the logins, from {@link LoginMetrics},
+ * is printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(16)
+@Fork(1)
+public class LoginBenchmark {
+
+    @Param({ "MySQL", "PostgreSQL" })
+    public String dbms;
+
+    @Param({ "1000", "100000" })
+    public int users;
+
+    @Param({ "1", "10" })
+    public int maxConnections;
+
+    @Param({ "0", "300" })
+    public int cacheTtlSeconds;
+
+    @Param({ "false", "true" })
+    public boolean userDirectory;
+
+    private EmbeddedRedmineDb db;
+    private RedmineSecurityRealm realm;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // the realm logs every login at INFO
+        Logger.getLogger(RedmineSecurityRealm.class.getName()).setLevel(java.util.logging.Level.WARNING);
+        db = new EmbeddedRedmineDb(dbms, users);
+        db.start();
+        realm = db.newRealm();
+        realm.setMaxConnections(maxConnections);
+        realm.setCacheTtlSeconds(cacheTtlSeconds);
+        realm.setUserDirectory(userDirectory);
+        if (userDirectory) {
+            realm.getUserDirectory().sync();
+        }
+        new LoginMetrics().reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        System.out.println();
+        for (LoginMetrics.Phase phase : LoginMetrics.Phase.values()) {
+            System.out.println(String.format("%-12s %s", phase, LoginMetrics.get(phase)));
+        }
+        db.stop();
+    }
+
+    @Benchmark
+    public UserDetails login() {
+        int user = 1 + ThreadLocalRandom.current().nextInt(users);
+        return realm.authenticate2(EmbeddedRedmineDb.username(user), EmbeddedRedmineDb.password(user));
+    }
+}
@@ -0,0 +1,269 @@
+package hudson.plugins.redmine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded Redmine serving one project with synthetic issues, enough of the REST API for
+ * {@link RedmineMetricsCalculator}.
+ *
+ * Issue <code>i</code> (1-based) has status <code>i % 5</code>, tracker <code>i % 3</code> and
+ * version <code>i % (versions + 1)</code>, <code>0</code> meaning none, priority <code>i % 4</code> and
+ * one of {@link #ASSIGNEES} users or nobody, so that every query can be
+ * answered without storing the issues. Queries with <code>updated_on</code> return one issue in
+ * {@link #CHURN}, standing for the issues changed since the previous build.
+ */
+public class StubRedmine {
+
+    public static final int PROJECT_ID = 1;
+    public static final String PROJECT_IDENTIFIER = "bench";
+
+    public static final String[] STATUSES = { "New", "In Progress", "Resolved", "Closed", "Rejected" };
+    public static final String[] TRACKERS = { "Bug", "Feature", "Support" };
+
+    public static final String[] PRIORITIES = { "Low", "Normal", "High", "Urgent" };
+
+    public static final int ASSIGNEES = 50;
+
+    public static final int CHURN = 100;
+
+    private final int issues;
+    private final int versions;
+    private final ConcurrentMap<String, int[]> matches = new ConcurrentHashMap<String, int[]>();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public StubRedmine(int issues, int versions) {
+        this.issues = issues;
+        this.versions = versions;
+    }
+
+    public static int statusOf(int issue) {
+        return 1 + issue % STATUSES.length;
+    }
+
+    public static int trackerOf(int issue) {
+        return 1 + issue % TRACKERS.length;
+    }
+
+    public static int versionOf(int issue, int versions) {
+        return issue % (versions + 1);
+    }
+
+    public static int priorityOf(int issue) {
+        return 1 + issue % PRIORITIES.length;
+    }
+
+    public static int assigneeOf(int issue) {
+        return issue % (ASSIGNEES + 1);
+    }
+
+    public static IssueRecord record(int issue, int versions) {
+        int status = statusOf(issue);
+        int tracker = trackerOf(issue);
+        int version = versionOf(issue, versions);
+        int priority = priorityOf(issue);
+        int assignee = assigneeOf(issue);
+        return new IssueRecord(issue, tracker, TRACKERS[tracker - 1], status, STATUSES[status - 1], version,
+                version == 0 ? null : "v" + version, priority, PRIORITIES[priority - 1], assignee,
+                assignee == 0 ? null : "User " + assignee);
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+        executor = Executors.newFixedThreadPool(16);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        String body;
+        if (path.equals("/projects.json")) {
+            body = "{\"projects\":[{\"id\":" + PROJECT_ID + ",\"identifier\":\"" + PROJECT_IDENTIFIER
+                    + "\",\"name\":\"Bench\"}],\"total_count\":1,\"offset\":0,\"limit\":100}";
+        } else if (path.equals("/projects/" + PROJECT_ID + "/versions.json")) {
+            StringBuilder sb = new StringBuilder("{\"versions\":[");
+            for (int v = 1; v <= versions; v++) {
+                sb.append(v > 1 ? "," : "").append("{\"id\":").append(v).append(",\"name\":\"v").append(v)
+                        .append("\"}");
+            }
+            body = sb.append("],\"total_count\":").append(versions).append('}').toString();
+        } else if (path.equals("/trackers.json")) {
+            body = "{\"trackers\":" + dictionary(TRACKERS) + "}";
+        } else if (path.equals("/issue_statuses.json")) {
+            body = "{\"issue_statuses\":" + dictionary(STATUSES) + "}";
+        } else if (path.equals("/issues.json")) {
+            body = issues(params);
+        } else {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = new GZIPOutputStream(exchange.getResponseBody());
+            out.write(bytes);
+            out.close();
+        } else {
+            exchange.sendResponseHeaders(200, bytes.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(bytes);
+            out.close();
+        }
+    }
+
+    private static String dictionary(String[] names) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < names.length; i++) {
+            sb.append(i > 0 ? "," : "").append("{\"id\":").append(i + 1).append(",\"name\":\"").append(names[i])
+                    .append("\"}");
+        }
+        return sb.append(']').toString();
+    }
+
+    private String issues(Map<String, String> params) {
+        int[] ids = matching(params);
+        int offset = params.containsKey("offset") ? Integer.parseInt(params.get("offset")) : 0;
+        int limit = params.containsKey("limit") ? Integer.parseInt(params.get("limit")) : 25;
+
+        StringBuilder sb = new StringBuilder(limit * 200);
+        sb.append("{\"issues\":[");
+        for (int i = offset; i < Math.min(ids.length, offset + limit); i++) {
+            int id = ids[i];
+            int status = statusOf(id);
+            int tracker = trackerOf(id);
+            int version = versionOf(id, versions);
+            int priority = priorityOf(id);
+            int assignee = assigneeOf(id);
+            sb.append(i > offset ? "," : "");
+            sb.append("{\"id\":").append(id);
+            sb.append(",\"project\":{\"id\":").append(PROJECT_ID).append(",\"name\":\"Bench\"}");
+            sb.append(",\"tracker\":{\"id\":").append(tracker).append(",\"name\":\"").append(TRACKERS[tracker - 1])
+                    .append("\"}");
+            sb.append(",\"status\":{\"id\":").append(status).append(",\"name\":\"").append(STATUSES[status - 1])
+                    .append("\"}");
+            if (version != 0) {
+                sb.append(",\"fixed_version\":{\"id\":").append(version).append(",\"name\":\"v").append(version)
+                        .append("\"}");
+            }
+            sb.append(",\"priority\":{\"id\":").append(priority).append(",\"name\":\"")
+                    .append(PRIORITIES[priority - 1]).append("\"}");
+            if (assignee != 0) {
+                sb.append(",\"assigned_to\":{\"id\":").append(assignee).append(",\"name\":\"User ")
+                        .append(assignee).append("\"}");
+            }
+            sb.append(",\"subject\":\"Issue ").append(id).append("\"}");
+        }
+        sb.append("],\"total_count\":").append(ids.length);
+        sb.append(",\"offset\":").append(offset).append(",\"limit\":").append(limit).append('}');
+        return sb.toString();
+    }
+
+    /**
+     * Ids of the issues matching the filters of a query, computed once per distinct filter.
+     */
+    private int[] matching(Map<String, String> params) {
+        final String version = params.get("fixed_version_id");
+        final String status = params.get("status_id");
+        final String tracker = params.get("tracker_id");
+        final boolean updated = params.containsKey("updated_on");
+        String key = version + ';' + status + ';' + tracker + ';' + updated;
+        int[] ids = matches.get(key);
+        if (ids != null) {
+            return ids;
+        }
+        ids = new int[issues];
+        int n = 0;
+        for (int id = 1; id <= issues; id++) {
+            if (updated && id % CHURN != 0) {
+                continue;
+            }
+            if (matches(version, versionOf(id, versions)) && matches(status, statusOf(id))
+                    && matches(tracker, trackerOf(id))) {
+                ids[n++] = id;
+            }
+        }
+        ids = Arrays.copyOf(ids, n);
+        matches.putIfAbsent(key, ids);
+        return ids;
+    }
+
+    /**
+     * Evaluates a Redmine short filter: <code>*</code>, <code>!*</code>, <code>1|2</code> or
+     * <code>!1|2</code>. A missing filter matches everything.
+     */
+    private static boolean matches(String filter, int value) {
+        if (filter == null || filter.equals("*")) {
+            return true;
+        }
+        if (filter.equals("!*")) {
+            return value == 0;
+        }
+        boolean negate = filter.startsWith("!");
+        boolean found = false;
+        for (String s : (negate ? filter.substring(1) : filter).split("\\|")) {
+            if (Integer.parseInt(s) == value) {
+                found = true;
+                break;
+            }
+        }
+        return negate != found;
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<String, String>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                        URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+}
@@ -0,0 +1,223 @@
+package hudson.plugins.redmine;
+
+import hudson.Util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.security.core.userdetails.UserDetails;
+
+/**
+ * Recent results of {@link RedmineSecurityRealm}, so that clients authenticating over and over
+ * with an API token or from the CLI do not query the Redmine database every time.
+ *
+ * Three kinds of entries are kept, least recently used first out:
+ * <ul>
+ * <li>successful logins, keyed by the username and an HMAC of the password under a key that only
+ * lives in memory, so the cache never holds anything a password could be recovered from;</li>
+ * <li>user details, for {@link RedmineSecurityRealm#loadUserByUsername2};</li>
+ * <li>unknown usernames, for at most {@link #MAX_NEGATIVE_TTL}, so that repeated requests for a
+ * user that does not exist do not reach the database either. They have a smaller bound of their
+ * own, so that a burst of bad usernames cannot evict the logins.</li>
+ * </ul>
+ * A password changed in Redmine is picked up once the entry expires. Expired logins and users
+ * stay for {@link #MAX_STALE} more, only to be served when the database is too busy to be asked.
+ */
+final class AuthCache {
+
+    static final int DEFAULT_TTL_SECONDS = 300;
+
+    static final int MAX_ENTRIES = 1000;
+
+    static final int MAX_UNKNOWN = 200;
+
+    static final long MAX_NEGATIVE_TTL = TimeUnit.SECONDS.toMillis(30);
+
+    static final long MAX_STALE = TimeUnit.MINUTES.toMillis(15);
+
+    private static final String HMAC = "HmacSHA256";
+
+    private static final class Entry {
+        private final UserDetails details;
+        private final long expires;
+
+        Entry(UserDetails details, long expires) {
+            this.details = details;
+            this.expires = expires;
+        }
+    }
+
+    private final long ttl;
+    private final long negativeTtl;
+    private final SecretKeySpec key;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /** Logins and users, least recently used first; guarded by itself. */
+    private final Map<String, Entry> entries = newLruMap(MAX_ENTRIES);
+
+    /** Unknown usernames, least recently used first; guarded by itself. */
+    private final Map<String, Entry> unknown = newLruMap(MAX_UNKNOWN);
+
+    AuthCache(long ttl, TimeUnit unit) {
+        this.ttl = unit.toMillis(ttl);
+        this.negativeTtl = Math.min(this.ttl, MAX_NEGATIVE_TTL);
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, HMAC);
+    }
+
+    /**
+     * @return <code>null</code> unless this username and password logged in successfully recently
+     */
+    UserDetails getLogin(String username, String password) {
+        return count(get(entries, loginKey(username, password), 0));
+    }
+
+    /**
+     * Like {@link #getLogin}, but also accepts a login expired less than {@link #MAX_STALE} ago.
+     */
+    UserDetails getStaleLogin(String username, String password) {
+        Entry entry = get(entries, loginKey(username, password), MAX_STALE);
+        return entry == null ? null : entry.details;
+    }
+
+    void putLogin(String username, String password, UserDetails details) {
+        put(entries, loginKey(username, password), details, ttl);
+        put(entries, userKey(username), details, ttl);
+    }
+
+    /**
+     * @return <code>null</code> unless the user was found recently
+     */
+    UserDetails getUser(String username) {
+        return count(get(entries, userKey(username), 0));
+    }
+
+    /**
+     * Like {@link #getUser}, but also accepts a user expired less than {@link #MAX_STALE} ago.
+     */
+    UserDetails getStaleUser(String username) {
+        Entry entry = get(entries, userKey(username), MAX_STALE);
+        return entry == null ? null : entry.details;
+    }
+
+    void putUser(String username, UserDetails details) {
+        put(entries, userKey(username), details, ttl);
+    }
+
+    /**
+     * Whether the username was recently looked up and not found.
+     */
+    boolean isUnknown(String username) {
+        Entry entry = get(unknown, username, 0);
+        if (entry != null) {
+            hits.incrementAndGet();
+        }
+        return entry != null;
+    }
+
+    void putUnknown(String username) {
+        put(unknown, username, null, negativeTtl);
+    }
+
+    void flush() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        synchronized (unknown) {
+            unknown.clear();
+        }
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    int getSize() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        synchronized (unknown) {
+            return size + unknown.size();
+        }
+    }
+
+    private UserDetails count(Entry entry) {
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.details;
+    }
+
+    /**
+     * @param stale how long after its expiry the entry is still returned
+     */
+    private Entry get(Map<String, Entry> map, String k, long stale) {
+        if (ttl <= 0) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (map) {
+            Entry entry = map.get(k);
+            if (entry == null || entry.expires > now) {
+                return entry;
+            }
+            if (entry.expires + MAX_STALE <= now) {
+                map.remove(k);
+                return null;
+            }
+            return entry.expires + stale > now ? entry : null;
+        }
+    }
+
+    private static void put(Map<String, Entry> map, String k, UserDetails details, long timeToLive) {
+        if (timeToLive <= 0) {
+            return;
+        }
+        Entry entry = new Entry(details, System.currentTimeMillis() + timeToLive);
+        synchronized (map) {
+            map.put(k, entry);
+        }
+    }
+
+    private static Map<String, Entry> newLruMap(final int maxSize) {
+        return new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    private String loginKey(String username, String password) {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(key);
+            return "L:" + username + '\u0000' + Util.toHexString(mac.doFinal(password.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String userKey(String username) {
+        return "U:" + username;
+    }
+}
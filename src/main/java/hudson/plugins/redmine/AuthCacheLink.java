@@ -0,0 +1,105 @@
+package hudson.plugins.redmine;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import hudson.security.Permission;
+import hudson.security.SecurityRealm;
+
+import java.io.IOException;
+
+import jenkins.model.Jenkins;
+
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+/**
+ * Shows the hit and miss counts of the {@link AuthCache} of the Redmine security realm, and
+ * flushes it. Also shows the queue and rejections of the {@link LoginBulkhead}.
+ */
+@Extension
+public class AuthCacheLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return getCache() == null ? null : "user.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.auth_cache();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.auth_cache_description();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "redmineAuthCache";
+    }
+
+    @Override
+    public Permission getRequiredPermission() {
+        return Jenkins.ADMINISTER;
+    }
+
+    @Override
+    public Category getCategory() {
+        return Category.SECURITY;
+    }
+
+    /**
+     * @return <code>null</code> unless Jenkins uses the Redmine security realm
+     */
+    AuthCache getCache() {
+        SecurityRealm realm = Jenkins.get().getSecurityRealm();
+        return realm instanceof RedmineSecurityRealm ? ((RedmineSecurityRealm) realm).getAuthCache() : null;
+    }
+
+    public long getHits() {
+        AuthCache cache = getCache();
+        return cache == null ? 0 : cache.getHits();
+    }
+
+    public long getMisses() {
+        AuthCache cache = getCache();
+        return cache == null ? 0 : cache.getMisses();
+    }
+
+    public int getSize() {
+        AuthCache cache = getCache();
+        return cache == null ? 0 : cache.getSize();
+    }
+
+    public int getQueueDepth() {
+        LoginBulkhead bulkhead = RedmineSecurityRealm.getCurrentLoginBulkhead();
+        return bulkhead == null ? 0 : bulkhead.getQueueDepth();
+    }
+
+    public long getQueueFullRejections() {
+        LoginBulkhead bulkhead = RedmineSecurityRealm.getCurrentLoginBulkhead();
+        return bulkhead == null ? 0 : bulkhead.getQueueFullRejections();
+    }
+
+    public long getQueueTimeoutRejections() {
+        LoginBulkhead bulkhead = RedmineSecurityRealm.getCurrentLoginBulkhead();
+        return bulkhead == null ? 0 : bulkhead.getTimeoutRejections();
+    }
+
+    public long getStaleLogins() {
+        LoginBulkhead bulkhead = RedmineSecurityRealm.getCurrentLoginBulkhead();
+        return bulkhead == null ? 0 : bulkhead.getStaleLogins();
+    }
+
+    @RequirePOST
+    public HttpResponse doFlush() throws IOException {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        AuthCache cache = getCache();
+        if (cache != null) {
+            cache.flush();
+        }
+        return HttpResponses.redirectToDot();
+    }
+}
@@ -0,0 +1,56 @@
+package hudson.plugins.redmine;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded thread pools running the metrics fetches of one {@link RedmineSite}, shared by all its
+ * jobs instead of being created for every build.
+ *
+ * The pools are as large as the number of requests the site may send at once: more threads would
+ * only wait for the {@link RedmineHttpClient}. Idle threads exit after a minute, so a pool of a site
+ * which is no longer used needs no shutting down.
+ */
+final class FetchExecutors {
+
+    /** Pools of the calculators which have no site. */
+    static final FetchExecutors DEFAULT = new FetchExecutors(RedmineWebsiteConfig.DEFAULT_MAX_CONCURRENT_REQUESTS);
+
+    private final ThreadPoolExecutor versions;
+    private final ThreadPoolExecutor pages;
+
+    /**
+     * Versions and pages get a pool each: version tasks wait for pages, and pages wait for nothing,
+     * so neither pool can fill up with tasks waiting on itself.
+     */
+    FetchExecutors(int threads) {
+        this.versions = newPool(threads, "RedmineMetricsCalculator.versions");
+        this.pages = newPool(threads, "RedmineMetricsCalculator.pages");
+    }
+
+    private static ThreadPoolExecutor newPool(int threads, String name) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamingThreadFactory(new DaemonThreadFactory(), name));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Runs the versions a build fetches in parallel.
+     */
+    ExecutorService getVersions() {
+        return versions;
+    }
+
+    /**
+     * Runs the issue pages {@link IssuePages} requests ahead.
+     */
+    ExecutorService getPages() {
+        return pages;
+    }
+}
@@ -0,0 +1,279 @@
+package hudson.plugins.redmine;
+
+import hudson.plugins.redmine.dao.GroupVisitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.util.Timer;
+
+/**
+ * Redmine groups and their members, reloaded in bulk every sync interval so that resolving the
+ * groups of a user or the members of a group never queries the database.
+ *
+ * Users and groups get dense int indexes; membership is kept both ways as compressed adjacency
+ * arrays (the groups of user <code>u</code> are
+ * <code>userGroups[userOffsets[u] .. userOffsets[u + 1]]</code>, likewise for the members of a
+ * group), which stays small for thousands of users and hundreds of groups. Each reload builds a
+ * new {@link Snapshot} and swaps it in, so lookups never wait for a reload.
+ *
+ * Until the groups are loaded, a login loads them itself. After a failed load logins do not try
+ * again before the retry delay, so that a database outage does not queue every login behind a
+ * load of all the groups.
+ */
+final class GroupDirectory {
+
+    private static final Logger LOGGER = Logger.getLogger(GroupDirectory.class.getName());
+
+    /**
+     * Where the groups come from.
+     */
+    interface Source {
+        void load(GroupVisitor visitor) throws RedmineAuthenticationException;
+    }
+
+    /**
+     * Immutable state of one load.
+     */
+    static final class Snapshot {
+        private final String[] groupNames;
+        private final Map<String, Integer> groupIndex;
+        private final String[] usernames;
+        private final Map<String, Integer> userIndex;
+        private final int[] userOffsets;
+        private final int[] userGroups;
+        private final int[] groupOffsets;
+        private final int[] groupMembers;
+
+        /**
+         * @param edges pairs of user and group indexes, <code>edgeCount</code> of them
+         */
+        Snapshot(List<String> groupNames, List<String> usernames, int[] edges, int edgeCount) {
+            this.groupNames = groupNames.toArray(new String[0]);
+            this.usernames = usernames.toArray(new String[0]);
+            this.groupIndex = index(this.groupNames);
+            this.userIndex = index(this.usernames);
+            this.userOffsets = new int[this.usernames.length + 1];
+            this.userGroups = new int[edgeCount];
+            this.groupOffsets = new int[this.groupNames.length + 1];
+            this.groupMembers = new int[edgeCount];
+            fill(edges, edgeCount, 0, userOffsets, userGroups);
+            fill(edges, edgeCount, 1, groupOffsets, groupMembers);
+        }
+
+        /**
+         * Counting sort of the edges by one end, keeping the other end.
+         */
+        private static void fill(int[] edges, int edgeCount, int from, int[] offsets, int[] targets) {
+            for (int e = 0; e < edgeCount; e++) {
+                offsets[edges[2 * e + from] + 1]++;
+            }
+            for (int i = 1; i < offsets.length; i++) {
+                offsets[i] += offsets[i - 1];
+            }
+            int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+            for (int e = 0; e < edgeCount; e++) {
+                targets[next[edges[2 * e + from]]++] = edges[2 * e + 1 - from];
+            }
+        }
+
+        private static Map<String, Integer> index(String[] names) {
+            Map<String, Integer> index = new HashMap<String, Integer>(names.length * 2);
+            for (int i = 0; i < names.length; i++) {
+                index.put(names[i], i);
+            }
+            return index;
+        }
+
+        List<String> getGroups(String username) {
+            Integer u = userIndex.get(username);
+            if (u == null) {
+                return Collections.emptyList();
+            }
+            List<String> groups = new ArrayList<String>(userOffsets[u + 1] - userOffsets[u]);
+            for (int i = userOffsets[u]; i < userOffsets[u + 1]; i++) {
+                groups.add(groupNames[userGroups[i]]);
+            }
+            return groups;
+        }
+
+        boolean hasGroup(String name) {
+            return groupIndex.containsKey(name);
+        }
+
+        /**
+         * @return <code>null</code> if there is no such group
+         */
+        Set<String> getMembers(String name) {
+            Integer g = groupIndex.get(name);
+            if (g == null) {
+                return null;
+            }
+            Set<String> members = new TreeSet<String>();
+            for (int i = groupOffsets[g]; i < groupOffsets[g + 1]; i++) {
+                members.add(usernames[groupMembers[i]]);
+            }
+            return members;
+        }
+
+        int getGroupCount() {
+            return groupNames.length;
+        }
+
+        int getMembershipCount() {
+            return userGroups.length;
+        }
+    }
+
+    private final Source source;
+
+    private final long retryDelay;
+    private final LongSupplier clock;
+
+    private volatile Snapshot snapshot;
+
+    /** When logins may load the groups again after a failed load. */
+    private volatile long retryAt;
+
+    /** Guarded by this. */
+    private ScheduledFuture<?> sync;
+
+    /**
+     * @param retryDelay how long logins wait before loading the groups again after a failed load
+     */
+    GroupDirectory(Source source, long retryDelay, TimeUnit unit) {
+        this(source, retryDelay, unit, new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return System.currentTimeMillis();
+            }
+        });
+    }
+
+    /**
+     * @param clock current time in milliseconds
+     */
+    GroupDirectory(Source source, long retryDelay, TimeUnit unit, LongSupplier clock) {
+        this.source = source;
+        this.retryDelay = unit.toMillis(retryDelay);
+        this.clock = clock;
+    }
+
+    /**
+     * Loads the groups in the background right away, then reloads them every interval.
+     */
+    synchronized void start(long interval, TimeUnit unit) {
+        if (sync == null) {
+            long millis = unit.toMillis(interval);
+            sync = Timer.get().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        sync();
+                    } catch (RedmineAuthenticationException e) {
+                        LOGGER.log(Level.WARNING, "RedmineSecurity: Cannot load the Redmine groups", e);
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "RedmineSecurity: Cannot load the Redmine groups", e);
+                    }
+                }
+            }, 0, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void stop() {
+        if (sync != null) {
+            sync.cancel(false);
+            sync = null;
+        }
+    }
+
+    /**
+     * The groups as of the last load, waiting for the first load or retrying it if it failed more
+     * than the retry delay ago.
+     */
+    Snapshot get() throws RedmineAuthenticationException {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        checkRetry();
+        synchronized (this) {
+            if (snapshot == null) {
+                checkRetry();
+                sync();
+            }
+            return snapshot;
+        }
+    }
+
+    private void checkRetry() throws RedmineAuthenticationException {
+        if (clock.getAsLong() < retryAt) {
+            throw new RedmineAuthenticationException("RedmineSecurity: Redmine groups not loaded, retrying later");
+        }
+    }
+
+    /**
+     * Reads all the groups and memberships and swaps them in.
+     */
+    synchronized void sync() throws RedmineAuthenticationException {
+        final Map<Integer, Integer> groupsById = new HashMap<Integer, Integer>();
+        final List<String> groupNames = new ArrayList<String>();
+        final Map<String, Integer> usersByName = new HashMap<String, Integer>();
+        final List<String> usernames = new ArrayList<String>();
+        final int[][] edges = { new int[256] };
+        final int[] edgeCount = { 0 };
+        GroupVisitor visitor = new GroupVisitor() {
+            @Override
+            public void visitGroup(int groupId, String name) {
+                if (name != null && !groupsById.containsKey(groupId)) {
+                    groupsById.put(groupId, groupNames.size());
+                    groupNames.add(name);
+                }
+            }
+
+            @Override
+            public void visitMember(int groupId, String username) {
+                Integer g = groupsById.get(groupId);
+                if (g == null || username == null) {
+                    return;
+                }
+                Integer u = usersByName.get(username);
+                if (u == null) {
+                    u = usernames.size();
+                    usersByName.put(username, u);
+                    usernames.add(username);
+                }
+                if (2 * edgeCount[0] + 2 > edges[0].length) {
+                    edges[0] = Arrays.copyOf(edges[0], edges[0].length * 2);
+                }
+                edges[0][2 * edgeCount[0]] = u;
+                edges[0][2 * edgeCount[0] + 1] = g;
+                edgeCount[0]++;
+            }
+        };
+        try {
+            source.load(visitor);
+        } catch (RedmineAuthenticationException e) {
+            retryAt = clock.getAsLong() + retryDelay;
+            throw e;
+        } catch (RuntimeException e) {
+            retryAt = clock.getAsLong() + retryDelay;
+            throw e;
+        }
+        Snapshot loaded = new Snapshot(groupNames, usernames, edges[0], edgeCount[0]);
+        snapshot = loaded;
+        LOGGER.fine("RedmineSecurity: Loaded " + loaded.getGroupCount() + " groups, "
+                + loaded.getMembershipCount() + " memberships");
+    }
+}
@@ -0,0 +1,123 @@
+package hudson.plugins.redmine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.taskadapter.redmineapi.bean.IssueStatus;
+import com.taskadapter.redmineapi.bean.Tracker;
+
+/**
+ * Ignored trackers and statuses of a metrics calculation, parsed once.
+ *
+ * Once {@link #resolveTrackers} and {@link #resolveStatuses} have mapped the ignored names to
+ * ids, the exclusions can be sent to Redmine as <code>tracker_id</code> and <code>status_id</code>
+ * short filters. Issues are still checked client-side in case the server ignored them.
+ */
+public class IssueFilter {
+
+    private final Set<String> ignoredTrackerNames;
+    private final Set<String> ignoredStatusNames;
+
+    private Set<Integer> ignoredTrackerIds;
+    private Set<Integer> ignoredStatusIds;
+
+    /**
+     * @param ignoreTicketTracker comma separated tracker names, may be empty
+     * @param ignoreTicketStatus comma separated status names, may be empty
+     */
+    public IssueFilter(String ignoreTicketTracker, String ignoreTicketStatus) {
+        this.ignoredTrackerNames = toNameSet(ignoreTicketTracker);
+        this.ignoredStatusNames = toNameSet(ignoreTicketStatus);
+    }
+
+    private static Set<String> toNameSet(String names) {
+        if (names == null || names.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return new HashSet<String>(Arrays.asList(names.split(",")));
+    }
+
+    Set<String> getIgnoredTrackerNames() {
+        return Collections.unmodifiableSet(ignoredTrackerNames);
+    }
+
+    Set<String> getIgnoredStatusNames() {
+        return Collections.unmodifiableSet(ignoredStatusNames);
+    }
+
+    public boolean ignoresTrackers() {
+        return !ignoredTrackerNames.isEmpty();
+    }
+
+    public boolean ignoresStatuses() {
+        return !ignoredStatusNames.isEmpty();
+    }
+
+    public void resolveTrackers(List<Tracker> trackers) {
+        Set<Integer> ids = new HashSet<Integer>();
+        for (Tracker tracker : trackers) {
+            if (ignoredTrackerNames.contains(tracker.getName())) {
+                ids.add(tracker.getId());
+            }
+        }
+        ignoredTrackerIds = ids;
+    }
+
+    public void resolveStatuses(List<IssueStatus> statuses) {
+        Set<Integer> ids = new HashSet<Integer>();
+        for (IssueStatus status : statuses) {
+            if (ignoredStatusNames.contains(status.getName())) {
+                ids.add(status.getId());
+            }
+        }
+        ignoredStatusIds = ids;
+    }
+
+    /**
+     * Value of the <code>tracker_id</code> parameter, or <code>null</code> if no tracker needs to
+     * be excluded.
+     */
+    public String getTrackerQuery() {
+        return ignoredTrackerIds == null || ignoredTrackerIds.isEmpty() ? null : toExclusion(ignoredTrackerIds);
+    }
+
+    /**
+     * Value of the <code>status_id</code> parameter: all statuses but the ignored ones.
+     */
+    public String getStatusQuery() {
+        return ignoredStatusIds == null || ignoredStatusIds.isEmpty() ? "*" : toExclusion(ignoredStatusIds);
+    }
+
+    private static String toExclusion(Set<Integer> ids) {
+        StringBuilder sb = new StringBuilder();
+        for (Integer id : ids) {
+            sb.append(sb.length() == 0 ? "!" : "|").append(id);
+        }
+        return sb.toString();
+    }
+
+    public boolean isIgnored(IssueStatus status) {
+        return isIgnoredStatus(status.getId(), status.getName());
+    }
+
+    public boolean accepts(int trackerId, String trackerName, int statusId, String statusName) {
+        return !isIgnoredTracker(trackerId, trackerName) && !isIgnoredStatus(statusId, statusName);
+    }
+
+    private boolean isIgnoredTracker(Integer id, String name) {
+        if (ignoredTrackerIds != null) {
+            return ignoredTrackerIds.contains(id);
+        }
+        return ignoredTrackerNames.contains(name);
+    }
+
+    private boolean isIgnoredStatus(Integer id, String name) {
+        if (ignoredStatusIds != null) {
+            return ignoredStatusIds.contains(id);
+        }
+        return ignoredStatusNames.contains(name);
+    }
+}
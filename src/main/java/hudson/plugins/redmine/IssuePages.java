@@ -0,0 +1,123 @@
+package hudson.plugins.redmine;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.taskadapter.redmineapi.RedmineException;
+
+/**
+ * Streams the issues matching a query page by page.
+ *
+ * While the caller works on one page, up to <code>window</code> following pages are already being
+ * fetched, so the time spent is bounded by throughput rather than by round-trips. Pages are not
+ * retained once returned, so memory stays at a few pages whatever the number of issues. With a
+ * window of <code>0</code>, pages are fetched one after the other on the calling thread.
+ */
+public class IssuePages {
+
+    public static final int PAGE_SIZE = 100;
+
+    private final RedmineRestClient client;
+    private final Map<String, String> params;
+    private final int window;
+    private final ExecutorService executor;
+
+    private final Deque<Future<RedmineRestClient.IssuePage>> inFlight = new ArrayDeque<Future<RedmineRestClient.IssuePage>>();
+    private int totalCount = -1;
+    private int nextOffset;
+
+    /**
+     * @param window number of pages fetched ahead
+     * @param executor runs the prefetches, may be <code>null</code> if <code>window</code> is <code>0</code>
+     */
+    public IssuePages(RedmineRestClient client, Map<String, String> params, int window, ExecutorService executor) {
+        this.client = client;
+        this.params = new LinkedHashMap<String, String>(params);
+        this.window = executor == null ? 0 : Math.max(window, 0);
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the next page, or <code>null</code> once all issues have been returned.
+     */
+    public List<IssueRecord> next() throws RedmineException, InterruptedException {
+        RedmineRestClient.IssuePage page;
+        if (totalCount < 0) {
+            page = fetch(0);
+            totalCount = page.getTotalCount();
+            nextOffset = PAGE_SIZE;
+        } else if (window == 0) {
+            if (nextOffset >= totalCount) {
+                return null;
+            }
+            page = fetch(nextOffset);
+            nextOffset += PAGE_SIZE;
+        } else {
+            Future<RedmineRestClient.IssuePage> future = inFlight.poll();
+            if (future == null) {
+                return null;
+            }
+            boolean fetched = false;
+            try {
+                page = await(future);
+                fetched = true;
+            } finally {
+                if (!fetched) {
+                    // the following pages are of no use any more
+                    close();
+                }
+            }
+        }
+        prefetch();
+        return page.getIssues();
+    }
+
+    /**
+     * Cancels the pages still in flight. Needed when the caller stops before the last page.
+     */
+    public void close() {
+        for (Future<RedmineRestClient.IssuePage> future : inFlight) {
+            future.cancel(true);
+        }
+        inFlight.clear();
+    }
+
+    private void prefetch() {
+        while (inFlight.size() < window && nextOffset < totalCount) {
+            final int offset = nextOffset;
+            inFlight.add(executor.submit(new Callable<RedmineRestClient.IssuePage>() {
+                @Override
+                public RedmineRestClient.IssuePage call() throws Exception {
+                    return fetch(offset);
+                }
+            }));
+            nextOffset += PAGE_SIZE;
+        }
+    }
+
+    private RedmineRestClient.IssuePage fetch(int offset) throws RedmineException {
+        return client.getIssuePage(params, offset, PAGE_SIZE);
+    }
+
+    private static RedmineRestClient.IssuePage await(Future<RedmineRestClient.IssuePage> future)
+            throws RedmineException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RedmineException) {
+                throw (RedmineException) e.getCause();
+            }
+            if (e.getCause() instanceof InterruptedException) {
+                throw (InterruptedException) e.getCause();
+            }
+            throw new RedmineException("Cannot fetch issues", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package hudson.plugins.redmine;
+
+import net.sf.json.JSONObject;
+
+/**
+ * The few fields of a Redmine issue the metrics need, read straight from the REST API's JSON.
+ */
+public final class IssueRecord {
+
+    private final int id;
+    private final int trackerId;
+    private final String trackerName;
+    private final int statusId;
+    private final String statusName;
+    private final int versionId;
+    private final String versionName;
+    private final int priorityId;
+    private final String priorityName;
+    private final int assigneeId;
+    private final String assigneeName;
+
+    public IssueRecord(int id, int trackerId, String trackerName, int statusId, String statusName, int versionId) {
+        this(id, trackerId, trackerName, statusId, statusName, versionId, null, 0, null, 0, null);
+    }
+
+    public IssueRecord(int id, int trackerId, String trackerName, int statusId, String statusName, int versionId,
+            String versionName, int priorityId, String priorityName, int assigneeId, String assigneeName) {
+        this.id = id;
+        this.trackerId = trackerId;
+        this.trackerName = trackerName;
+        this.statusId = statusId;
+        this.statusName = statusName;
+        this.versionId = versionId;
+        this.versionName = versionName;
+        this.priorityId = priorityId;
+        this.priorityName = priorityName;
+        this.assigneeId = assigneeId;
+        this.assigneeName = assigneeName;
+    }
+
+    static IssueRecord fromJSON(JSONObject issue) {
+        JSONObject tracker = issue.optJSONObject("tracker");
+        JSONObject status = issue.optJSONObject("status");
+        JSONObject version = issue.optJSONObject("fixed_version");
+        JSONObject priority = issue.optJSONObject("priority");
+        JSONObject assignee = issue.optJSONObject("assigned_to");
+        return new IssueRecord(issue.getInt("id"),
+                idOf(tracker), nameOf(tracker),
+                idOf(status), nameOf(status),
+                idOf(version), nameOf(version),
+                idOf(priority), nameOf(priority),
+                idOf(assignee), nameOf(assignee));
+    }
+
+    private static int idOf(JSONObject ref) {
+        return ref == null || ref.isNullObject() ? 0 : ref.optInt("id");
+    }
+
+    private static String nameOf(JSONObject ref) {
+        return ref == null || ref.isNullObject() ? null : ref.optString("name", null);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getTrackerId() {
+        return trackerId;
+    }
+
+    public String getTrackerName() {
+        return trackerName;
+    }
+
+    public int getStatusId() {
+        return statusId;
+    }
+
+    public String getStatusName() {
+        return statusName;
+    }
+
+    /**
+     * @return id of the target version, <code>0</code> if there is none
+     */
+    public int getVersionId() {
+        return versionId;
+    }
+
+    public String getVersionName() {
+        return versionName;
+    }
+
+    public int getPriorityId() {
+        return priorityId;
+    }
+
+    public String getPriorityName() {
+        return priorityName;
+    }
+
+    /**
+     * @return id of the assigned user or group, <code>0</code> if unassigned
+     */
+    public int getAssigneeId() {
+        return assigneeId;
+    }
+
+    public String getAssigneeName() {
+        return assigneeName;
+    }
+}
@@ -0,0 +1,102 @@
+package hudson.plugins.redmine;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the logins of {@link RedmineSecurityRealm} which query the Redmine database at the same
+ * time, so that a login storm neither piles up request threads behind the connection pool nor
+ * loads Redmine's database.
+ *
+ * Up to <code>permits</code> logins run at once, at most <code>maxQueued</code> more wait up to the
+ * timeout for their turn, and the others are rejected at once. The realm then answers from
+ * expired cached credentials when it has them, and fails otherwise.
+ */
+final class LoginBulkhead {
+
+    private final Semaphore permits;
+    private final int maxQueued;
+    private final long timeoutMillis;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger peakQueued = new AtomicInteger();
+    private final AtomicLong queueFullRejections = new AtomicLong();
+    private final AtomicLong timeoutRejections = new AtomicLong();
+    private final AtomicLong staleLogins = new AtomicLong();
+
+    LoginBulkhead(int permits, int maxQueued, long timeout, TimeUnit unit) {
+        this.permits = new Semaphore(permits, true);
+        this.maxQueued = maxQueued;
+        this.timeoutMillis = unit.toMillis(timeout);
+    }
+
+    /**
+     * Waits for a permit, unless the queue is full.
+     *
+     * @return <code>false</code> if the login was rejected; otherwise {@link #release()} must follow
+     */
+    boolean acquire() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        int depth = queued.incrementAndGet();
+        try {
+            if (depth > maxQueued) {
+                queueFullRejections.incrementAndGet();
+                return false;
+            }
+            int peak = peakQueued.get();
+            while (depth > peak && !peakQueued.compareAndSet(peak, depth)) {
+                peak = peakQueued.get();
+            }
+            if (permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            timeoutRejections.incrementAndGet();
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            timeoutRejections.incrementAndGet();
+            return false;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    void release() {
+        permits.release();
+    }
+
+    /**
+     * Counts a rejected login answered from expired cached credentials.
+     */
+    void servedStale() {
+        staleLogins.incrementAndGet();
+    }
+
+    int getQueueDepth() {
+        return Math.min(queued.get(), maxQueued);
+    }
+
+    int getPeakQueueDepth() {
+        return peakQueued.get();
+    }
+
+    int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    long getQueueFullRejections() {
+        return queueFullRejections.get();
+    }
+
+    long getTimeoutRejections() {
+        return timeoutRejections.get();
+    }
+
+    long getStaleLogins() {
+        return staleLogins.get();
+    }
+}
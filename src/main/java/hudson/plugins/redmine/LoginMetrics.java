@@ -0,0 +1,198 @@
+package hudson.plugins.redmine;
+
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Latency histograms of the phases of a login in {@link RedmineSecurityRealm}, published over JMX
+ * as <code>hudson.plugins.redmine:type=LoginMetrics</code>, so that slow logins can be told apart
+ * between connection setup, schema checks, the user query and password hashing. The queue and
+ * rejections of the {@link LoginBulkhead} in use are published alongside.
+ */
+public final class LoginMetrics implements LoginMetricsMXBean {
+
+    private static final Logger LOGGER = Logger.getLogger(LoginMetrics.class.getName());
+
+    static final String OBJECT_NAME = "hudson.plugins.redmine:type=LoginMetrics";
+
+    public enum Phase {
+        CONNECTION, SCHEMA_CHECK, USER_QUERY, PASSWORD, LOGIN
+    }
+
+    private static final LatencyHistogram[] HISTOGRAMS = new LatencyHistogram[Phase.values().length];
+
+    static {
+        for (int i = 0; i < HISTOGRAMS.length; i++) {
+            HISTOGRAMS[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Durations of one phase, in microseconds.
+     */
+    public static final class PhaseStats {
+        private final long count;
+        private final double meanMicros;
+        private final long p50Micros;
+        private final long p90Micros;
+        private final long p99Micros;
+        private final long maxMicros;
+
+        @ConstructorProperties({ "count", "meanMicros", "p50Micros", "p90Micros", "p99Micros", "maxMicros" })
+        public PhaseStats(long count, double meanMicros, long p50Micros, long p90Micros, long p99Micros,
+                long maxMicros) {
+            this.count = count;
+            this.meanMicros = meanMicros;
+            this.p50Micros = p50Micros;
+            this.p90Micros = p90Micros;
+            this.p99Micros = p99Micros;
+            this.maxMicros = maxMicros;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMicros() {
+            return meanMicros;
+        }
+
+        public long getP50Micros() {
+            return p50Micros;
+        }
+
+        public long getP90Micros() {
+            return p90Micros;
+        }
+
+        public long getP99Micros() {
+            return p99Micros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("n=%d mean=%.1fus p50=%dus p90=%dus p99=%dus max=%dus", count, meanMicros,
+                    p50Micros, p90Micros, p99Micros, maxMicros);
+        }
+    }
+
+    /**
+     * Records the time elapsed since <code>startNanos</code>, a {@link System#nanoTime()}.
+     */
+    static void record(Phase phase, long startNanos) {
+        HISTOGRAMS[phase.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    public static PhaseStats get(Phase phase) {
+        LatencyHistogram.Snapshot snapshot = HISTOGRAMS[phase.ordinal()].snapshot();
+        return new PhaseStats(snapshot.getCount(), snapshot.getMean() / 1000, micros(snapshot.getPercentile(0.5)),
+                micros(snapshot.getPercentile(0.9)), micros(snapshot.getPercentile(0.99)), micros(snapshot.getMax()));
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    @Override
+    public PhaseStats getConnection() {
+        return get(Phase.CONNECTION);
+    }
+
+    @Override
+    public PhaseStats getSchemaCheck() {
+        return get(Phase.SCHEMA_CHECK);
+    }
+
+    @Override
+    public PhaseStats getUserQuery() {
+        return get(Phase.USER_QUERY);
+    }
+
+    @Override
+    public PhaseStats getPassword() {
+        return get(Phase.PASSWORD);
+    }
+
+    @Override
+    public PhaseStats getLogin() {
+        return get(Phase.LOGIN);
+    }
+
+    @Override
+    public int getLoginQueueDepth() {
+        LoginBulkhead bulkhead = RedmineSecurityRealm.getCurrentLoginBulkhead();
+        return bulkhead == null ? 0 : bulkhead.getQueueDepth();
+    }
+
+    @Override
+    public int getPeakLoginQueueDepth() {
+        LoginBulkhead bulkhead = RedmineSecurityRealm.getCurrentLoginBulkhead();
+        return bulkhead == null ? 0 : bulkhead.getPeakQueueDepth();
+    }
+
+    @Override
+    public long getQueueFullRejections() {
+        LoginBulkhead bulkhead = RedmineSecurityRealm.getCurrentLoginBulkhead();
+        return bulkhead == null ? 0 : bulkhead.getQueueFullRejections();
+    }
+
+    @Override
+    public long getQueueTimeoutRejections() {
+        LoginBulkhead bulkhead = RedmineSecurityRealm.getCurrentLoginBulkhead();
+        return bulkhead == null ? 0 : bulkhead.getTimeoutRejections();
+    }
+
+    @Override
+    public long getStaleLogins() {
+        LoginBulkhead bulkhead = RedmineSecurityRealm.getCurrentLoginBulkhead();
+        return bulkhead == null ? 0 : bulkhead.getStaleLogins();
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+    }
+
+    @Initializer(after = InitMilestone.PLUGINS_STARTED)
+    public static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new LoginMetrics(), name);
+            }
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "RedmineSecurity: Cannot register the login metrics", e);
+        }
+    }
+
+    @Terminator
+    public static void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOGGER.log(Level.FINE, "RedmineSecurity: Cannot unregister the login metrics", e);
+        }
+    }
+}
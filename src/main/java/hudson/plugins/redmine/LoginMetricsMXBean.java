@@ -0,0 +1,42 @@
+package hudson.plugins.redmine;
+
+/**
+ * Login latency of the Redmine security realm, per phase, as shown by JMX consoles.
+ *
+ * @see LoginMetrics
+ */
+public interface LoginMetricsMXBean {
+
+    /** Borrowing or opening a database connection. */
+    LoginMetrics.PhaseStats getConnection();
+
+    /** Checking the login table and user field, once per configuration. */
+    LoginMetrics.PhaseStats getSchemaCheck();
+
+    /** Looking up the user. */
+    LoginMetrics.PhaseStats getUserQuery();
+
+    /** Hashing and comparing the password. */
+    LoginMetrics.PhaseStats getPassword();
+
+    /** Whole logins, answered from the cache or not. */
+    LoginMetrics.PhaseStats getLogin();
+
+    /** Logins currently waiting for the database. */
+    int getLoginQueueDepth();
+
+    /** Most logins seen waiting for the database at once. */
+    int getPeakLoginQueueDepth();
+
+    /** Logins rejected because too many were already waiting. */
+    long getQueueFullRejections();
+
+    /** Logins rejected after waiting too long. */
+    long getQueueTimeoutRejections();
+
+    /** Rejected logins answered from expired cached credentials. */
+    long getStaleLogins();
+
+    /** Clears all the histograms. */
+    void reset();
+}
@@ -1,21 +1,199 @@
 package hudson.plugins.redmine;
 
-import hudson.model.Action;
 import hudson.model.Result;
 import hudson.model.AbstractBuild;
+import hudson.model.Run;
 
+import jenkins.model.RunAction2;
+
+import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ticket metrics of one build.
+ *
+ * The status counts are stored as ids into the job's {@link StatusDictionary} with an
+ * <code>int</code> count each, rather than as a list of name and count objects, and the build is
+ * not stored at all: it is set again when the record is loaded. The names of the breakdown go to
+ * the same dictionary, so that the cube is stored as ids and counts too. Records written by older
+ * versions are read as they are and stored compactly the next time the build is saved.
+ */
+@ExportedBean
+public class MetricsAction implements RunAction2 {
+
+    private static final Logger LOGGER = Logger.getLogger(MetricsAction.class.getName());
+
+    /** Previous builds shown per page. */
+    public static final int PAGE_SIZE = 20;
 
-public class MetricsAction implements Action {
+    private transient AbstractBuild<?, ?> build;
+    private transient List<MetricsResult> metrics;
 
-    private AbstractBuild<?, ?> build;
+    /** Ids of the counted statuses in the job's dictionary. */
+    private int[] statusIds;
+    private int[] counts;
+
+    /**
+     * Status counts as stored by older versions, or when the dictionary could not be written.
+     */
     private List<MetricsResult> metricsList;
 
+    private transient MetricsCube breakdown;
+
+    /** Ids in the job's dictionary of the names of each dimension of the breakdown, by cube id. */
+    private int[][] cubeNameIds;
+    private long[] cubeKeys;
+    private int[] cubeCounts;
+
+    /**
+     * Breakdown as stored by older versions, or when the dictionary could not be written.
+     */
+    private MetricsCube cube;
+
     public MetricsAction(AbstractBuild<?, ?> build,
             List<MetricsResult> metricsList) {
+        this(build, metricsList, null);
+    }
+
+    /**
+     * @param cube breakdown of the counted issues, <code>null</code> if only status counts are known
+     */
+    public MetricsAction(AbstractBuild<?, ?> build,
+            List<MetricsResult> metricsList, MetricsCube cube) {
         this.build = build;
-        this.metricsList = metricsList;
+        this.metrics = metricsList;
+        this.breakdown = cube;
+        if (build != null) {
+            encode(build);
+        }
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> r) {
+        build = (AbstractBuild<?, ?>) r;
+        if (statusIds == null && metricsList == null) {
+            encode(r);
+        }
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> r) {
+        build = (AbstractBuild<?, ?>) r;
+        breakdown = cube != null ? cube : decodeCube(r);
+        if (metricsList != null) {
+            metrics = intern(metricsList);
+        } else if (statusIds != null) {
+            metrics = decode(r);
+        } else {
+            metrics = Collections.emptyList();
+        }
+        if (metricsList != null || cube != null) {
+            // legacy record: written in the compact form the next time the build is saved
+            encode(r);
+        }
+    }
+
+    /**
+     * Switches to the compact form, keeping the plain list if the dictionary cannot be written.
+     */
+    private void encode(Run<?, ?> r) {
+        if (metrics == null) {
+            return;
+        }
+        try {
+            StatusDictionary dictionary = StatusDictionary.of(r.getParent());
+            int[] ids = new int[metrics.size()];
+            int[] values = new int[metrics.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = dictionary.idOf(metrics.get(i).getStatus());
+                values[i] = metrics.get(i).getCount();
+            }
+            int[][] nameIds = null;
+            if (breakdown != null) {
+                MetricsCube.Dimension[] dimensions = MetricsCube.Dimension.values();
+                nameIds = new int[dimensions.length][];
+                for (int d = 0; d < dimensions.length; d++) {
+                    List<String> names = breakdown.getNames(dimensions[d]);
+                    nameIds[d] = new int[names.size()];
+                    for (int id = 0; id < names.size(); id++) {
+                        nameIds[d][id] = dictionary.idOf(names.get(id));
+                    }
+                }
+            }
+            statusIds = ids;
+            counts = values;
+            metricsList = null;
+            cubeNameIds = nameIds;
+            cubeKeys = breakdown == null ? null : breakdown.getKeys();
+            cubeCounts = breakdown == null ? null : breakdown.getCounts();
+            cube = null;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot record the statuses of " + r + ", storing the metrics with their names", e);
+            statusIds = null;
+            counts = null;
+            metricsList = metrics;
+            cubeNameIds = null;
+            cubeKeys = null;
+            cubeCounts = null;
+            cube = breakdown;
+        }
+    }
+
+    private List<MetricsResult> decode(Run<?, ?> r) {
+        List<MetricsResult> result = new ArrayList<MetricsResult>(statusIds.length);
+        try {
+            StatusDictionary dictionary = StatusDictionary.of(r.getParent());
+            for (int i = 0; i < statusIds.length; i++) {
+                String name = dictionary.nameOf(statusIds[i]);
+                result.add(new MetricsResult(name != null ? name : "#" + statusIds[i], counts[i]));
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot read the statuses of " + r, e);
+        }
+        return result;
+    }
+
+    private MetricsCube decodeCube(Run<?, ?> r) {
+        if (cubeNameIds == null) {
+            return null;
+        }
+        try {
+            StatusDictionary dictionary = StatusDictionary.of(r.getParent());
+            List<List<String>> names = new ArrayList<List<String>>(cubeNameIds.length);
+            for (int[] ids : cubeNameIds) {
+                List<String> dimensionNames = new ArrayList<String>(ids.length);
+                for (int id : ids) {
+                    String name = dictionary.nameOf(id);
+                    dimensionNames.add(name != null ? name : "#" + id);
+                }
+                names.add(dimensionNames);
+            }
+            return new MetricsCube(names, cubeKeys, cubeCounts);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot read the breakdown of " + r, e);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Cannot read the breakdown of " + r, e);
+        }
+        return null;
+    }
+
+    private static List<MetricsResult> intern(List<MetricsResult> list) {
+        List<MetricsResult> result = new ArrayList<MetricsResult>(list.size());
+        for (MetricsResult m : list) {
+            result.add(new MetricsResult(m.getStatus() == null ? null : m.getStatus().intern(), m.getCount()));
+        }
+        return result;
     }
 
     @Override
@@ -37,22 +215,130 @@ public class MetricsAction implements Action {
         return build;
     }
 
+    @Exported
     public List<MetricsResult> getMetricsList() {
-        return metricsList;
+        return metrics;
+    }
+
+    /**
+     * @return <code>null</code> for builds made in count-only mode or by older versions of the plugin
+     */
+    public MetricsCube getCube() {
+        return breakdown;
+    }
+
+    /**
+     * Dimensions other than status which the breakdown tables are shown for, empty without a cube.
+     */
+    public List<MetricsCube.Dimension> getBreakdownDimensions() {
+        if (breakdown == null) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(MetricsCube.Dimension.TRACKER, MetricsCube.Dimension.VERSION,
+                MetricsCube.Dimension.PRIORITY, MetricsCube.Dimension.ASSIGNEE);
+    }
+
+    /**
+     * Counts per name of one dimension, e.g. <code>getSlice("TRACKER")</code>.
+     */
+    public Map<String, Integer> getSlice(String dimension) {
+        if (breakdown == null) {
+            return Collections.emptyMap();
+        }
+        return breakdown.countBy(MetricsCube.Dimension.valueOf(dimension));
+    }
+
+    /**
+     * Counts per pair of names of two dimensions, rows first.
+     */
+    public Map<String, Map<String, Integer>> getSlice(String rows, String columns) {
+        if (breakdown == null) {
+            return Collections.emptyMap();
+        }
+        return breakdown.countBy(MetricsCube.Dimension.valueOf(rows), MetricsCube.Dimension.valueOf(columns));
     }
 
+    /**
+     * Metrics of up to 1000 previous successful builds, newest first.
+     */
     public List<List<MetricsResult>> getPreviousMetricsLists() {
-        @SuppressWarnings("unchecked")
-        List<AbstractBuild<?, ?>> builds = (List<AbstractBuild<?, ?>>) build
-                .getPreviousBuildsOverThreshold(1000, Result.SUCCESS);
         List<List<MetricsResult>> results = new ArrayList<List<MetricsResult>>();
-        for (AbstractBuild<?, ?> abstractBuild : builds) {
-            MetricsAction action = abstractBuild.getAction(MetricsAction.class);
-            if (action == null) {
+        for (MetricsHistory.Entry entry : getPreviousMetrics(0, 1000)) {
+            results.add(entry.getMetrics());
+        }
+        return results;
+    }
+
+    /**
+     * One page of the metrics of previous successful builds, newest first, read from the job's
+     * {@link MetricsHistory} without loading the builds.
+     */
+    public List<MetricsHistory.Entry> getPreviousMetrics(int page) {
+        return getPreviousMetrics(page * PAGE_SIZE, PAGE_SIZE);
+    }
+
+    public int getPreviousMetricsPageCount() {
+        int count = 0;
+        List<MetricsHistory.Entry> entries = getHistoryEntries();
+        for (int i = indexBefore(entries, build.getNumber()); i >= 0; i--) {
+            if (entries.get(i).getResult() == Result.SUCCESS) {
+                count++;
+            }
+        }
+        return (count + PAGE_SIZE - 1) / PAGE_SIZE;
+    }
+
+    /**
+     * Page requested with the <code>page</code> query parameter, <code>0</code> for the first.
+     */
+    public int getCurrentPage() {
+        StaplerRequest req = Stapler.getCurrentRequest();
+        String page = req == null ? null : req.getParameter("page");
+        if (page == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(page));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private List<MetricsHistory.Entry> getPreviousMetrics(int skip, int limit) {
+        List<MetricsHistory.Entry> page = new ArrayList<MetricsHistory.Entry>();
+        List<MetricsHistory.Entry> entries = getHistoryEntries();
+        for (int i = indexBefore(entries, build.getNumber()); i >= 0 && page.size() < limit; i--) {
+            MetricsHistory.Entry entry = entries.get(i);
+            if (entry.getResult() != Result.SUCCESS) {
                 continue;
             }
-            results.add(action.getMetricsList());
+            if (skip > 0) {
+                skip--;
+            } else {
+                page.add(entry);
+            }
         }
-        return results;
+        return page;
+    }
+
+    private List<MetricsHistory.Entry> getHistoryEntries() {
+        return MetricsHistory.of(build.getParent()).getEntries(build.getParent());
+    }
+
+    /**
+     * Index of the last entry of a build older than the given one, <code>-1</code> if there is none.
+     */
+    static int indexBefore(List<MetricsHistory.Entry> entries, int buildNumber) {
+        int low = 0;
+        int high = entries.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (entries.get(mid).getBuildNumber() < buildNumber) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low - 1;
     }
 }
@@ -0,0 +1,308 @@
+package hudson.plugins.redmine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Issue counts broken down by status, tracker, version, priority and assignee, filled in one pass
+ * over the fetched issues.
+ *
+ * The names of each dimension are encoded to small int ids. Only the combinations which occur are
+ * stored, as packed <code>long</code> keys with an <code>int</code> count each, so the size depends
+ * on the issues rather than on the product of the dimension sizes. Slices are computed on demand.
+ *
+ * Not thread-safe; concurrent fetches fill cubes of their own and {@link #addAll} them.
+ */
+public class MetricsCube {
+
+    public enum Dimension {
+        STATUS(8), TRACKER(8), VERSION(16), PRIORITY(8), ASSIGNEE(24);
+
+        private final int bits;
+
+        Dimension(int bits) {
+            this.bits = bits;
+        }
+
+        public String getDisplayName() {
+            switch (this) {
+            case STATUS:
+                return Messages.metrics_dimension_status();
+            case TRACKER:
+                return Messages.metrics_dimension_tracker();
+            case VERSION:
+                return Messages.metrics_dimension_version();
+            case PRIORITY:
+                return Messages.metrics_dimension_priority();
+            default:
+                return Messages.metrics_dimension_assignee();
+            }
+        }
+    }
+
+    private static final Dimension[] DIMENSIONS = Dimension.values();
+
+    /** Name of the issues without version, priority or assignee. */
+    public static final String NONE = "";
+
+    /** Name standing for the values past the capacity of a dimension. */
+    public static final String OTHER = "(other)";
+
+    private final List<List<String>> names = new ArrayList<List<String>>();
+
+    private int size;
+    private long[] keys = new long[0];
+    private int[] counts = new int[0];
+
+    private transient List<Map<String, Integer>> ids;
+    private transient int[] table;
+
+    public MetricsCube() {
+        for (int d = 0; d < DIMENSIONS.length; d++) {
+            names.add(new ArrayList<String>());
+        }
+    }
+
+    /**
+     * Rebuilds a cube from the names of each dimension, by id, and the cells returned by
+     * {@link #getKeys()} and {@link #getCounts()}.
+     */
+    MetricsCube(List<List<String>> names, long[] keys, int[] counts) {
+        if (names.size() != DIMENSIONS.length || keys.length != counts.length) {
+            throw new IllegalArgumentException("Not a cube of " + DIMENSIONS.length + " dimensions");
+        }
+        for (List<String> dimensionNames : names) {
+            this.names.add(new ArrayList<String>(dimensionNames));
+        }
+        this.size = keys.length;
+        this.keys = keys.clone();
+        this.counts = counts.clone();
+    }
+
+    public void add(IssueRecord issue) {
+        add(issue.getStatusName(), issue.getTrackerName(), issue.getVersionName(), issue.getPriorityName(),
+                issue.getAssigneeName(), 1);
+    }
+
+    public void add(String status, String tracker, String version, String priority, String assignee, int count) {
+        long key = encode(Dimension.STATUS, status);
+        key = (key << Dimension.TRACKER.bits) | encode(Dimension.TRACKER, tracker);
+        key = (key << Dimension.VERSION.bits) | encode(Dimension.VERSION, version);
+        key = (key << Dimension.PRIORITY.bits) | encode(Dimension.PRIORITY, priority);
+        key = (key << Dimension.ASSIGNEE.bits) | encode(Dimension.ASSIGNEE, assignee);
+        add(key, count);
+    }
+
+    /**
+     * Adds the counts of another cube, whose dictionaries may differ from this one's.
+     */
+    public void addAll(MetricsCube other) {
+        String[] cell = new String[DIMENSIONS.length];
+        for (int i = 0; i < other.size; i++) {
+            other.decode(other.keys[i], cell);
+            add(cell[0], cell[1], cell[2], cell[3], cell[4], other.counts[i]);
+        }
+    }
+
+    public int getTotal() {
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += counts[i];
+        }
+        return total;
+    }
+
+    /**
+     * Distinct names seen in a dimension, by id.
+     */
+    public List<String> getNames(Dimension dimension) {
+        return new ArrayList<String>(names.get(dimension.ordinal()));
+    }
+
+    /**
+     * Counts per name of one dimension, sorted by name.
+     */
+    public Map<String, Integer> countBy(Dimension dimension) {
+        int[] totals = new int[names.get(dimension.ordinal()).size()];
+        for (int i = 0; i < size; i++) {
+            totals[component(keys[i], dimension)] += counts[i];
+        }
+        Map<String, Integer> result = new TreeMap<String, Integer>();
+        for (int id = 0; id < totals.length; id++) {
+            if (totals[id] > 0) {
+                result.put(names.get(dimension.ordinal()).get(id), totals[id]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts per pair of names of two dimensions, sorted by row then column name.
+     */
+    public Map<String, Map<String, Integer>> countBy(Dimension rows, Dimension columns) {
+        List<String> rowNames = names.get(rows.ordinal());
+        List<String> columnNames = names.get(columns.ordinal());
+        int[] totals = new int[rowNames.size() * columnNames.size()];
+        for (int i = 0; i < size; i++) {
+            totals[component(keys[i], rows) * columnNames.size() + component(keys[i], columns)] += counts[i];
+        }
+        Map<String, Map<String, Integer>> result = new TreeMap<String, Map<String, Integer>>();
+        for (int r = 0; r < rowNames.size(); r++) {
+            for (int c = 0; c < columnNames.size(); c++) {
+                int total = totals[r * columnNames.size() + c];
+                if (total == 0) {
+                    continue;
+                }
+                Map<String, Integer> row = result.get(rowNames.get(r));
+                if (row == null) {
+                    row = new TreeMap<String, Integer>();
+                    result.put(rowNames.get(r), row);
+                }
+                row.put(columnNames.get(c), total);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The status slice as the plugin has always reported it.
+     */
+    public List<MetricsResult> toMetricsList() {
+        List<MetricsResult> result = new ArrayList<MetricsResult>();
+        for (Map.Entry<String, Integer> e : countBy(Dimension.STATUS).entrySet()) {
+            result.add(new MetricsResult(e.getKey(), e.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Combinations of ids of the cells, one per count of {@link #getCounts()}.
+     */
+    long[] getKeys() {
+        return Arrays.copyOf(keys, size);
+    }
+
+    int[] getCounts() {
+        return Arrays.copyOf(counts, size);
+    }
+
+    private int encode(Dimension dimension, String name) {
+        if (name == null) {
+            name = NONE;
+        }
+        if (ids == null) {
+            buildIds();
+        }
+        Map<String, Integer> dictionary = ids.get(dimension.ordinal());
+        Integer id = dictionary.get(name);
+        if (id != null) {
+            return id;
+        }
+        List<String> dimensionNames = names.get(dimension.ordinal());
+        if (dimensionNames.size() == (1 << dimension.bits) - 1) {
+            // keep the last id for everything past the capacity
+            dimensionNames.add(OTHER);
+            dictionary.put(OTHER, dimensionNames.size() - 1);
+        }
+        if (dimensionNames.size() == 1 << dimension.bits) {
+            return dimensionNames.size() - 1;
+        }
+        id = dimensionNames.size();
+        dimensionNames.add(name);
+        dictionary.put(name, id);
+        return id;
+    }
+
+    private void decode(long key, String[] cell) {
+        for (int d = DIMENSIONS.length - 1; d >= 0; d--) {
+            int bits = DIMENSIONS[d].bits;
+            cell[d] = names.get(d).get((int) (key & ((1L << bits) - 1)));
+            key >>>= bits;
+        }
+    }
+
+    private static int component(long key, Dimension dimension) {
+        for (int d = DIMENSIONS.length - 1; d > dimension.ordinal(); d--) {
+            key >>>= DIMENSIONS[d].bits;
+        }
+        return (int) (key & ((1L << dimension.bits) - 1));
+    }
+
+    private void add(long key, int count) {
+        if (table == null || size * 2 >= table.length) {
+            rehash(Math.max(64, Integer.highestOneBit(Math.max(size, 1)) * 4));
+        }
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] != 0) {
+            int cell = table[slot] - 1;
+            if (keys[cell] == key) {
+                counts[cell] += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size == keys.length) {
+            int capacity = Math.max(16, size + (size >> 1));
+            keys = Arrays.copyOf(keys, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        keys[size] = key;
+        counts[size] = count;
+        table[slot] = ++size;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int cell = 0; cell < size; cell++) {
+            int slot = hash(keys[cell]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = cell + 1;
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void buildIds() {
+        List<Map<String, Integer>> dictionaries = new ArrayList<Map<String, Integer>>();
+        for (List<String> dimensionNames : names) {
+            Map<String, Integer> dictionary = new HashMap<String, Integer>();
+            for (int id = 0; id < dimensionNames.size(); id++) {
+                dictionary.put(dimensionNames.get(id), id);
+            }
+            dictionaries.add(dictionary);
+        }
+        ids = dictionaries;
+    }
+
+    /**
+     * Trims the arrays before the cube is stored with the build.
+     */
+    protected Object writeReplace() {
+        keys = Arrays.copyOf(keys, size);
+        counts = Arrays.copyOf(counts, size);
+        return this;
+    }
+
+    /**
+     * Shares the names of the loaded cubes, which repeat from build to build.
+     */
+    protected Object readResolve() {
+        for (List<String> dimensionNames : names) {
+            for (int id = 0; id < dimensionNames.size(); id++) {
+                dimensionNames.set(id, dimensionNames.get(id).intern());
+            }
+        }
+        return this;
+    }
+}
@@ -0,0 +1,311 @@
+package hudson.plugins.redmine;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.RootAction;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+/**
+ * Ticket metrics of every job publishing them, grouped by Redmine site, project and target version.
+ *
+ * The page is built from the latest entry of each job's {@link MetricsHistory}, so opening it sends
+ * no request to Redmine. The grouped entries are kept in memory and rebuilt in the background once
+ * a history changes, or every {@link #REBUILD_INTERVAL} so that jobs added or reconfigured in
+ * between show up. Requests are answered from the last grouping while the next one is built, and
+ * only filter it by the jobs the user can see.
+ */
+@Extension
+public class MetricsDashboard implements RootAction {
+
+    private static final Logger LOGGER = Logger.getLogger(MetricsDashboard.class.getName());
+
+    static final long REBUILD_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+
+    /** <code>null</code> until the first grouping is built. */
+    private static volatile Snapshot snapshot;
+
+    private static final AtomicBoolean REBUILDING = new AtomicBoolean();
+
+    /**
+     * Latest metrics of one job.
+     */
+    public static final class JobMetrics {
+        private final AbstractProject<?, ?> job;
+        private final MetricsHistory.Entry entry;
+
+        JobMetrics(AbstractProject<?, ?> job, MetricsHistory.Entry entry) {
+            this.job = job;
+            this.entry = entry;
+        }
+
+        public AbstractProject<?, ?> getJob() {
+            return job;
+        }
+
+        public MetricsHistory.Entry getEntry() {
+            return entry;
+        }
+
+        /**
+         * @return <code>0</code> if the job did not count the status
+         */
+        public int getCount(String status) {
+            for (MetricsResult result : entry.getMetrics()) {
+                if (result.getStatus().equals(status)) {
+                    return result.getCount();
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Jobs counting the issues of the same project and target version, ignoring the same trackers
+     * and statuses.
+     */
+    public static final class Group {
+        private final String site;
+        private final String project;
+        private final String version;
+        private final String ignoredTrackers;
+        private final String ignoredStatuses;
+        private final List<JobMetrics> jobs;
+
+        Group(String site, String project, String version, String ignoredTrackers, String ignoredStatuses,
+                List<JobMetrics> jobs) {
+            this.site = site;
+            this.project = project;
+            this.version = version;
+            this.ignoredTrackers = ignoredTrackers;
+            this.ignoredStatuses = ignoredStatuses;
+            this.jobs = jobs;
+        }
+
+        public String getSite() {
+            return site;
+        }
+
+        public String getProject() {
+            return project;
+        }
+
+        /**
+         * @return <code>null</code> for jobs counting every version
+         */
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * @return ignored tracker names, sorted and comma separated, <code>""</code> for none
+         */
+        public String getIgnoredTrackers() {
+            return ignoredTrackers;
+        }
+
+        /**
+         * @return ignored status names, sorted and comma separated, <code>""</code> for none
+         */
+        public String getIgnoredStatuses() {
+            return ignoredStatuses;
+        }
+
+        public List<JobMetrics> getJobs() {
+            return jobs;
+        }
+
+        /**
+         * The most recently recorded metrics of the group. The jobs count the same issues, so their
+         * counts are not added up: the latest one is the current state of the project.
+         */
+        public JobMetrics getLatest() {
+            JobMetrics latest = null;
+            for (JobMetrics job : jobs) {
+                if (latest == null || job.getEntry().getTimestamp() > latest.getEntry().getTimestamp()) {
+                    latest = job;
+                }
+            }
+            return latest;
+        }
+
+        /**
+         * Statuses counted by any job of the group, in the order they were first seen.
+         */
+        public Set<String> getStatuses() {
+            Set<String> statuses = new LinkedHashSet<String>();
+            for (JobMetrics job : jobs) {
+                for (MetricsResult result : job.getEntry().getMetrics()) {
+                    statuses.add(result.getStatus());
+                }
+            }
+            return statuses;
+        }
+    }
+
+    private static final class Snapshot {
+        private final long generation;
+        private final long builtAt;
+        private final List<Group> groups;
+
+        Snapshot(long generation, long builtAt, List<Group> groups) {
+            this.generation = generation;
+            this.builtAt = builtAt;
+            this.groups = groups;
+        }
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "graph.gif";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.metrics_dashboard();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "redmineMetrics";
+    }
+
+    /**
+     * Whether the first grouping is built; until then {@link #getGroups()} is empty.
+     */
+    public boolean isReady() {
+        return getSnapshot() != null;
+    }
+
+    /**
+     * Groups with the jobs the current user can read, sorted by site, project and version.
+     */
+    public List<Group> getGroups() {
+        Snapshot current = getSnapshot();
+        if (current == null) {
+            return Collections.emptyList();
+        }
+        List<Group> visible = new ArrayList<Group>();
+        for (Group group : current.groups) {
+            List<JobMetrics> jobs = new ArrayList<JobMetrics>();
+            for (JobMetrics job : group.getJobs()) {
+                if (job.getJob().hasPermission(Item.READ)) {
+                    jobs.add(job);
+                }
+            }
+            if (!jobs.isEmpty()) {
+                visible.add(jobs.size() == group.getJobs().size() ? group
+                        : new Group(group.getSite(), group.getProject(), group.getVersion(),
+                                group.getIgnoredTrackers(), group.getIgnoredStatuses(), jobs));
+            }
+        }
+        return visible;
+    }
+
+    /**
+     * The last grouping, starting a rebuild in the background if it is out of date.
+     *
+     * @return <code>null</code> until the first grouping is built
+     */
+    private static Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null || current.generation != MetricsHistory.getGeneration()
+                || System.currentTimeMillis() - current.builtAt > REBUILD_INTERVAL) {
+            scheduleRebuild();
+        }
+        return current;
+    }
+
+    private static void scheduleRebuild() {
+        if (!REBUILDING.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Timer.get().submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        // read first: a change made while building makes the result out of date
+                        long generation = MetricsHistory.getGeneration();
+                        snapshot = new Snapshot(generation, System.currentTimeMillis(), build());
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Cannot build the ticket metrics dashboard", e);
+                    } finally {
+                        REBUILDING.set(false);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            REBUILDING.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the latest entry of every job publishing metrics, whoever is asking.
+     */
+    private static List<Group> build() {
+        Map<String, Group> groups = new TreeMap<String, Group>();
+        ACLContext context = ACL.as2(ACL.SYSTEM2);
+        try {
+            for (AbstractProject<?, ?> job : Jenkins.get().getAllItems(AbstractProject.class)) {
+                RedmineProjectProperty property = job.getProperty(RedmineProjectProperty.class);
+                RedmineMetricsPublisher publisher = job.getPublishersList().get(RedmineMetricsPublisher.class);
+                if (property == null || publisher == null || property.getRedmineWebsite() == null) {
+                    continue;
+                }
+                List<MetricsHistory.Entry> entries = MetricsHistory.of(job).getEntries(job);
+                if (entries.isEmpty()) {
+                    continue;
+                }
+                String site = property.getRedmineWebsite().getName();
+                String version = publisher.getTargetVersion() == null || publisher.getTargetVersion().trim().isEmpty()
+                        ? null : publisher.getTargetVersion().trim();
+                IssueFilter filter = new IssueFilter(publisher.getIgnoreTicketTracker(), publisher.getIgnoreTicketStatus());
+                String ignoredTrackers = join(filter.getIgnoredTrackerNames());
+                String ignoredStatuses = join(filter.getIgnoredStatusNames());
+                String key = site + '\n' + property.projectName + '\n' + (version == null ? "" : version) + '\n'
+                        + ignoredTrackers + '\n' + ignoredStatuses;
+                Group group = groups.get(key);
+                if (group == null) {
+                    group = new Group(site, property.projectName, version, ignoredTrackers, ignoredStatuses,
+                            new ArrayList<JobMetrics>());
+                    groups.put(key, group);
+                }
+                group.getJobs().add(new JobMetrics(job, entries.get(entries.size() - 1)));
+            }
+        } finally {
+            context.close();
+        }
+        return Collections.unmodifiableList(new ArrayList<Group>(groups.values()));
+    }
+
+    private static String join(Collection<String> names) {
+        StringBuilder sb = new StringBuilder();
+        for (String name : new TreeSet<String>(names)) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(name);
+        }
+        return sb.toString();
+    }
+}
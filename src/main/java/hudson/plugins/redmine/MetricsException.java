@@ -10,4 +10,8 @@ public class MetricsException extends Exception {
         super(e);
     }
 
+    public MetricsException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
 }
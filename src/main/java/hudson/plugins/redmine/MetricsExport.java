@@ -0,0 +1,152 @@
+package hudson.plugins.redmine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.json.util.JSONUtils;
+
+import org.kohsuke.stapler.StaplerRequest;
+
+/**
+ * Part of a job's metrics history served by {@link MetricsProjectAction#doExport}, written row by
+ * row from the history index as JSON or CSV.
+ *
+ * Query parameters: <code>fromBuild</code> and <code>toBuild</code> bound the build numbers,
+ * <code>from</code> and <code>to</code> (<code>yyyy-MM-dd</code>, inclusive) the dates,
+ * <code>offset</code> skips that many matching builds and <code>limit</code> caps the page
+ * ({@value #DEFAULT_LIMIT} by default, at most {@value #MAX_LIMIT}).
+ */
+public final class MetricsExport {
+
+    public enum Format {
+        JSON("application/json;charset=UTF-8"), CSV("text/csv;charset=UTF-8");
+
+        private final String contentType;
+
+        Format(String contentType) {
+            this.contentType = contentType;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    static final int DEFAULT_LIMIT = 1000;
+    static final int MAX_LIMIT = 10000;
+
+    private final int fromBuild;
+    private final int toBuild;
+    private final long from;
+    private final long to;
+    private final int offset;
+    private final int limit;
+
+    MetricsExport(int fromBuild, int toBuild, long from, long to, int offset, int limit) {
+        this.fromBuild = fromBuild;
+        this.toBuild = toBuild;
+        this.from = from;
+        this.to = to;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    /**
+     * Reads the range from the query parameters; invalid values are ignored.
+     */
+    static MetricsExport fromRequest(StaplerRequest req) {
+        long to = MetricsWindow.parseDate(req.getParameter("to"), Long.MAX_VALUE);
+        if (to != Long.MAX_VALUE) {
+            // the whole day
+            to += TimeUnit.DAYS.toMillis(1) - 1;
+        }
+        return new MetricsExport(parseInt(req.getParameter("fromBuild"), 0),
+                parseInt(req.getParameter("toBuild"), Integer.MAX_VALUE),
+                MetricsWindow.parseDate(req.getParameter("from"), Long.MIN_VALUE), to,
+                parseInt(req.getParameter("offset"), 0),
+                Math.min(MAX_LIMIT, Math.max(1, parseInt(req.getParameter("limit"), DEFAULT_LIMIT))));
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Writes one page of the matching entries, oldest first.
+     *
+     * @param entries whole history, oldest first
+     */
+    void write(List<MetricsHistory.Entry> entries, Format format, Writer out) throws IOException {
+        if (format == Format.CSV) {
+            out.write("build,timestamp,result,status,count\n");
+        } else {
+            out.write("{\"offset\":" + offset + ",\"limit\":" + limit + ",\"builds\":[");
+        }
+        int skipped = 0;
+        int written = 0;
+        boolean more = false;
+        for (int i = MetricsAction.indexBefore(entries, fromBuild) + 1; i < entries.size(); i++) {
+            MetricsHistory.Entry entry = entries.get(i);
+            if (entry.getBuildNumber() > toBuild) {
+                break;
+            }
+            if (entry.getTimestamp() < from || entry.getTimestamp() > to) {
+                continue;
+            }
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            if (written == limit) {
+                more = true;
+                break;
+            }
+            if (format == Format.CSV) {
+                writeCsv(entry, out);
+            } else {
+                writeJson(entry, written > 0, out);
+            }
+            written++;
+        }
+        if (format == Format.JSON) {
+            out.write("],\"next\":" + (more ? String.valueOf(offset + limit) : "null") + "}");
+        }
+    }
+
+    private static void writeJson(MetricsHistory.Entry entry, boolean comma, Writer out) throws IOException {
+        StringBuilder sb = new StringBuilder(comma ? "," : "");
+        sb.append("{\"number\":").append(entry.getBuildNumber());
+        sb.append(",\"timestamp\":").append(entry.getTimestamp());
+        sb.append(",\"result\":").append(entry.getResult() == null ? "null" : JSONUtils.quote(entry.getResult().toString()));
+        sb.append(",\"metrics\":{");
+        for (int i = 0; i < entry.getMetrics().size(); i++) {
+            MetricsResult result = entry.getMetrics().get(i);
+            sb.append(i > 0 ? "," : "").append(JSONUtils.quote(result.getStatus())).append(':').append(result.getCount());
+        }
+        out.write(sb.append("}}").toString());
+    }
+
+    private static void writeCsv(MetricsHistory.Entry entry, Writer out) throws IOException {
+        String prefix = entry.getBuildNumber() + "," + entry.getTimestamp() + ","
+                + (entry.getResult() == null ? "" : entry.getResult().toString()) + ",";
+        for (MetricsResult result : entry.getMetrics()) {
+            out.write(prefix + csv(result.getStatus()) + "," + result.getCount() + "\n");
+        }
+    }
+
+    static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,134 @@
+package hudson.plugins.redmine;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares metrics fetches between builds of one {@link RedmineSite} asking the same question at the
+ * same time, such as the branches of a multibranch project or the configurations of a matrix job.
+ *
+ * The first build to ask runs the fetch on its own thread; builds asking while it runs wait for its
+ * result. A completed result is also handed out for a short freshness window chosen by the caller.
+ * Failures are not kept: the next build tries again. A fetch stopped because the build running it
+ * was aborted is run again for the builds waiting for it.
+ */
+final class MetricsFetchCoordinator {
+
+    /** Results are dropped once this old, whatever the freshness asked for. */
+    static final long MAX_FRESHNESS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Status counts and breakdown of one fetch.
+     */
+    static final class Result {
+        private final List<MetricsResult> metrics;
+        private final MetricsCube cube;
+
+        Result(List<MetricsResult> metrics, MetricsCube cube) {
+            this.metrics = metrics;
+            this.cube = cube;
+        }
+
+        List<MetricsResult> getMetrics() {
+            return metrics;
+        }
+
+        /**
+         * @return <code>null</code> in count-only mode
+         */
+        MetricsCube getCube() {
+            return cube;
+        }
+    }
+
+    private static final class Flight extends FutureTask<Result> {
+        /** When the fetch succeeded, <code>0</code> while it runs or if it failed. */
+        private volatile long completedAt;
+        private volatile boolean failed;
+        /** Whether it failed because the thread running it was interrupted. */
+        private volatile boolean interrupted;
+
+        Flight(Callable<Result> fetch) {
+            super(fetch);
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            failed = true;
+            interrupted = Thread.currentThread().isInterrupted() || isInterrupt(t);
+            super.setException(t);
+        }
+
+        @Override
+        protected void done() {
+            if (!failed) {
+                completedAt = System.currentTimeMillis();
+            }
+        }
+    }
+
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+
+    /**
+     * Returns the result of the fetch in flight for the key, or of one completed less than
+     * <code>freshness</code> milliseconds ago, running the given fetch otherwise.
+     */
+    Result fetch(String key, long freshness, Callable<Result> fetch) throws MetricsException, InterruptedException {
+        purge();
+        while (true) {
+            Flight flight = flights.get(key);
+            if (flight == null || (flight.isDone() || flight.failed) && !isFresh(flight, freshness)) {
+                Flight created = new Flight(fetch);
+                boolean mine = flight == null ? flights.putIfAbsent(key, created) == null
+                        : flights.replace(key, flight, created);
+                if (!mine) {
+                    continue;
+                }
+                flight = created;
+                flight.run();
+            }
+            try {
+                return flight.get();
+            } catch (ExecutionException e) {
+                flights.remove(key, flight);
+                if (flight.interrupted && !Thread.currentThread().isInterrupted()) {
+                    // the build running the fetch was aborted, not this one
+                    continue;
+                }
+                if (e.getCause() instanceof MetricsException) {
+                    throw (MetricsException) e.getCause();
+                }
+                throw new MetricsException("Cannot collect ticket metrics", e.getCause());
+            }
+        }
+    }
+
+    private static boolean isInterrupt(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isFresh(Flight flight, long freshness) {
+        return flight.completedAt > 0
+                && System.currentTimeMillis() - flight.completedAt <= Math.min(freshness, MAX_FRESHNESS);
+    }
+
+    private void purge() {
+        for (Iterator<Flight> it = flights.values().iterator(); it.hasNext();) {
+            Flight flight = it.next();
+            if (flight.isDone() && !isFresh(flight, MAX_FRESHNESS)) {
+                it.remove();
+            }
+        }
+    }
+}
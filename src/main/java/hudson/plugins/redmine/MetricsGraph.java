@@ -1,20 +1,31 @@
 package hudson.plugins.redmine;
 
 import hudson.model.AbstractProject;
-import hudson.model.Run;
 import hudson.util.Graph;
-import hudson.util.RunList;
 import hudson.util.ShiftedCategoryAxis;
 
 import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
 
 import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartRenderingInfo;
+import org.jfree.chart.ChartUtilities;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.CategoryAxis;
 import org.jfree.chart.axis.CategoryLabelPositions;
@@ -23,30 +34,239 @@ import org.jfree.chart.plot.CategoryPlot;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.data.category.DefaultCategoryDataset;
 import org.jfree.ui.RectangleInsets;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 
+/**
+ * Trend of the ticket metrics of a job.
+ *
+ * The graph is as old as the job's {@link MetricsHistory}: browsers revalidate it with the ETag,
+ * which follows the revision of the history, or <code>If-Modified-Since</code>, and renderings are
+ * kept in {@link MetricsGraphCache} until the history changes, be it by a new build, a deleted one
+ * or a rebuilt file. The builds shown are chosen by a {@link MetricsWindow}, so
+ * the number of categories is bounded by the width of the image rather than by the age of the job.
+ * Renderings run on the {@link MetricsRenderPool} rather than on the request thread.
+ */
 public class MetricsGraph extends Graph {
 
+    private static final int DEFAULT_WIDTH = 640;
+    private static final int DEFAULT_HEIGHT = 480;
+
+    /** Same bound as Jenkins puts on graphs, against requests for huge images. */
+    private static final int MAX_AREA = 10000000;
+
     private AbstractProject<?, ?> project;
+    private final List<MetricsHistory.Entry> entries;
+    private final long lastModified;
+    private final String revision;
+    private List<MetricsWindow.Point> points;
 
-    private DefaultCategoryDataset createDataset() {
-        List<MetricsAction> actions = new ArrayList<MetricsAction>();
-        RunList<?> builds = project.getBuilds();
-        for (Run<?, ?> run : builds) {
-            MetricsAction action = run.getAction(MetricsAction.class);
-            if (action == null) {
-                continue;
+    public MetricsGraph(AbstractProject<?, ?> project) {
+        this(project, MetricsHistory.of(project));
+    }
+
+    private MetricsGraph(AbstractProject<?, ?> project, MetricsHistory history) {
+        // the revision is read first, so that a change in between is at worst rendered twice
+        this(project, history.getRevision(), history.getEntries(project), history.getLastModified());
+    }
+
+    private MetricsGraph(AbstractProject<?, ?> project, String revision, List<MetricsHistory.Entry> entries,
+            long historyModified) {
+        super(lastModified(entries, historyModified), DEFAULT_WIDTH, DEFAULT_HEIGHT);
+        this.project = project;
+        this.entries = entries;
+        this.lastModified = lastModified(entries, historyModified);
+        this.revision = (entries.isEmpty() ? 0 : entries.get(entries.size() - 1).getBuildNumber()) + "-" + revision;
+    }
+
+    private static long lastModified(List<MetricsHistory.Entry> entries, long historyModified) {
+        long timestamp = historyModified;
+        for (MetricsHistory.Entry entry : entries) {
+            timestamp = Math.max(timestamp, entry.getTimestamp());
+        }
+        return timestamp;
+    }
+
+    @Override
+    public void doPng(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        MetricsGraphCache.Rendering rendering = getRendering(req, rsp);
+        if (rendering != null) {
+            rsp.setContentType("image/png");
+            rsp.getOutputStream().write(rendering.getPng());
+        }
+    }
+
+    @Override
+    public void doMap(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        MetricsGraphCache.Rendering rendering = getRendering(req, rsp);
+        if (rendering != null) {
+            rsp.setContentType("text/plain;charset=UTF-8");
+            rsp.getWriter().write(rendering.getMap());
+        }
+    }
+
+    /**
+     * Serves the data of the graph rather than the image, for charts drawn by the browser: the
+     * category labels, the build of each category and the counts of each status per category.
+     */
+    public void doJson(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        MetricsWindow window = MetricsWindow.fromRequest(req);
+        if (isNotModified(req, rsp, "\"" + revision + "-json/" + window.getKey() + '"')) {
+            return;
+        }
+        List<MetricsWindow.Point> selected = window.select(entries,
+                parseSize(req.getParameter("width"), DEFAULT_WIDTH));
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().write(toJSON(selected).toString());
+    }
+
+    static JSONObject toJSON(List<MetricsWindow.Point> points) {
+        JSONArray labels = new JSONArray();
+        JSONArray builds = new JSONArray();
+        Map<String, int[]> counts = new LinkedHashMap<String, int[]>();
+        for (int i = 0; i < points.size(); i++) {
+            MetricsWindow.Point point = points.get(i);
+            labels.add(point.getLabel());
+            builds.add(point.getEntry().getBuildNumber());
+            for (MetricsResult result : point.getEntry().getMetrics()) {
+                int[] series = counts.get(result.getStatus());
+                if (series == null) {
+                    series = new int[points.size()];
+                    counts.put(result.getStatus(), series);
+                }
+                series[i] = result.getCount();
             }
-            actions.add(action);
         }
+        JSONArray series = new JSONArray();
+        for (Map.Entry<String, int[]> e : counts.entrySet()) {
+            JSONObject status = new JSONObject();
+            status.put("status", e.getKey());
+            status.put("counts", JSONArray.fromObject(e.getValue()));
+            series.add(status);
+        }
+        JSONObject data = new JSONObject();
+        data.put("labels", labels);
+        data.put("builds", builds);
+        data.put("series", series);
+        return data;
+    }
 
-        Collections.reverse(actions);
+    /**
+     * Answers conditional requests and returns the rendering to send, or <code>null</code> if the
+     * response is already complete.
+     */
+    private MetricsGraphCache.Rendering getRendering(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        final int width = parseSize(req.getParameter("width"), DEFAULT_WIDTH);
+        final int height = parseSize(req.getParameter("height"), DEFAULT_HEIGHT);
+        if ((long) width * height > MAX_AREA) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Image too large");
+            return null;
+        }
+
+        final MetricsWindow window = MetricsWindow.fromRequest(req);
+        final String variant = width + "x" + height + '/' + window.getKey();
+        if (isNotModified(req, rsp, "\"" + revision + '-' + variant + '"')) {
+            return null;
+        }
+
+        MetricsGraphCache.Rendering rendering = MetricsGraphCache.get(project.getRootDir(), revision, variant);
+        if (rendering != null) {
+            return rendering;
+        }
+        try {
+            return MetricsRenderPool.render(project.getRootDir().getAbsolutePath() + '@' + revision + '@' + variant,
+                    new Callable<MetricsGraphCache.Rendering>() {
+                        @Override
+                        public MetricsGraphCache.Rendering call() throws IOException {
+                            MetricsGraphCache.Rendering rendered = render(width, height, window);
+                            MetricsGraphCache.put(project.getRootDir(), variant, rendered);
+                            return rendered;
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            busy(rsp);
+            return null;
+        } catch (TimeoutException e) {
+            busy(rsp);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering the graph", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot render the graph", e.getCause());
+        }
+    }
+
+    /**
+     * Sends the validators and answers a conditional request. <code>If-Modified-Since</code> only
+     * counts when there is no <code>If-None-Match</code>: its one second resolution would hide a
+     * change made within the second of the previous one.
+     *
+     * @return <code>true</code> if the response is complete
+     */
+    private boolean isNotModified(StaplerRequest req, StaplerResponse rsp, String etag) throws IOException {
+        rsp.setHeader("ETag", etag);
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch == null) {
+            return req.checkIfModified(lastModified, rsp);
+        }
+        rsp.setDateHeader("Last-Modified", lastModified);
+        if (ifNoneMatch.contains(etag)) {
+            rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        return false;
+    }
+
+    private static void busy(StaplerResponse rsp) throws IOException {
+        rsp.setHeader("Retry-After", "5");
+        rsp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many graphs being rendered");
+    }
+
+    private MetricsGraphCache.Rendering render(int width, int height, MetricsWindow window) throws IOException {
+        points = window.select(entries, width);
+        ChartRenderingInfo info = new ChartRenderingInfo();
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ChartUtilities.writeChartAsPNG(png, createGraph(), width, height, info);
+        return new MetricsGraphCache.Rendering(revision, png.toByteArray(), ChartUtilities.getImageMap("map", info));
+    }
+
+    private static int parseSize(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int size = Integer.parseInt(value);
+            return size > 0 ? size : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private DefaultCategoryDataset createDataset() {
+        if (points == null) {
+            points = new MetricsWindow(0, Long.MIN_VALUE, Long.MAX_VALUE, null).select(entries, DEFAULT_WIDTH);
+        }
+        List<String> labels = new ArrayList<String>(points.size());
+        List<List<MetricsResult>> metricsLists = new ArrayList<List<MetricsResult>>(points.size());
+        for (MetricsWindow.Point point : points) {
+            labels.add(point.getLabel());
+            metricsLists.add(point.getEntry().getMetrics());
+        }
+        return createDataset(labels, metricsLists);
+    }
+
+    /**
+     * Builds the chart data from the metrics of each category, oldest first.
+     */
+    static DefaultCategoryDataset createDataset(List<String> labels, List<List<MetricsResult>> metricsLists) {
         Set<String> statusSet = new HashSet<String>();
 
         DefaultCategoryDataset ds = new DefaultCategoryDataset();
-        for (MetricsAction action : actions) {
-            String buildNum = "#" + action.getBuild().getNumber();
+        for (int i = 0; i < labels.size(); i++) {
+            String buildNum = labels.get(i);
             boolean addedValue = false;
-            List<MetricsResult> metricsList = action.getMetricsList();
+            List<MetricsResult> metricsList = metricsLists.get(i);
             for (MetricsResult result : metricsList) {
                 statusSet.add(result.getStatus());
                 ds.addValue(result.getCount(), result.getStatus(), buildNum);
@@ -61,11 +281,6 @@ public class MetricsGraph extends Graph {
         return ds;
     }
 
-    public MetricsGraph(AbstractProject<?, ?> project) {
-        super(Calendar.getInstance(), 640, 480);
-        this.project = project;
-    }
-
     @Override
     protected JFreeChart createGraph() {
         DefaultCategoryDataset dataset = createDataset();
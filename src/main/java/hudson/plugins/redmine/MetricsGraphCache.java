@@ -0,0 +1,81 @@
+package hudson.plugins.redmine;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rendered trend graphs, per job, size and window, valid as long as the revision of the job's
+ * {@link MetricsHistory} stays the same. {@link MetricsHistory} evicts the graphs of a job whenever its history
+ * changes.
+ */
+final class MetricsGraphCache {
+
+    private static final int MAX_ENTRIES = 64;
+
+    /** Least recently used first; guarded by itself. */
+    private static final Map<String, Rendering> CACHE = new LinkedHashMap<String, Rendering>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Rendering> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * PNG and image map of one rendering of the chart.
+     */
+    static final class Rendering {
+        private final String revision;
+        private final byte[] png;
+        private final String map;
+
+        Rendering(String revision, byte[] png, String map) {
+            this.revision = revision;
+            this.png = png;
+            this.map = map;
+        }
+
+        byte[] getPng() {
+            return png;
+        }
+
+        String getMap() {
+            return map;
+        }
+    }
+
+    private MetricsGraphCache() {
+    }
+
+    /**
+     * @return <code>null</code> if the graph was not rendered yet for this revision, size and window
+     */
+    static Rendering get(File jobDir, String revision, String variant) {
+        synchronized (CACHE) {
+            Rendering rendering = CACHE.get(key(jobDir, variant));
+            return rendering != null && rendering.revision.equals(revision) ? rendering : null;
+        }
+    }
+
+    static void put(File jobDir, String variant, Rendering rendering) {
+        synchronized (CACHE) {
+            CACHE.put(key(jobDir, variant), rendering);
+        }
+    }
+
+    static void invalidate(File jobDir) {
+        String prefix = jobDir.getAbsolutePath() + '@';
+        synchronized (CACHE) {
+            for (Iterator<String> it = CACHE.keySet().iterator(); it.hasNext();) {
+                if (it.next().startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private static String key(File jobDir, String variant) {
+        return jobDir.getAbsolutePath() + '@' + variant;
+    }
+}
@@ -0,0 +1,507 @@
+package hudson.plugins.redmine;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Status counts of every build of a job, in one append-only file next to the builds so that the
+ * trend graph does not have to load each build record.
+ *
+ * The file starts with a magic number followed by records: a status name with the id it is encoded
+ * as from then on, a build with its timestamp and (status id, count) pairs, the result of a build
+ * once it is final, or the deletion of a build. A build recorded twice keeps its last record. Jobs
+ * created before the file existed get it rebuilt from their builds on first use.
+ *
+ * The entries are sorted by build number, which makes the file an index of the builds with metrics
+ * that can be paged through without loading any build.
+ */
+public final class MetricsHistory {
+
+    private static final Logger LOGGER = Logger.getLogger(MetricsHistory.class.getName());
+
+    public static final String FILE_NAME = "redmine-metrics-history.bin";
+
+    private static final int MAGIC = 0x524d4831; // "RMH1"
+
+    private static final byte STATUS = 1;
+    private static final byte BUILD = 2;
+    private static final byte DELETED = 3;
+    private static final byte RESULT = 4;
+
+    private static final ConcurrentMap<String, MetricsHistory> HISTORIES = new ConcurrentHashMap<String, MetricsHistory>();
+
+    /** Incremented whenever the history of any job changes. */
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    /**
+     * Metrics of one build.
+     */
+    @ExportedBean(defaultVisibility = 999)
+    public static final class Entry {
+        private final int buildNumber;
+        private final long timestamp;
+        private final List<MetricsResult> metrics;
+        private final Result result;
+
+        Entry(int buildNumber, long timestamp, List<MetricsResult> metrics) {
+            this(buildNumber, timestamp, metrics, null);
+        }
+
+        Entry(int buildNumber, long timestamp, List<MetricsResult> metrics, Result result) {
+            this.buildNumber = buildNumber;
+            this.timestamp = timestamp;
+            this.metrics = Collections.unmodifiableList(metrics);
+            this.result = result;
+        }
+
+        @Exported(name = "number")
+        public int getBuildNumber() {
+            return buildNumber;
+        }
+
+        @Exported
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public Date getTime() {
+            return new Date(timestamp);
+        }
+
+        @Exported
+        public List<MetricsResult> getMetrics() {
+            return metrics;
+        }
+
+        /**
+         * @return <code>null</code> until the build is finalized
+         */
+        @Exported
+        public Result getResult() {
+            return result;
+        }
+    }
+
+    private final File file;
+
+    /** Dictionary as of the end of the file; guarded by this. */
+    private final Map<String, Integer> statusIds = new HashMap<String, Integer>();
+
+    /** Entries as of {@link #cachedLength}, oldest first; guarded by this. */
+    private List<Entry> cached;
+    private long cachedLength = -1;
+
+    /** Changes of the file through this instance; guarded by this. */
+    private long writes;
+
+    MetricsHistory(File file) {
+        this.file = file;
+    }
+
+    public static MetricsHistory of(Job<?, ?> job) {
+        File file = new File(job.getRootDir(), FILE_NAME);
+        String path = file.getAbsolutePath();
+        MetricsHistory history = HISTORIES.get(path);
+        if (history == null) {
+            MetricsHistory created = new MetricsHistory(file);
+            history = HISTORIES.putIfAbsent(path, created);
+            if (history == null) {
+                history = created;
+            }
+        }
+        return history;
+    }
+
+    /**
+     * Entries of the builds with metrics, oldest first, building the file from the job's builds if
+     * it does not exist yet, or rebuilding it if it cannot be read.
+     */
+    public synchronized List<Entry> getEntries(Job<?, ?> job) {
+        return getEntries(builds(job));
+    }
+
+    /**
+     * @param builds entries of the builds, to build the file from
+     */
+    synchronized List<Entry> getEntries(Supplier<List<Entry>> builds) {
+        try {
+            migrate(builds);
+            return getEntries();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot read " + file + ", rebuilding it from the builds", e);
+            List<Entry> entries = builds.get();
+            try {
+                create(entries);
+            } catch (IOException rebuild) {
+                LOGGER.log(Level.WARNING, "Cannot rebuild " + file, rebuild);
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Records the metrics of a build, replacing any earlier record of the same build. If that fails,
+     * the file is removed so that the next read rebuilds it from the builds.
+     */
+    public synchronized void append(Run<?, ?> build, List<MetricsResult> metrics) throws IOException {
+        migrate(builds(build.getParent()));
+        append(build.getNumber(), build.getTimeInMillis(), metrics);
+    }
+
+    synchronized List<Entry> getEntries() throws IOException {
+        if (cached == null || cachedLength != file.length()) {
+            read();
+        }
+        return cached;
+    }
+
+    synchronized void append(int buildNumber, long timestamp, List<MetricsResult> metrics) throws IOException {
+        try {
+            if (cachedLength != file.length()) {
+                // the dictionary must be current before new names are given ids
+                read();
+            }
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            try {
+                writeBuild(out, buildNumber, timestamp, metrics);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            if (!file.delete() && file.exists()) {
+                LOGGER.log(Level.WARNING, "Cannot remove {0}", file);
+            }
+            throw e;
+        } finally {
+            // the next read starts over, which keeps the rules for duplicates in one place
+            cachedLength = -1;
+            changed();
+        }
+    }
+
+    synchronized void delete(int buildNumber) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        try {
+            out.writeByte(DELETED);
+            out.writeInt(buildNumber);
+        } finally {
+            out.close();
+        }
+        cachedLength = -1;
+        changed();
+    }
+
+    synchronized void setResult(int buildNumber, Result result) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        try {
+            out.writeByte(RESULT);
+            out.writeInt(buildNumber);
+            out.writeUTF(result.toString());
+        } finally {
+            out.close();
+        }
+        cachedLength = -1;
+        changed();
+    }
+
+    /**
+     * Changes whenever the history of any job changes, so that views derived from several
+     * histories know when to rebuild.
+     */
+    public static long getGeneration() {
+        return GENERATION.get();
+    }
+
+    /**
+     * Identifies the content of the history, for validators and caches of views derived from it.
+     * It changes with every append, deletion, result or rebuild, and survives a restart: the file
+     * only grows between rebuilds, and a rebuild replaces it.
+     */
+    public synchronized String getRevision() {
+        return file.length() + "." + file.lastModified() + "." + writes;
+    }
+
+    /**
+     * When the history last changed, or <code>0</code> if it has no file yet.
+     */
+    public synchronized long getLastModified() {
+        return file.lastModified();
+    }
+
+    private void changed() {
+        writes++;
+        GENERATION.incrementAndGet();
+        MetricsGraphCache.invalidate(file.getParentFile());
+    }
+
+    /**
+     * Drops the history of a deleted job, and those of jobs whose directory was moved away by a
+     * rename.
+     */
+    static void evict(File jobDir) {
+        for (Iterator<MetricsHistory> it = HISTORIES.values().iterator(); it.hasNext();) {
+            File dir = it.next().file.getParentFile();
+            if (dir.equals(jobDir) || !dir.exists()) {
+                it.remove();
+            }
+        }
+    }
+
+    private void migrate(Supplier<List<Entry>> builds) throws IOException {
+        if (file.exists()) {
+            return;
+        }
+        List<Entry> entries = builds.get();
+        LOGGER.log(Level.FINE, "Building {0} from {1} builds", new Object[] { file, entries.size() });
+        create(entries);
+    }
+
+    /**
+     * Writes a new file holding the given entries, oldest first.
+     */
+    synchronized void create(List<Entry> entries) throws IOException {
+        statusIds.clear();
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            for (Entry entry : entries) {
+                writeBuild(out, entry.getBuildNumber(), entry.getTimestamp(), entry.getMetrics());
+                if (entry.getResult() != null) {
+                    out.writeByte(RESULT);
+                    out.writeInt(entry.getBuildNumber());
+                    out.writeUTF(entry.getResult().toString());
+                }
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        cached = Collections.unmodifiableList(new ArrayList<Entry>(entries));
+        cachedLength = file.length();
+        changed();
+    }
+
+    private static Supplier<List<Entry>> builds(final Job<?, ?> job) {
+        return new Supplier<List<Entry>>() {
+            @Override
+            public List<Entry> get() {
+                return fromBuilds(job);
+            }
+        };
+    }
+
+    private static List<Entry> fromBuilds(Job<?, ?> job) {
+        List<Entry> entries = new ArrayList<Entry>();
+        for (Run<?, ?> run : job.getBuilds()) {
+            MetricsAction action = run.getAction(MetricsAction.class);
+            if (action != null) {
+                entries.add(new Entry(run.getNumber(), run.getTimeInMillis(), action.getMetricsList(),
+                        run.isBuilding() ? null : run.getResult()));
+            }
+        }
+        Collections.reverse(entries);
+        return entries;
+    }
+
+    private void writeBuild(DataOutputStream out, int buildNumber, long timestamp, List<MetricsResult> metrics)
+            throws IOException {
+        for (MetricsResult result : metrics) {
+            if (!statusIds.containsKey(result.getStatus())) {
+                int id = statusIds.size();
+                statusIds.put(result.getStatus(), id);
+                out.writeByte(STATUS);
+                out.writeInt(id);
+                out.writeUTF(result.getStatus());
+            }
+        }
+        out.writeByte(BUILD);
+        out.writeInt(buildNumber);
+        out.writeLong(timestamp);
+        out.writeInt(metrics.size());
+        for (MetricsResult result : metrics) {
+            out.writeInt(statusIds.get(result.getStatus()));
+            out.writeInt(result.getCount());
+        }
+    }
+
+    private void read() throws IOException {
+        long length = file.length();
+        Map<Integer, String> names = new HashMap<Integer, String>();
+        TreeMap<Integer, Entry> entries = new TreeMap<Integer, Entry>();
+        CountingInputStream counter;
+        try {
+            counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException e) {
+            throw new IOException(file + " disappeared", e);
+        }
+        DataInputStream in = new DataInputStream(counter);
+        long complete = -1;
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a metrics history");
+            }
+            while (true) {
+                complete = counter.getByteCount();
+                int type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (type == STATUS) {
+                    int id = in.readInt();
+                    names.put(id, in.readUTF());
+                } else if (type == BUILD) {
+                    int number = in.readInt();
+                    long timestamp = in.readLong();
+                    int n = in.readInt();
+                    List<MetricsResult> metrics = new ArrayList<MetricsResult>(n);
+                    for (int i = 0; i < n; i++) {
+                        String status = names.get(in.readInt());
+                        metrics.add(new MetricsResult(status, in.readInt()));
+                    }
+                    entries.put(number, new Entry(number, timestamp, metrics));
+                } else if (type == DELETED) {
+                    entries.remove(in.readInt());
+                } else if (type == RESULT) {
+                    int number = in.readInt();
+                    Result result = Result.fromString(in.readUTF());
+                    Entry entry = entries.get(number);
+                    if (entry != null) {
+                        entries.put(number, new Entry(number, entry.getTimestamp(), entry.getMetrics(), result));
+                    }
+                } else {
+                    throw new IOException("Unknown record " + type + " in " + file);
+                }
+            }
+        } catch (EOFException e) {
+            if (complete < 0) {
+                throw e;
+            }
+            // an append cut short by a crash: drop it, or the next appends would not be readable
+            LOGGER.log(Level.WARNING, "Truncated record at the end of {0}, removing it", file);
+            length = complete;
+        } finally {
+            in.close();
+        }
+        if (length < file.length()) {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(length);
+            } finally {
+                raf.close();
+            }
+        }
+
+        statusIds.clear();
+        for (Map.Entry<Integer, String> e : names.entrySet()) {
+            statusIds.put(e.getValue(), e.getKey());
+        }
+        cached = Collections.unmodifiableList(new ArrayList<Entry>(entries.values()));
+        cachedLength = length;
+    }
+
+    /**
+     * Records the final result of builds and drops deleted builds from the history of their job.
+     */
+    @Extension
+    public static class HistoryListener extends RunListener<Run<?, ?>> {
+        @Override
+        public void onFinalized(Run<?, ?> run) {
+            if (run.getAction(MetricsAction.class) == null || run.getResult() == null) {
+                return;
+            }
+            try {
+                of(run.getParent()).setResult(run.getNumber(), run.getResult());
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Cannot record the result of " + run + " in the metrics history", e);
+            }
+        }
+
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            if (run.getAction(MetricsAction.class) == null) {
+                return;
+            }
+            try {
+                of(run.getParent()).delete(run.getNumber());
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Cannot remove " + run + " from the metrics history", e);
+            }
+        }
+    }
+
+    /**
+     * Forgets the histories and dictionaries of deleted and renamed jobs, which would otherwise stay
+     * in memory for the life of Jenkins.
+     */
+    @Extension
+    public static class JobListener extends ItemListener {
+        @Override
+        public void onDeleted(Item item) {
+            if (item instanceof Job) {
+                forget(((Job<?, ?>) item).getRootDir());
+            }
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            if (item instanceof Job) {
+                // the old directory is gone by now
+                forget(null);
+            }
+        }
+
+        private static void forget(File jobDir) {
+            evict(jobDir);
+            StatusDictionary.evict(jobDir);
+            if (jobDir != null) {
+                MetricsGraphCache.invalidate(jobDir);
+            }
+        }
+    }
+}
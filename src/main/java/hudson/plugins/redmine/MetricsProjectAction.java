@@ -2,14 +2,41 @@ package hudson.plugins.redmine;
 
 import hudson.model.Action;
 import hudson.model.AbstractProject;
+import hudson.model.Api;
 import hudson.util.Graph;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+@ExportedBean
 public class MetricsProjectAction implements Action {
 
+    /** Builds listed on the page; the export has all of them. */
+    static final int HISTORY_ROWS = 50;
+
     private AbstractProject<?, ?> project;
+    private final boolean clientSideChart;
 
     public MetricsProjectAction(AbstractProject<?, ?> project) {
+        this(project, false);
+    }
+
+    /**
+     * @param clientSideChart whether the page draws the trend in the browser from {@link #doChartData}
+     *            instead of showing the rendered image
+     */
+    public MetricsProjectAction(AbstractProject<?, ?> project, boolean clientSideChart) {
         this.project = project;
+        this.clientSideChart = clientSideChart;
     }
 
     @Override
@@ -30,4 +57,78 @@ public class MetricsProjectAction implements Action {
     public Graph getGraph() {
         return new MetricsGraph(project);
     }
+
+    public boolean isClientSideChart() {
+        return clientSideChart;
+    }
+
+    /**
+     * Query string of the window the page was requested with, for the graph and its data.
+     */
+    public String getWindowQuery(StaplerRequest req) {
+        return MetricsWindow.fromRequest(req).toQueryString();
+    }
+
+    /**
+     * Counts behind the trend graph, as JSON; takes the same parameters as the graph.
+     */
+    public void doChartData(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        new MetricsGraph(project).doJson(req, rsp);
+    }
+
+    /**
+     * Metrics of the latest {@value #HISTORY_ROWS} builds, newest first.
+     */
+    public List<MetricsHistory.Entry> getHistory() {
+        List<MetricsHistory.Entry> entries = MetricsHistory.of(project).getEntries(project);
+        List<MetricsHistory.Entry> history = new ArrayList<MetricsHistory.Entry>(
+                entries.subList(Math.max(0, entries.size() - HISTORY_ROWS), entries.size()));
+        Collections.reverse(history);
+        return history;
+    }
+
+    /**
+     * Number of builds with metrics, including those not listed by {@link #getHistory()}.
+     */
+    public int getHistorySize() {
+        return MetricsHistory.of(project).getEntries(project).size();
+    }
+
+    /**
+     * Metrics of the latest build that has them, <code>null</code> if there is none.
+     */
+    @Exported
+    public MetricsHistory.Entry getLatest() {
+        List<MetricsHistory.Entry> entries = MetricsHistory.of(project).getEntries(project);
+        return entries.isEmpty() ? null : entries.get(entries.size() - 1);
+    }
+
+    public Api getApi() {
+        return new Api(this);
+    }
+
+    /**
+     * Serves the metrics history as JSON, or as CSV with <code>format=csv</code>, one status per
+     * row. See {@link MetricsExport} for the range and paging parameters.
+     */
+    public void doExport(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        MetricsExport.Format format = MetricsExport.Format.JSON;
+        String f = req.getParameter("format");
+        if (f != null) {
+            try {
+                format = MetricsExport.Format.valueOf(f.toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                rsp.sendError(StaplerResponse.SC_BAD_REQUEST, "Unknown format: " + f);
+                return;
+            }
+        }
+        MetricsExport export = MetricsExport.fromRequest(req);
+        rsp.setContentType(format.getContentType());
+        if (format == MetricsExport.Format.CSV) {
+            rsp.setHeader("Content-Disposition", "attachment; filename=ticket-metrics.csv");
+        }
+        Writer out = rsp.getWriter();
+        export.write(MetricsHistory.of(project).getEntries(project), format, out);
+        out.flush();
+    }
 }
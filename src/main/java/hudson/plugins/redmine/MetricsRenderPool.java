@@ -0,0 +1,76 @@
+package hudson.plugins.redmine;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Renders trend graphs on a few threads of their own, so that a burst of page views cannot tie up
+ * CPU on every request thread at once. Requests for a rendering already in progress wait for that
+ * one instead of starting another.
+ *
+ * The pool has {@value #THREADS} threads and a queue of {@value #QUEUE_SIZE}; beyond that, requests
+ * are rejected and the caller answers <code>503</code>.
+ */
+final class MetricsRenderPool {
+
+    static final int THREADS = 2;
+    static final int QUEUE_SIZE = 16;
+
+    /** How long a request waits for its rendering. */
+    static final long TIMEOUT_SECONDS = 30;
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+            new NamingThreadFactory(new DaemonThreadFactory(), "MetricsRenderPool"));
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private static final ConcurrentMap<String, FutureTask<MetricsGraphCache.Rendering>> IN_FLIGHT = new ConcurrentHashMap<String, FutureTask<MetricsGraphCache.Rendering>>();
+
+    private MetricsRenderPool() {
+    }
+
+    /**
+     * Runs the rendering on the pool, or joins the one already running under the same key, and
+     * waits for it.
+     *
+     * @throws RejectedExecutionException if the pool is saturated
+     * @throws TimeoutException if the rendering takes longer than {@value #TIMEOUT_SECONDS} seconds
+     */
+    static MetricsGraphCache.Rendering render(final String key, Callable<MetricsGraphCache.Rendering> callable)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        FutureTask<MetricsGraphCache.Rendering> task = IN_FLIGHT.get(key);
+        if (task == null) {
+            FutureTask<MetricsGraphCache.Rendering> created = new FutureTask<MetricsGraphCache.Rendering>(callable) {
+                @Override
+                protected void done() {
+                    IN_FLIGHT.remove(key, this);
+                }
+            };
+            task = IN_FLIGHT.putIfAbsent(key, created);
+            if (task == null) {
+                task = created;
+                try {
+                    EXECUTOR.execute(created);
+                } catch (RejectedExecutionException e) {
+                    IN_FLIGHT.remove(key, created);
+                    throw e;
+                }
+            }
+        }
+        return task.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+}
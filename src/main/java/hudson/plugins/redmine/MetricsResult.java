@@ -1,5 +1,9 @@
 package hudson.plugins.redmine;
 
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+@ExportedBean(defaultVisibility = 999)
 public class MetricsResult {
 
     private String status;
@@ -10,10 +14,12 @@ public class MetricsResult {
         this.count = count;
     }
 
+    @Exported
     public String getStatus() {
         return status;
     }
 
+    @Exported
     public int getCount() {
         return count;
     }
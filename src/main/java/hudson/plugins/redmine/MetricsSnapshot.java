@@ -0,0 +1,362 @@
+package hudson.plugins.redmine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Status, tracker, version, priority and assignee of every issue of a project as of the last sync,
+ * kept in a job-level file so that the next build only needs to fetch the issues updated since then.
+ *
+ * Issues are stored as parallel int arrays sorted by issue id; names are kept once in small
+ * dictionaries.
+ */
+public class MetricsSnapshot {
+
+    public static final String FILE_NAME = "redmine-metrics-snapshot.bin";
+
+    private static final int MAGIC = 0x524d5332; // "RMS2"
+
+    /** Locks of the snapshot files being synced or waited for; guarded by itself. */
+    private static final Map<String, FileLock> LOCKS = new HashMap<String, FileLock>();
+
+    private final String key;
+    private long lastSync;
+    private long lastFullSync;
+
+    private final Map<Integer, String> statusNames = new HashMap<Integer, String>();
+    private final Map<Integer, String> trackerNames = new HashMap<Integer, String>();
+    private final Map<Integer, String> versionNames = new HashMap<Integer, String>();
+    private final Map<Integer, String> priorityNames = new HashMap<Integer, String>();
+    private final Map<Integer, String> assigneeNames = new HashMap<Integer, String>();
+
+    private int size;
+    private int sortedSize;
+    private boolean fullSync;
+    private Map<Integer, Integer> appended;
+    private int[] ids = new int[0];
+    private int[] statuses = new int[0];
+    private int[] trackers = new int[0];
+    private int[] versions = new int[0];
+    private int[] priorities = new int[0];
+    private int[] assignees = new int[0];
+
+    /**
+     * @param key identifies the Redmine project the snapshot was taken from; a snapshot is only
+     *            reused for the same key
+     */
+    public MetricsSnapshot(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getLastSync() {
+        return lastSync;
+    }
+
+    public long getLastFullSync() {
+        return lastFullSync;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Starts merging pages of issues. A full sync drops the current content, so that issues deleted in
+     * Redmine disappear; otherwise the pages are the issues updated since the last sync.
+     */
+    public void startSync(boolean full) {
+        if (full) {
+            size = 0;
+            statusNames.clear();
+            trackerNames.clear();
+            versionNames.clear();
+            priorityNames.clear();
+            assigneeNames.clear();
+        }
+        fullSync = full;
+        sortedSize = size;
+        appended = new HashMap<Integer, Integer>();
+    }
+
+    /**
+     * Merges one page of issues. Sorting of new issues is deferred to {@link #finishSync(long)}.
+     */
+    public void merge(List<IssueRecord> issues) {
+        for (IssueRecord issue : issues) {
+            int i = Arrays.binarySearch(ids, 0, sortedSize, issue.getId());
+            if (i < 0) {
+                // pages may shift while issues are updated, so the same new issue can come twice
+                Integer added = appended.get(issue.getId());
+                if (added == null) {
+                    ensureCapacity(size + 1);
+                    added = size++;
+                    appended.put(issue.getId(), added);
+                    ids[added] = issue.getId();
+                }
+                i = added;
+            }
+            set(i, issue);
+        }
+    }
+
+    /**
+     * Ends a sync started at <code>syncTime</code>.
+     */
+    public void finishSync(long syncTime) {
+        if (size > sortedSize) {
+            sortById();
+        }
+        sortedSize = size;
+        appended = null;
+        lastSync = syncTime;
+        if (fullSync) {
+            lastFullSync = syncTime;
+        }
+    }
+
+    private void set(int i, IssueRecord issue) {
+        statuses[i] = issue.getStatusId();
+        if (issue.getStatusName() != null) {
+            statusNames.put(statuses[i], issue.getStatusName());
+        }
+        trackers[i] = issue.getTrackerId();
+        if (issue.getTrackerName() != null) {
+            trackerNames.put(trackers[i], issue.getTrackerName());
+        }
+        versions[i] = issue.getVersionId();
+        if (issue.getVersionName() != null) {
+            versionNames.put(versions[i], issue.getVersionName());
+        }
+        priorities[i] = issue.getPriorityId();
+        if (issue.getPriorityName() != null) {
+            priorityNames.put(priorities[i], issue.getPriorityName());
+        }
+        assignees[i] = issue.getAssigneeId();
+        if (issue.getAssigneeName() != null) {
+            assigneeNames.put(assignees[i], issue.getAssigneeName());
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newLength = Math.max(capacity, ids.length + (ids.length >> 1) + 16);
+        ids = Arrays.copyOf(ids, newLength);
+        statuses = Arrays.copyOf(statuses, newLength);
+        trackers = Arrays.copyOf(trackers, newLength);
+        versions = Arrays.copyOf(versions, newLength);
+        priorities = Arrays.copyOf(priorities, newLength);
+        assignees = Arrays.copyOf(assignees, newLength);
+    }
+
+    private void sortById() {
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = ((long) ids[i] << 32) | i;
+        }
+        Arrays.sort(order);
+        int[] s = new int[ids.length];
+        int[] t = new int[ids.length];
+        int[] v = new int[ids.length];
+        int[] p = new int[ids.length];
+        int[] a = new int[ids.length];
+        for (int i = 0; i < size; i++) {
+            int from = (int) order[i];
+            ids[i] = (int) (order[i] >>> 32);
+            s[i] = statuses[from];
+            t[i] = trackers[from];
+            v[i] = versions[from];
+            p[i] = priorities[from];
+            a[i] = assignees[from];
+        }
+        statuses = s;
+        trackers = t;
+        versions = v;
+        priorities = p;
+        assignees = a;
+    }
+
+    /**
+     * Adds the issues of the given versions to a cube, in one pass.
+     *
+     * @param versionIds versions to count, <code>0</code> standing for issues without version
+     * @param filter ignored trackers and statuses
+     */
+    public void fillCube(Set<Integer> versionIds, IssueFilter filter, MetricsCube cube) {
+        for (int i = 0; i < size; i++) {
+            if (!versionIds.contains(versions[i])) {
+                continue;
+            }
+            String status = statusNames.get(statuses[i]);
+            String tracker = trackerNames.get(trackers[i]);
+            if (!filter.accepts(trackers[i], tracker, statuses[i], status)) {
+                continue;
+            }
+            cube.add(status, tracker, versionNames.get(versions[i]), priorityNames.get(priorities[i]),
+                    assigneeNames.get(assignees[i]), 1);
+        }
+    }
+
+    /**
+     * Waits until no other build of the job reads or writes the snapshot file. Must be followed by
+     * {@link #unlock(File)}.
+     */
+    static void lock(File file) throws InterruptedException {
+        String path = file.getAbsolutePath();
+        FileLock lock;
+        synchronized (LOCKS) {
+            lock = LOCKS.get(path);
+            if (lock == null) {
+                lock = new FileLock();
+                LOCKS.put(path, lock);
+            }
+            lock.users++;
+        }
+        try {
+            lock.lock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            release(path, lock);
+            throw e;
+        }
+    }
+
+    static void unlock(File file) {
+        String path = file.getAbsolutePath();
+        FileLock lock;
+        synchronized (LOCKS) {
+            lock = LOCKS.get(path);
+        }
+        lock.lock.unlock();
+        release(path, lock);
+    }
+
+    /**
+     * Forgets the lock once nobody holds or waits for it, so that the map does not keep every file
+     * ever synced.
+     */
+    private static void release(String path, FileLock lock) {
+        synchronized (LOCKS) {
+            if (--lock.users == 0) {
+                LOCKS.remove(path);
+            }
+        }
+    }
+
+    static int getLockCount() {
+        synchronized (LOCKS) {
+            return LOCKS.size();
+        }
+    }
+
+    private static final class FileLock {
+        final ReentrantLock lock = new ReentrantLock();
+        /** Builds holding or waiting for the lock; guarded by {@link #LOCKS}. */
+        int users;
+    }
+
+    /**
+     * Reads a snapshot, or returns <code>null</code> if there is none.
+     */
+    public static MetricsSnapshot load(File file) throws IOException {
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            MetricsSnapshot snapshot = new MetricsSnapshot(in.readUTF());
+            snapshot.lastSync = in.readLong();
+            snapshot.lastFullSync = in.readLong();
+            readNames(in, snapshot.statusNames);
+            readNames(in, snapshot.trackerNames);
+            readNames(in, snapshot.versionNames);
+            readNames(in, snapshot.priorityNames);
+            readNames(in, snapshot.assigneeNames);
+            int size = in.readInt();
+            snapshot.ensureCapacity(size);
+            for (int i = 0; i < size; i++) {
+                snapshot.ids[i] = in.readInt();
+                snapshot.statuses[i] = in.readInt();
+                snapshot.trackers[i] = in.readInt();
+                snapshot.versions[i] = in.readInt();
+                snapshot.priorities[i] = in.readInt();
+                snapshot.assignees[i] = in.readInt();
+            }
+            snapshot.size = size;
+            snapshot.sortedSize = size;
+            return snapshot;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the snapshot through a temporary file so that a failed write keeps the previous one.
+     */
+    public void save(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeUTF(key);
+            out.writeLong(lastSync);
+            out.writeLong(lastFullSync);
+            writeNames(out, statusNames);
+            writeNames(out, trackerNames);
+            writeNames(out, versionNames);
+            writeNames(out, priorityNames);
+            writeNames(out, assigneeNames);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeInt(ids[i]);
+                out.writeInt(statuses[i]);
+                out.writeInt(trackers[i]);
+                out.writeInt(versions[i]);
+                out.writeInt(priorities[i]);
+                out.writeInt(assignees[i]);
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void readNames(DataInputStream in, Map<Integer, String> names) throws IOException {
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            names.put(in.readInt(), in.readUTF());
+        }
+    }
+
+    private static void writeNames(DataOutputStream out, Map<Integer, String> names) throws IOException {
+        out.writeInt(names.size());
+        for (Map.Entry<Integer, String> e : names.entrySet()) {
+            out.writeInt(e.getKey());
+            out.writeUTF(e.getValue());
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package hudson.plugins.redmine;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.kohsuke.stapler.StaplerRequest;
+
+/**
+ * Part of a job's metrics history shown by {@link MetricsGraph}, and how it is reduced to fit the
+ * width of the image.
+ *
+ * Query parameters: <code>builds</code> keeps the last N builds, <code>from</code> and
+ * <code>to</code> (<code>yyyy-MM-dd</code>, inclusive) a date range, and <code>bucket</code>
+ * (<code>day</code> or <code>week</code>) keeps the last build of each period. Whatever remains
+ * beyond the point budget is downsampled with Largest-Triangle-Three-Buckets on the total count,
+ * which keeps the peaks and dips of the trend.
+ */
+public final class MetricsWindow {
+
+    public enum Bucket {
+        DAY, WEEK
+    }
+
+    /** Narrowest spacing between two points, in pixels. */
+    static final int MIN_POINT_WIDTH = 4;
+
+    private static final String DATE_FORMAT = "yyyy-MM-dd";
+
+    private final int lastBuilds;
+    private final long from;
+    private final long to;
+    private final Bucket bucket;
+
+    /**
+     * @param lastBuilds number of builds to keep, <code>0</code> for all
+     * @param from first timestamp to keep, <code>Long.MIN_VALUE</code> for no bound
+     * @param to last timestamp to keep, <code>Long.MAX_VALUE</code> for no bound
+     * @param bucket period builds are grouped by, <code>null</code> for none
+     */
+    public MetricsWindow(int lastBuilds, long from, long to, Bucket bucket) {
+        this.lastBuilds = lastBuilds;
+        this.from = from;
+        this.to = to;
+        this.bucket = bucket;
+    }
+
+    /**
+     * Reads the window from the query parameters; invalid values are ignored.
+     */
+    public static MetricsWindow fromRequest(StaplerRequest req) {
+        int lastBuilds = 0;
+        String builds = req.getParameter("builds");
+        if (builds != null) {
+            try {
+                lastBuilds = Math.max(0, Integer.parseInt(builds));
+            } catch (NumberFormatException e) {
+                // all builds
+            }
+        }
+        long from = parseDate(req.getParameter("from"), Long.MIN_VALUE);
+        long to = parseDate(req.getParameter("to"), Long.MAX_VALUE);
+        if (to != Long.MAX_VALUE) {
+            // the whole day
+            to += TimeUnit.DAYS.toMillis(1) - 1;
+        }
+        Bucket bucket = null;
+        String b = req.getParameter("bucket");
+        if (b != null) {
+            try {
+                bucket = Bucket.valueOf(b.toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                // no bucketing
+            }
+        }
+        return new MetricsWindow(lastBuilds, from, to, bucket);
+    }
+
+    static long parseDate(String value, long defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return new SimpleDateFormat(DATE_FORMAT).parse(value).getTime();
+        } catch (ParseException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Query string selecting this window, <code>""</code> for the whole history or
+     * <code>?builds=...</code> otherwise, rebuilt from the parsed values so that it is safe to put in
+     * a page.
+     */
+    public String toQueryString() {
+        Map<String, String> params = new LinkedHashMap<String, String>();
+        if (lastBuilds > 0) {
+            params.put("builds", String.valueOf(lastBuilds));
+        }
+        if (from != Long.MIN_VALUE) {
+            params.put("from", new SimpleDateFormat(DATE_FORMAT).format(from));
+        }
+        if (to != Long.MAX_VALUE) {
+            params.put("to", new SimpleDateFormat(DATE_FORMAT).format(to));
+        }
+        if (bucket != null) {
+            params.put("bucket", bucket.name().toLowerCase(Locale.ENGLISH));
+        }
+        return RedmineRestClient.toQueryString(params);
+    }
+
+    /**
+     * Identifies the window in cache keys and ETags.
+     */
+    public String getKey() {
+        return lastBuilds + ":" + (from == Long.MIN_VALUE ? "" : String.valueOf(from)) + ":"
+                + (to == Long.MAX_VALUE ? "" : String.valueOf(to)) + ":" + (bucket == null ? "" : bucket.name());
+    }
+
+    /**
+     * Reduces the history to at most <code>width / MIN_POINT_WIDTH</code> points, each with its label.
+     *
+     * @param entries whole history, oldest first
+     */
+    public List<Point> select(List<MetricsHistory.Entry> entries, int width) {
+        List<Point> points = new ArrayList<Point>();
+        int start = lastBuilds > 0 ? Math.max(0, entries.size() - lastBuilds) : 0;
+        for (MetricsHistory.Entry entry : entries.subList(start, entries.size())) {
+            if (entry.getTimestamp() >= from && entry.getTimestamp() <= to) {
+                points.add(new Point("#" + entry.getBuildNumber(), entry));
+            }
+        }
+        if (bucket != null) {
+            points = bucket(points, bucket);
+        }
+        return downsample(points, Math.max(3, width / MIN_POINT_WIDTH));
+    }
+
+    /**
+     * Keeps the last point of each day or week, labelled with the first day of the period.
+     */
+    static List<Point> bucket(List<Point> points, Bucket bucket) {
+        List<Point> result = new ArrayList<Point>();
+        SimpleDateFormat format = new SimpleDateFormat(DATE_FORMAT);
+        Calendar cal = Calendar.getInstance();
+        long currentStart = Long.MIN_VALUE;
+        for (Point point : points) {
+            cal.setTimeInMillis(point.getEntry().getTimestamp());
+            cal.set(Calendar.HOUR_OF_DAY, 0);
+            cal.set(Calendar.MINUTE, 0);
+            cal.set(Calendar.SECOND, 0);
+            cal.set(Calendar.MILLISECOND, 0);
+            if (bucket == Bucket.WEEK) {
+                cal.set(Calendar.DAY_OF_WEEK, cal.getFirstDayOfWeek());
+                if (cal.getTimeInMillis() > point.getEntry().getTimestamp()) {
+                    cal.add(Calendar.WEEK_OF_YEAR, -1);
+                }
+            }
+            Point bucketed = new Point(format.format(cal.getTime()), point.getEntry());
+            if (cal.getTimeInMillis() == currentStart) {
+                result.set(result.size() - 1, bucketed);
+            } else {
+                result.add(bucketed);
+                currentStart = cal.getTimeInMillis();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets: keeps the first and last points, and from each of
+     * <code>threshold - 2</code> equal buckets in between the point forming the largest triangle
+     * with the point kept before it and the average of the next bucket.
+     */
+    static List<Point> downsample(List<Point> points, int threshold) {
+        int n = points.size();
+        if (threshold >= n || threshold < 3) {
+            return points;
+        }
+        int[] totals = new int[n];
+        for (int i = 0; i < n; i++) {
+            for (MetricsResult result : points.get(i).getEntry().getMetrics()) {
+                totals[i] += result.getCount();
+            }
+        }
+
+        List<Point> sampled = new ArrayList<Point>(threshold);
+        sampled.add(points.get(0));
+        double every = (double) (n - 2) / (threshold - 2);
+        int a = 0;
+        for (int i = 0; i < threshold - 2; i++) {
+            int avgStart = (int) Math.floor((i + 1) * every) + 1;
+            int avgEnd = Math.min((int) Math.floor((i + 2) * every) + 1, n);
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = avgStart; j < avgEnd; j++) {
+                avgX += j;
+                avgY += totals[j];
+            }
+            int avgCount = Math.max(1, avgEnd - avgStart);
+            avgX /= avgCount;
+            avgY /= avgCount;
+
+            int rangeStart = (int) Math.floor(i * every) + 1;
+            int rangeEnd = (int) Math.floor((i + 1) * every) + 1;
+            double maxArea = -1;
+            int next = rangeStart;
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                double area = Math.abs((a - avgX) * (totals[j] - totals[a]) - (a - j) * (avgY - totals[a]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+            sampled.add(points.get(next));
+            a = next;
+        }
+        sampled.add(points.get(n - 1));
+        return Collections.unmodifiableList(sampled);
+    }
+
+    /**
+     * One category of the graph.
+     */
+    public static final class Point {
+        private final String label;
+        private final MetricsHistory.Entry entry;
+
+        Point(String label, MetricsHistory.Entry entry) {
+            this.label = label;
+            this.entry = entry;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public MetricsHistory.Entry getEntry() {
+            return entry;
+        }
+    }
+}
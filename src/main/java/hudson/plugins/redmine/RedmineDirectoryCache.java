@@ -0,0 +1,338 @@
+package hudson.plugins.redmine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.util.Timer;
+
+import com.taskadapter.redmineapi.RedmineException;
+import com.taskadapter.redmineapi.bean.IssueStatus;
+import com.taskadapter.redmineapi.bean.Project;
+import com.taskadapter.redmineapi.bean.Tracker;
+import com.taskadapter.redmineapi.bean.Version;
+
+/**
+ * Project, version, tracker and status directories of one Redmine as seen with one API key,
+ * shared by every build that publishes metrics with that key.
+ *
+ * Entries live for {@link #TTL}. Once they are older than {@link #REFRESH_AHEAD} they are
+ * reloaded in the background while the cached copy keeps being served. A name which is not in the
+ * cached copy reloads it at once, but the same name does so at most once every
+ * {@link #MISS_RELOAD_INTERVAL}, so that a misspelled name in a job does not reload on every build.
+ */
+public final class RedmineDirectoryCache {
+
+    private static final Logger LOGGER = Logger.getLogger(RedmineDirectoryCache.class.getName());
+
+    static final long TTL = TimeUnit.MINUTES.toMillis(
+            Long.getLong(RedmineDirectoryCache.class.getName() + ".ttlMinutes", 60));
+
+    static final long REFRESH_AHEAD = TTL * 3 / 4;
+
+    /** Misses of the same name do not reload more often than this. */
+    static final long MISS_RELOAD_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Where directories are loaded from.
+     */
+    public interface Source {
+        List<Project> getProjects() throws RedmineException;
+
+        List<Version> getVersions(int projectId) throws RedmineException;
+
+        List<Tracker> getTrackers() throws RedmineException;
+
+        List<IssueStatus> getStatuses() throws RedmineException;
+    }
+
+    private final long ttl;
+    private final long refreshAhead;
+    private final long missReloadInterval;
+    private final LongSupplier clock;
+    private final Executor refresher;
+
+    private final Slot<ProjectDirectory> projects = new Slot<ProjectDirectory>();
+    private final ConcurrentMap<Integer, Slot<VersionDirectory>> versions = new ConcurrentHashMap<Integer, Slot<VersionDirectory>>();
+    private final Slot<List<Tracker>> trackers = new Slot<List<Tracker>>();
+    private final Slot<List<IssueStatus>> statuses = new Slot<List<IssueStatus>>();
+
+    public RedmineDirectoryCache() {
+        this(TTL, MISS_RELOAD_INTERVAL, new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return System.currentTimeMillis();
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                Timer.get().submit(command);
+            }
+        });
+    }
+
+    /**
+     * @param clock current time in milliseconds
+     * @param refresher runs the refreshes ahead of expiry
+     */
+    RedmineDirectoryCache(long ttl, long missReloadInterval, LongSupplier clock, Executor refresher) {
+        this.ttl = ttl;
+        this.refreshAhead = ttl * 3 / 4;
+        this.missReloadInterval = missReloadInterval;
+        this.clock = clock;
+        this.refresher = refresher;
+    }
+
+    /**
+     * Resolves a project identifier (case insensitive) or, failing that, a project name to its id.
+     */
+    public int getProjectId(final Source source, String projectName) throws RedmineException {
+        Loader<ProjectDirectory> loader = new Loader<ProjectDirectory>() {
+            @Override
+            public ProjectDirectory load() throws RedmineException {
+                return new ProjectDirectory(source.getProjects());
+            }
+        };
+
+        Integer id = projects.get(loader, Collections.<String>emptySet()).find(projectName);
+        if (id == null) {
+            id = projects.get(loader, Collections.singleton(projectName)).find(projectName);
+        }
+        if (id == null) {
+            throw new RedmineException("No such project. projectName=" + projectName);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the version directory of the project, reloaded first if it lacks one of the given
+     * names.
+     */
+    public VersionDirectory getVersions(final Source source, final int projectId, Collection<String> names)
+            throws RedmineException {
+        Slot<VersionDirectory> slot = versions.get(projectId);
+        if (slot == null) {
+            Slot<VersionDirectory> created = new Slot<VersionDirectory>();
+            slot = versions.putIfAbsent(projectId, created);
+            if (slot == null) {
+                slot = created;
+            }
+        }
+        Loader<VersionDirectory> loader = new Loader<VersionDirectory>() {
+            @Override
+            public VersionDirectory load() throws RedmineException {
+                return new VersionDirectory(source.getVersions(projectId));
+            }
+        };
+        VersionDirectory directory = slot.get(loader, Collections.<String>emptySet());
+        List<String> missed = new ArrayList<String>();
+        for (String name : names) {
+            if (!directory.contains(name)) {
+                missed.add(name);
+            }
+        }
+        return missed.isEmpty() ? directory : slot.get(loader, missed);
+    }
+
+    public List<Tracker> getTrackers(Source source) throws RedmineException {
+        return getTrackers(source, Collections.<String>emptySet());
+    }
+
+    /**
+     * Returns the trackers, reloaded first if one of the given names is not among them.
+     */
+    public List<Tracker> getTrackers(final Source source, Collection<String> names) throws RedmineException {
+        Loader<List<Tracker>> loader = new Loader<List<Tracker>>() {
+            @Override
+            public List<Tracker> load() throws RedmineException {
+                return Collections.unmodifiableList(new ArrayList<Tracker>(source.getTrackers()));
+            }
+        };
+        List<Tracker> list = trackers.get(loader, Collections.<String>emptySet());
+        List<String> missed = new ArrayList<String>(names);
+        for (Tracker tracker : list) {
+            missed.remove(tracker.getName());
+        }
+        return missed.isEmpty() ? list : trackers.get(loader, missed);
+    }
+
+    public List<IssueStatus> getStatuses(Source source) throws RedmineException {
+        return getStatuses(source, Collections.<String>emptySet());
+    }
+
+    /**
+     * Returns the statuses, reloaded first if one of the given names is not among them.
+     */
+    public List<IssueStatus> getStatuses(final Source source, Collection<String> names) throws RedmineException {
+        Loader<List<IssueStatus>> loader = new Loader<List<IssueStatus>>() {
+            @Override
+            public List<IssueStatus> load() throws RedmineException {
+                return Collections.unmodifiableList(new ArrayList<IssueStatus>(source.getStatuses()));
+            }
+        };
+        List<IssueStatus> list = statuses.get(loader, Collections.<String>emptySet());
+        List<String> missed = new ArrayList<String>(names);
+        for (IssueStatus status : list) {
+            missed.remove(status.getName());
+        }
+        return missed.isEmpty() ? list : statuses.get(loader, missed);
+    }
+
+    static final class ProjectDirectory {
+        private final Map<String, Integer> byIdentifier = new HashMap<String, Integer>();
+        private final Map<String, Integer> byName = new HashMap<String, Integer>();
+
+        ProjectDirectory(List<Project> projects) {
+            for (Project proj : projects) {
+                if (proj.getIdentifier() != null) {
+                    byIdentifier.put(proj.getIdentifier().toLowerCase(Locale.ENGLISH), proj.getId());
+                }
+                if (proj.getName() != null && !byName.containsKey(proj.getName())) {
+                    byName.put(proj.getName(), proj.getId());
+                }
+            }
+        }
+
+        Integer find(String projectName) {
+            Integer id = byIdentifier.get(projectName.toLowerCase(Locale.ENGLISH));
+            return id != null ? id : byName.get(projectName);
+        }
+    }
+
+    /**
+     * Versions of one project, in the order Redmine returned them.
+     */
+    public static final class VersionDirectory {
+        private final List<Integer> ids = new ArrayList<Integer>();
+        private final Map<String, List<Integer>> byName = new LinkedHashMap<String, List<Integer>>();
+
+        VersionDirectory(List<Version> versions) {
+            for (Version v : versions) {
+                if (ids.contains(v.getId())) {
+                    continue;
+                }
+                ids.add(v.getId());
+                List<Integer> named = byName.get(v.getName());
+                if (named == null) {
+                    named = new ArrayList<Integer>();
+                    byName.put(v.getName(), named);
+                }
+                named.add(v.getId());
+            }
+        }
+
+        public List<Integer> getIds() {
+            return Collections.unmodifiableList(ids);
+        }
+
+        /**
+         * Ids of the versions with that name; empty if there is none.
+         */
+        public List<Integer> getIds(String name) {
+            List<Integer> named = byName.get(name);
+            return named == null ? Collections.<Integer>emptyList() : Collections.unmodifiableList(named);
+        }
+
+        public boolean contains(String name) {
+            return byName.containsKey(name);
+        }
+    }
+
+    private interface Loader<T> {
+        T load() throws RedmineException;
+    }
+
+    private static final class Entry<T> {
+        final T value;
+        final long loadedAt;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(T value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final class Slot<T> {
+        private volatile Entry<T> entry;
+
+        /** When each missed name last reloaded this slot; guarded by itself. */
+        private final Map<String, Long> missReloads = new HashMap<String, Long>();
+
+        /**
+         * @param missed names the caller could not find in the copy it got before
+         */
+        T get(final Loader<T> loader, Collection<String> missed) throws RedmineException {
+            final Entry<T> e = entry;
+            long age = e == null ? 0 : clock.getAsLong() - e.loadedAt;
+            if (e == null || age > ttl) {
+                return load(loader, e).value;
+            }
+            if (!missed.isEmpty() && claimMissReload(missed)) {
+                return load(loader, e).value;
+            }
+            if (age > refreshAhead && e.refreshing.compareAndSet(false, true)) {
+                refresher.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            load(loader, e);
+                        } catch (RedmineException ex) {
+                            LOGGER.log(Level.FINE, "Cannot refresh Redmine directory", ex);
+                            e.refreshing.set(false);
+                        }
+                    }
+                });
+            }
+            return e.value;
+        }
+
+        /**
+         * Whether one of the names has not reloaded the slot lately; if so, they all count as
+         * having done it now.
+         */
+        private boolean claimMissReload(Collection<String> missed) {
+            long now = clock.getAsLong();
+            synchronized (missReloads) {
+                for (Iterator<Long> it = missReloads.values().iterator(); it.hasNext();) {
+                    if (now - it.next() >= missReloadInterval) {
+                        it.remove();
+                    }
+                }
+                if (missReloads.keySet().containsAll(missed)) {
+                    return false;
+                }
+                for (String name : missed) {
+                    missReloads.put(name, now);
+                }
+                return true;
+            }
+        }
+
+        /**
+         * Loads unless another thread replaced <code>seen</code> in the meantime.
+         */
+        private synchronized Entry<T> load(Loader<T> loader, Entry<T> seen) throws RedmineException {
+            if (entry != seen) {
+                return entry;
+            }
+            T value = loader.load();
+            entry = new Entry<T>(value, clock.getAsLong());
+            return entry;
+        }
+    }
+}
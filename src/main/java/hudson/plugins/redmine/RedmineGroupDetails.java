@@ -0,0 +1,34 @@
+package hudson.plugins.redmine;
+
+import hudson.security.GroupDetails;
+
+import java.util.Set;
+
+/**
+ * A Redmine group, with its members when they were asked for.
+ */
+public class RedmineGroupDetails extends GroupDetails {
+
+    private final String name;
+    private final Set<String> members;
+
+    /**
+     *
+     * @param name
+     * @param members logins of the members, null if not fetched
+     */
+    public RedmineGroupDetails(String name, Set<String> members) {
+        this.name = name;
+        this.members = members;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Set<String> getMembers() {
+        return members;
+    }
+}
@@ -0,0 +1,110 @@
+package hudson.plugins.redmine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+
+import org.apache.commons.io.IOUtils;
+
+import com.taskadapter.redmineapi.RedmineException;
+
+/**
+ * HTTP transport to one Redmine, shared by every job using the same {@link RedmineWebsiteConfig}.
+ *
+ * Responses are always read to the end so that the JVM's keep-alive cache can reuse the
+ * connections; the number of connections in use at a time is bounded by
+ * {@link RedmineWebsiteConfig#getMaxConcurrentRequests()}. Responses are requested gzip-encoded.
+ *
+ * There is no connection pool of its own: idle connections are kept by the keep-alive cache of
+ * {@link HttpURLConnection}, which holds at most <code>http.maxConnections</code> (5 by default)
+ * per host for the whole JVM. Above that many concurrent requests, the extra connections are
+ * closed after use, unless that system property is raised.
+ */
+public class RedmineHttpClient {
+
+    private static final String API_KEY_HEADER = "X-Redmine-API-Key";
+
+    private final String url;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final Semaphore connections;
+
+    /**
+     * @param connectTimeout milliseconds, <code>0</code> for none
+     * @param readTimeout milliseconds, <code>0</code> for none
+     * @param maxConnections connections in use at the same time
+     */
+    public RedmineHttpClient(String url, int connectTimeout, int readTimeout, int maxConnections) {
+        this.url = url.endsWith("/") ? url : url + '/';
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.connections = new Semaphore(maxConnections, true);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public JSONObject getJSON(String path, Map<String, String> params, String apiKey) throws RedmineException {
+        try {
+            connections.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedmineException("Interrupted while waiting for a connection to " + url, e);
+        }
+        try {
+            return JSONObject.fromObject(get(url + path + RedmineRestClient.toQueryString(params), path, apiKey));
+        } catch (IOException e) {
+            throw new RedmineException("Cannot read " + path + " from " + url, e);
+        } catch (JSONException e) {
+            throw new RedmineException("Invalid response for " + path + " from " + url, e);
+        } finally {
+            connections.release();
+        }
+    }
+
+    private String get(String requestUrl, String path, String apiKey) throws IOException, RedmineException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(requestUrl).openConnection();
+        conn.setConnectTimeout(connectTimeout);
+        conn.setReadTimeout(readTimeout);
+        conn.setRequestProperty("Accept", "application/json");
+        conn.setRequestProperty("Accept-Encoding", "gzip");
+        if (apiKey != null && !apiKey.isEmpty()) {
+            conn.setRequestProperty(API_KEY_HEADER, apiKey);
+        }
+
+        int status = conn.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            // drain the error body, otherwise the connection cannot be reused
+            InputStream err = conn.getErrorStream();
+            if (err != null) {
+                try {
+                    byte[] buf = new byte[4096];
+                    while (err.read(buf) >= 0) {
+                        // discard
+                    }
+                } finally {
+                    err.close();
+                }
+            }
+            throw new RedmineException("Redmine returned HTTP " + status + " for " + path);
+        }
+
+        InputStream in = conn.getInputStream();
+        try {
+            if ("gzip".equalsIgnoreCase(conn.getContentEncoding())) {
+                in = new GZIPInputStream(in);
+            }
+            return IOUtils.toString(in, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
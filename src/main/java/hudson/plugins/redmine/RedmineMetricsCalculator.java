@@ -1,26 +1,69 @@
 package hudson.plugins.redmine;
 
+import hudson.Util;
+import hudson.plugins.redmine.RedmineDirectoryCache.VersionDirectory;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import org.apache.commons.lang.ArrayUtils;
 import com.taskadapter.redmineapi.RedmineException;
-import com.taskadapter.redmineapi.RedmineManager;
-import com.taskadapter.redmineapi.bean.Issue;
+import com.taskadapter.redmineapi.bean.IssueStatus;
 import com.taskadapter.redmineapi.bean.Project;
+import com.taskadapter.redmineapi.bean.Tracker;
 import com.taskadapter.redmineapi.bean.Version;
 
 public class RedmineMetricsCalculator {
 
+    private static final Logger LOGGER = Logger.getLogger(RedmineMetricsCalculator.class.getName());
+
+    public static final int DEFAULT_THREADS = 4;
+
+    public static final int DEFAULT_FULL_SYNC_HOURS = 24;
+
+    public static final int DEFAULT_FRESHNESS_SECONDS = 30;
+
+    /** Overlap of incremental fetches, covering clock skew between Jenkins and Redmine. */
+    private static final long SYNC_MARGIN = TimeUnit.MINUTES.toMillis(10);
+
     private String url;
     private String apiKey;    
     private String projectName;  // actually a project identifier - project names in Redmine can have spaces
     private String versions;
     private String ignoreTicketTracker;
     private String ignoreTicketStatus;
+    private boolean countOnly;
+    private int threads = 1;
+    private RedmineSite site;
+    private File snapshotFile;
+    private int prefetchPages;
+    private long fullSyncInterval = TimeUnit.HOURS.toMillis(DEFAULT_FULL_SYNC_HOURS);
+    private long freshness = TimeUnit.SECONDS.toMillis(DEFAULT_FRESHNESS_SECONDS);
+    private MetricsCube cube;
 
     public RedmineMetricsCalculator(String url, String apiKey,
             String projectName, String versions, String ignoreTicketTracker,
@@ -33,102 +76,462 @@ public class RedmineMetricsCalculator {
         this.ignoreTicketStatus = ignoreTicketStatus;
     }
 
+    /**
+     * When set, issues are not downloaded; Redmine is asked for the <code>total_count</code>
+     * of every (version, status) pair instead.
+     */
+    public void setCountOnly(boolean countOnly) {
+        this.countOnly = countOnly;
+    }
+
+    /**
+     * Number of versions fetched concurrently. Values below 2 keep the fetch on the calling thread.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Site whose HTTP client, request limit and directory cache are used by this calculator.
+     */
+    public void setSite(RedmineSite site) {
+        this.site = site;
+    }
+
+    /**
+     * Number of issue pages requested ahead while the previous ones are counted; <code>0</code> fetches
+     * the pages one after the other.
+     */
+    public void setPrefetchPages(int prefetchPages) {
+        this.prefetchPages = prefetchPages;
+    }
+
+    /**
+     * Enables incremental mode: the issues of the project are kept in this file between builds and
+     * only the ones updated since the previous sync are fetched. Count-only mode is ignored then.
+     */
+    public void setSnapshotFile(File snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * How often incremental mode fetches all issues again, which is how deleted issues disappear.
+     */
+    public void setFullSyncInterval(long fullSyncInterval, TimeUnit unit) {
+        this.fullSyncInterval = unit.toMillis(fullSyncInterval);
+    }
+
+    /**
+     * How long the result of an identical fetch made by another job of the same site is reused;
+     * <code>0</code> only shares fetches which are still running.
+     */
+    public void setFreshness(long freshness, TimeUnit unit) {
+        this.freshness = unit.toMillis(freshness);
+    }
+
+    /**
+     * Collects the metrics, sharing the fetch with the other jobs of the site asking the same
+     * question at the same time. Incremental mode keeps state per job and always fetches on its own.
+     */
     public List<MetricsResult> calc() throws MetricsException {
+        if (site == null || snapshotFile != null) {
+            return fetch();
+        }
+        MetricsFetchCoordinator.Result shared;
+        try {
+            shared = site.getFetches().fetch(getFetchKey(), freshness,
+                    new Callable<MetricsFetchCoordinator.Result>() {
+                        @Override
+                        public MetricsFetchCoordinator.Result call() throws MetricsException {
+                            List<MetricsResult> metrics = fetch();
+                            return new MetricsFetchCoordinator.Result(metrics, cube);
+                        }
+                    });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MetricsException("Interrupted while collecting ticket metrics", e);
+        }
+        // every build gets copies of its own, as they are stored with the build
+        if (shared.getCube() != null) {
+            cube = new MetricsCube();
+            cube.addAll(shared.getCube());
+        } else {
+            cube = null;
+        }
+        return new ArrayList<MetricsResult>(shared.getMetrics());
+    }
+
+    /**
+     * Identifies the question asked to Redmine. The API key is part of it, as what Redmine returns
+     * depends on who asks.
+     */
+    String getFetchKey() {
+        return Util.getDigestOf(apiKey == null ? "" : apiKey) + '\n' + projectName + '\n' + versions + '\n'
+                + ignoreTicketTracker + '\n' + ignoreTicketStatus + '\n' + countOnly;
+    }
+
+    private List<MetricsResult> fetch() throws MetricsException {
         List<MetricsResult> result = new ArrayList<MetricsResult>();
+        RedmineRestClient client = site != null ? new RedmineRestClient(site.getHttpClient(), apiKey)
+                : new RedmineRestClient(url, apiKey);
+        FetchExecutors executors = site != null ? site.getExecutors() : FetchExecutors.DEFAULT;
+        ExecutorService pageExecutor = prefetchPages > 0 ? executors.getPages() : null;
         try {
-            RedmineManager manager = new RedmineManager(url, apiKey);
+            RedmineDirectoryCache directory = site != null ? site.getDirectory(apiKey) : new RedmineDirectoryCache();
+            RedmineDirectoryCache.Source source = new ClientDirectorySource(client);
 
-            Project proj = getProject(manager);
+            int projectId = directory.getProjectId(source, projectName);
 
-            List<String> versionsList = getVersionsString(manager, proj);
+            List<String> versionsList = getVersionsString(directory, source, projectId);
 
-            Map<String, Integer> tmpCalcMap = new HashMap<String, Integer>();
-            for (String v : versionsList) {
+            IssueFilter filter = new IssueFilter(ignoreTicketTracker, ignoreTicketStatus);
+
+            cube = null;
+            if (countOnly && snapshotFile == null) {
+                resolveFilter(filter, directory, source, true);
+                ConcurrentMap<String, AtomicInteger> tmpCalcMap = new ConcurrentHashMap<String, AtomicInteger>();
+                countIssues(client, directory.getStatuses(source), projectId, versionsList, filter, tmpCalcMap);
+                // sorted so that the result does not depend on which version finished first
+                for (Entry<String, AtomicInteger> e : new TreeMap<String, AtomicInteger>(tmpCalcMap).entrySet()) {
+                    result.add(new MetricsResult(e.getKey(), e.getValue().get()));
+                }
+            } else {
+                resolveFilter(filter, directory, source, false);
+                MetricsCube issueCube = new MetricsCube();
+                if (snapshotFile != null) {
+                    syncIssues(client, pageExecutor, projectId, versionsList, filter, issueCube);
+                } else {
+                    fetchIssues(client, pageExecutor, projectId, versionsList, filter, issueCube);
+                }
+                cube = issueCube;
+                result.addAll(issueCube.toMetricsList());
+            }
+        } catch (RedmineException e) {
+            throw new MetricsException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MetricsException("Interrupted while collecting ticket metrics", e);
+        }
+        return result;
+    }
+
+    /**
+     * Breakdown of the issues counted by the last {@link #calc()}, or <code>null</code> in count-only
+     * mode, where the issues are not downloaded.
+     */
+    public MetricsCube getCube() {
+        return cube;
+    }
+
+    /**
+     * Incremental variant of {@link #fetchIssues}: applies the issues updated since the last sync to
+     * the job's {@link MetricsSnapshot} and counts from there.
+     */
+    private void syncIssues(RedmineRestClient client, ExecutorService pageExecutor, int projectId,
+            List<String> versionsList, IssueFilter filter, MetricsCube issueCube)
+            throws RedmineException, InterruptedException {
+        String key = url + "projects/" + projectId;
+        MetricsSnapshot.lock(snapshotFile);
+        try {
+            long syncTime = System.currentTimeMillis();
+            MetricsSnapshot snapshot = null;
+            try {
+                snapshot = MetricsSnapshot.load(snapshotFile);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Cannot read " + snapshotFile + ", fetching all issues", e);
+            }
+
+            Map<String, String> params = new HashMap<String, String>();
+            params.put("project_id", String.valueOf(projectId));
+            params.put("status_id", "*");
+            boolean full = snapshot == null || !key.equals(snapshot.getKey())
+                    || syncTime - snapshot.getLastFullSync() > fullSyncInterval;
+            if (full) {
+                snapshot = new MetricsSnapshot(key);
+            } else {
+                params.put("updated_on", ">=" + formatTimestamp(snapshot.getLastSync() - SYNC_MARGIN));
+            }
+
+            snapshot.startSync(full);
+            IssuePages pages = new IssuePages(client, params, prefetchPages, pageExecutor);
+            try {
+                List<IssueRecord> page;
+                while ((page = pages.next()) != null) {
+                    snapshot.merge(page);
+                }
+            } finally {
+                pages.close();
+            }
+            snapshot.finishSync(syncTime);
+
+            try {
+                snapshot.save(snapshotFile);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Cannot write " + snapshotFile, e);
+            }
+            snapshot.fillCube(toVersionIds(versionsList), filter, issueCube);
+        } finally {
+            MetricsSnapshot.unlock(snapshotFile);
+        }
+    }
+
+    private static String formatTimestamp(long time) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(time));
+    }
+
+    private static Set<Integer> toVersionIds(List<String> versionsList) {
+        Set<Integer> ids = new HashSet<Integer>();
+        for (String v : versionsList) {
+            ids.add("!*".equals(v) ? 0 : Integer.valueOf(v));
+        }
+        return ids;
+    }
+
+    private void fetchIssues(final RedmineRestClient client, final ExecutorService pageExecutor,
+            final int projectId, List<String> versionsList, final IssueFilter filter, final MetricsCube issueCube)
+            throws RedmineException, InterruptedException {
+        forEachVersion(versionsList, new VersionTask() {
+            @Override
+            public void run(String v) throws RedmineException, InterruptedException {
                 Map<String, String> params = new HashMap<String, String>();
-                params.put("project_id", proj.getId().toString());
+                params.put("project_id", String.valueOf(projectId));
                 params.put("fixed_version_id", v);
-                params.put("status_id", "*");
+                params.put("status_id", filter.getStatusQuery());
+                if (filter.getTrackerQuery() != null) {
+                    params.put("tracker_id", filter.getTrackerQuery());
+                }
+                MetricsCube versionCube = new MetricsCube();
+                streamIssues(new IssuePages(client, params, prefetchPages, pageExecutor), filter, versionCube);
+                synchronized (issueCube) {
+                    issueCube.addAll(versionCube);
+                }
+            }
+        });
+    }
 
-                for (Issue issue : manager.getIssues(params)) {
-                    if (!isTargetTracker(issue)) {
-                        continue;
+    private static void streamIssues(IssuePages pages, IssueFilter filter, MetricsCube issueCube)
+            throws RedmineException, InterruptedException {
+        try {
+            List<IssueRecord> page;
+            while ((page = pages.next()) != null) {
+                for (IssueRecord issue : page) {
+                    if (filter.accepts(issue.getTrackerId(), issue.getTrackerName(), issue.getStatusId(),
+                            issue.getStatusName())) {
+                        issueCube.add(issue);
                     }
-                    if (!isTargetStatus(issue)) {
-                        continue;
+                }
+            }
+        } finally {
+            pages.close();
+        }
+    }
+
+    /**
+     * Count-only variant of {@link #fetchIssues}: one <code>limit=1</code> query per (version, status)
+     * pair, with the ignored trackers pushed into the query. Memory use does not depend on the
+     * number of issues.
+     */
+    private void countIssues(final RedmineRestClient client, List<IssueStatus> allStatuses, final int projectId,
+            List<String> versionsList, IssueFilter filter, final ConcurrentMap<String, AtomicInteger> tmpCalcMap)
+            throws RedmineException, InterruptedException {
+        final String trackerFilter = filter.getTrackerQuery();
+
+        final List<IssueStatus> statuses = new ArrayList<IssueStatus>();
+        for (IssueStatus status : allStatuses) {
+            if (!filter.isIgnored(status)) {
+                statuses.add(status);
+            }
+        }
+
+        forEachVersion(versionsList, new VersionTask() {
+            @Override
+            public void run(String v) throws RedmineException, InterruptedException {
+                for (IssueStatus status : statuses) {
+                    Map<String, String> params = new HashMap<String, String>();
+                    params.put("project_id", String.valueOf(projectId));
+                    params.put("fixed_version_id", v);
+                    params.put("status_id", status.getId().toString());
+                    if (trackerFilter != null) {
+                        params.put("tracker_id", trackerFilter);
                     }
 
-                    String status = issue.getStatusName();
-                    if (!tmpCalcMap.containsKey(status)) {
-                        tmpCalcMap.put(status, 0);
+                    int count = client.getIssueCount(params);
+                    if (count > 0) {
+                        increment(tmpCalcMap, status.getName(), count);
                     }
-                    Integer count = tmpCalcMap.get(status);
-                    tmpCalcMap.put(status, count + 1);
                 }
             }
-            for (Entry<String, Integer> e : tmpCalcMap.entrySet()) {
-                result.add(new MetricsResult(e.getKey(), e.getValue()));
+        });
+    }
+
+    interface VersionTask {
+        void run(String version) throws RedmineException, InterruptedException;
+    }
+
+    private void forEachVersion(List<String> versionsList, VersionTask task)
+            throws RedmineException, InterruptedException {
+        FetchExecutors executors = site != null ? site.getExecutors() : FetchExecutors.DEFAULT;
+        forEachVersion(versionsList, threads, executors.getVersions(), task);
+    }
+
+    /**
+     * Runs the task for every version, with at most <code>threads</code> versions at once: the
+     * calling thread and <code>threads - 1</code> workers of the shared executor take the versions
+     * one after the other. Once a version fails, no other one is started, and the first failure is
+     * thrown when the running ones are over.
+     */
+    static void forEachVersion(List<String> versionsList, int threads, ExecutorService executor,
+            final VersionTask task) throws RedmineException, InterruptedException {
+        int workers = Math.min(threads, versionsList.size());
+        if (workers < 2) {
+            for (String v : versionsList) {
+                task.run(v);
+            }
+            return;
+        }
+
+        final Queue<String> pending = new ConcurrentLinkedQueue<String>(versionsList);
+        final CountDownLatch finished = new CountDownLatch(versionsList.size());
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                String v;
+                while ((v = pending.poll()) != null) {
+                    try {
+                        task.run(v);
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                        // gives up the versions nobody took yet
+                        while (pending.poll() != null) {
+                            finished.countDown();
+                        }
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }
+        };
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for (int i = 1; i < workers; i++) {
+                futures.add(executor.submit(worker));
+            }
+            // the caller works too, so the versions progress even when the executor is busy
+            worker.run();
+            finished.await();
+        } finally {
+            // workers still queued have nothing left to do; after an interrupt, running ones stop too
+            for (Future<?> future : futures) {
+                future.cancel(true);
             }
-        } catch (RedmineException e) {
-            throw new MetricsException(e);
         }
-        return result;
-    }
 
-    private boolean isTargetTracker(Issue issue) {
-        if (ignoreTicketTracker == null || ignoreTicketTracker.isEmpty()) {
-            return true;
+        Exception e = failure.get();
+        if (e instanceof RedmineException) {
+            throw (RedmineException) e;
+        }
+        if (e instanceof InterruptedException) {
+            throw (InterruptedException) e;
+        }
+        if (e != null) {
+            throw new RedmineException("Cannot fetch issues", e);
         }
-        return !ArrayUtils.contains(ignoreTicketTracker.split(","), issue
-                .getTracker().getName());
     }
 
-    private boolean isTargetStatus(Issue issue) {
-        if (ignoreTicketStatus == null || ignoreTicketStatus.isEmpty()) {
-            return true;
+    private static void increment(ConcurrentMap<String, AtomicInteger> counter, String key, int delta) {
+        AtomicInteger count = counter.get(key);
+        if (count == null) {
+            AtomicInteger created = new AtomicInteger();
+            count = counter.putIfAbsent(key, created);
+            if (count == null) {
+                count = created;
+            }
         }
-        return !ArrayUtils.contains(ignoreTicketStatus.split(","),
-                issue.getStatusName());
+        count.addAndGet(delta);
     }
 
-    private Project getProject(RedmineManager manager) throws RedmineException {
-        List<Project> projects = manager.getProjects();
-        for (Project proj : projects) {
-            if (projectName.equalsIgnoreCase(proj.getIdentifier())) {
-                return proj;
+    /**
+     * Maps the ignored tracker and status names to ids. Unless <code>required</code>, a Redmine
+     * which cannot list trackers or statuses leaves the filter matching by name.
+     */
+    private void resolveFilter(IssueFilter filter, RedmineDirectoryCache directory,
+            RedmineDirectoryCache.Source source, boolean required) throws RedmineException {
+        try {
+            if (filter.ignoresTrackers()) {
+                filter.resolveTrackers(directory.getTrackers(source, filter.getIgnoredTrackerNames()));
             }
-        }
-        for (Project proj : projects) {
-            if (projectName.equals(proj.getName())) {
-                return proj;
+            if (filter.ignoresStatuses()) {
+                filter.resolveStatuses(directory.getStatuses(source, filter.getIgnoredStatusNames()));
             }
+        } catch (RedmineException e) {
+            if (required) {
+                throw e;
+            }
+            LOGGER.log(Level.FINE, "Cannot resolve ignored trackers and statuses, filtering by name", e);
         }
-        throw new RedmineException("No such project. projectName=" + projectName);
     }
 
-    private List<String> getVersionsString(RedmineManager manager, Project proj)
-            throws RedmineException {
-        List<Version> allVersions = manager.getVersions(proj.getId());
+    private List<String> getVersionsString(RedmineDirectoryCache directory, RedmineDirectoryCache.Source source,
+            int projectId) throws RedmineException {
         if (versions.isEmpty()) {
-            return allVersionsWithNull(allVersions);
+            return allVersionsWithNull(directory.getVersions(source, projectId, Collections.<String>emptySet()));
+        }
+        List<String> names = new ArrayList<String>();
+        for (String string : versions.split(",")) {
+            names.add(string.trim());
         }
+        VersionDirectory allVersions = directory.getVersions(source, projectId, names);
         List<String> vs = new ArrayList<String>();
-        String[] versionStrings = versions.split(",");
-        for (String string : versionStrings) {
-            for (Version v : allVersions) {
-                if (string.trim().equals(v.getName())) {
-                    vs.add(String.valueOf(v.getId()));
-                }
+        for (String name : names) {
+            for (Integer id : allVersions.getIds(name)) {
+                vs.add(String.valueOf(id));
             }
         }
         return vs;
     }
 
-    private List<String> allVersionsWithNull(List<Version> versionList) {
+    private List<String> allVersionsWithNull(VersionDirectory versionDirectory) {
         List<String> vs = new ArrayList<String>();
         vs.add("!*");
-        for (Version v : versionList) {
-            vs.add(String.valueOf(v.getId()));
+        for (Integer id : versionDirectory.getIds()) {
+            vs.add(String.valueOf(id));
         }
         return vs;
     }
+
+    /**
+     * Loads directories through the calculator's client, which is safe to use from the refresh-ahead
+     * thread as well.
+     */
+    private static class ClientDirectorySource implements RedmineDirectoryCache.Source {
+
+        private final RedmineRestClient client;
+
+        ClientDirectorySource(RedmineRestClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public List<Project> getProjects() throws RedmineException {
+            return client.getProjects();
+        }
+
+        @Override
+        public List<Version> getVersions(int projectId) throws RedmineException {
+            return client.getVersions(projectId);
+        }
+
+        @Override
+        public List<Tracker> getTrackers() throws RedmineException {
+            return client.getTrackers();
+        }
+
+        @Override
+        public List<IssueStatus> getStatuses() throws RedmineException {
+            return client.getStatuses();
+        }
+    }
 }
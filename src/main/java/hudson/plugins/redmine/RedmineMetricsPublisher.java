@@ -13,21 +13,33 @@ import hudson.tasks.Publisher;
 import hudson.util.FormValidation;
 import hudson.util.Secret;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 
 public class RedmineMetricsPublisher extends Publisher {
 
+    public static final int DEFAULT_PREFETCH_PAGES = 3;
+
     private Secret apiKey;
     private String targetVersion;
     private String ignoreTicketTracker;
     private String ignoreTicketStatus;
+    private boolean countOnly;
+    private int fetchThreads;
+    private Integer prefetchPages;
+    private boolean incremental;
+    private int fullSyncHours;
+    private boolean clientSideChart;
+    private Integer freshnessSeconds;
 
     @SuppressWarnings("deprecation")
     @DataBoundConstructor
@@ -49,13 +61,29 @@ public class RedmineMetricsPublisher extends Publisher {
 
         PrintStream logger = listener.getLogger();
 
-        RedmineMetricsCalculator calculator = new RedmineMetricsCalculator(rpp.getRedmineWebsite().getBaseUrl(),
+        RedmineWebsiteConfig redmineWebsite = rpp.getRedmineWebsite();
+        RedmineMetricsCalculator calculator = new RedmineMetricsCalculator(redmineWebsite.getBaseUrl(),
                 apiKey.getPlainText(), rpp.projectName, targetVersion, ignoreTicketTracker,
                 ignoreTicketStatus);
+        calculator.setCountOnly(countOnly);
+        calculator.setThreads(getFetchThreads());
+        calculator.setPrefetchPages(getPrefetchPages());
+        calculator.setSite(RedmineSite.of(redmineWebsite));
+        calculator.setFreshness(getFreshnessSeconds(), TimeUnit.SECONDS);
+        if (incremental) {
+            calculator.setSnapshotFile(new File(build.getProject().getRootDir(), MetricsSnapshot.FILE_NAME));
+            calculator.setFullSyncInterval(getFullSyncHours(), TimeUnit.HOURS);
+        }
         try {
             List<MetricsResult> metricsList = calculator.calc();
-            MetricsAction metricsAction = new MetricsAction(build, metricsList);
+            MetricsAction metricsAction = new MetricsAction(build, metricsList, calculator.getCube());
             build.addAction(metricsAction);
+            try {
+                MetricsHistory.of(build.getProject()).append(build, metricsList);
+            } catch (IOException e) {
+                // the history is rebuilt from the builds on next use
+                logger.println("Cannot record ticket metrics in the job's history: " + e);
+            }
         } catch (MetricsException e) {
             logger.println(e);
             return false;
@@ -85,9 +113,79 @@ public class RedmineMetricsPublisher extends Publisher {
         return ignoreTicketStatus;
     }
 
+    public boolean isCountOnly() {
+        return countOnly;
+    }
+
+    @DataBoundSetter
+    public void setCountOnly(boolean countOnly) {
+        this.countOnly = countOnly;
+    }
+
+    public int getFetchThreads() {
+        return fetchThreads > 0 ? fetchThreads : RedmineMetricsCalculator.DEFAULT_THREADS;
+    }
+
+    @DataBoundSetter
+    public void setFetchThreads(int fetchThreads) {
+        this.fetchThreads = fetchThreads;
+    }
+
+    /**
+     * Pages requested ahead when streaming issues; <code>0</code> falls back to loading each version at once.
+     */
+    public int getPrefetchPages() {
+        return prefetchPages != null && prefetchPages >= 0 ? prefetchPages : DEFAULT_PREFETCH_PAGES;
+    }
+
+    @DataBoundSetter
+    public void setPrefetchPages(int prefetchPages) {
+        this.prefetchPages = prefetchPages;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    @DataBoundSetter
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public int getFullSyncHours() {
+        return fullSyncHours > 0 ? fullSyncHours : RedmineMetricsCalculator.DEFAULT_FULL_SYNC_HOURS;
+    }
+
+    @DataBoundSetter
+    public void setFullSyncHours(int fullSyncHours) {
+        this.fullSyncHours = fullSyncHours;
+    }
+
+    /**
+     * Seconds the metrics fetched by another job with the same settings are reused for.
+     */
+    public int getFreshnessSeconds() {
+        return freshnessSeconds != null && freshnessSeconds >= 0 ? freshnessSeconds
+                : RedmineMetricsCalculator.DEFAULT_FRESHNESS_SECONDS;
+    }
+
+    @DataBoundSetter
+    public void setFreshnessSeconds(int freshnessSeconds) {
+        this.freshnessSeconds = freshnessSeconds;
+    }
+
+    public boolean isClientSideChart() {
+        return clientSideChart;
+    }
+
+    @DataBoundSetter
+    public void setClientSideChart(boolean clientSideChart) {
+        this.clientSideChart = clientSideChart;
+    }
+
     @Override
     public Action getProjectAction(AbstractProject<?, ?> project) {
-        return new MetricsProjectAction(project);
+        return new MetricsProjectAction(project, clientSideChart);
     }
 
     @Extension
@@ -120,6 +218,22 @@ public class RedmineMetricsPublisher extends Publisher {
             return FormValidation.ok();
         }
 
+        public FormValidation doCheckFetchThreads(@QueryParameter String value) {
+            return FormValidation.validatePositiveInteger(value);
+        }
+
+        public FormValidation doCheckPrefetchPages(@QueryParameter String value) {
+            return FormValidation.validateNonNegativeInteger(value);
+        }
+
+        public FormValidation doCheckFreshnessSeconds(@QueryParameter String value) {
+            return FormValidation.validateNonNegativeInteger(value);
+        }
+
+        public FormValidation doCheckFullSyncHours(@QueryParameter String value) {
+            return FormValidation.validatePositiveInteger(value);
+        }
+
         public FormValidation doCheckProjectName(
                 @QueryParameter String projectName) {
             if (projectName.length() == 0) {
@@ -124,6 +124,7 @@ public class RedmineProjectProperty extends JobProperty<Job<?, ?>> {
             });
 
             this.redmineWebsites.replaceBy(redmineSites);
+            RedmineSite.invalidateAll();
 
             save();
             return super.configure(req, formData);
@@ -0,0 +1,188 @@
+package hudson.plugins.redmine;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import com.taskadapter.redmineapi.RedmineException;
+import com.taskadapter.redmineapi.bean.IssueStatus;
+import com.taskadapter.redmineapi.bean.Project;
+import com.taskadapter.redmineapi.bean.Tracker;
+import com.taskadapter.redmineapi.bean.Version;
+
+/**
+ * The Redmine REST API as seen with one API key, on top of a {@link RedmineHttpClient} which may
+ * be shared with other jobs.
+ */
+public class RedmineRestClient {
+
+    private static final int PAGE_SIZE = 100;
+
+    private final RedmineHttpClient http;
+    private final String apiKey;
+
+    public RedmineRestClient(RedmineHttpClient http, String apiKey) {
+        this.http = http;
+        this.apiKey = apiKey;
+    }
+
+    /**
+     * Client with a transport of its own, for callers outside of any {@link RedmineSite}.
+     */
+    public RedmineRestClient(String url, String apiKey) {
+        this(new RedmineHttpClient(url, RedmineWebsiteConfig.DEFAULT_CONNECT_TIMEOUT * 1000,
+                RedmineWebsiteConfig.DEFAULT_READ_TIMEOUT * 1000, RedmineWebsiteConfig.DEFAULT_MAX_CONCURRENT_REQUESTS),
+                apiKey);
+    }
+
+    /**
+     * Returns the number of issues matching the given filter without downloading them.
+     */
+    public int getIssueCount(Map<String, String> params) throws RedmineException {
+        Map<String, String> query = new LinkedHashMap<String, String>(params);
+        query.put("offset", "0");
+        query.put("limit", "1");
+        JSONObject json = http.getJSON("issues.json", query, apiKey);
+        return json.optInt("total_count", 0);
+    }
+
+    /**
+     * Returns one page of the issues matching the given filter.
+     */
+    public IssuePage getIssuePage(Map<String, String> params, int offset, int limit) throws RedmineException {
+        Map<String, String> query = new LinkedHashMap<String, String>(params);
+        query.put("offset", String.valueOf(offset));
+        query.put("limit", String.valueOf(limit));
+        JSONObject json = http.getJSON("issues.json", query, apiKey);
+
+        JSONArray array = json.optJSONArray("issues");
+        List<IssueRecord> issues = new ArrayList<IssueRecord>(array == null ? 0 : array.size());
+        if (array != null) {
+            for (int i = 0; i < array.size(); i++) {
+                issues.add(IssueRecord.fromJSON(array.getJSONObject(i)));
+            }
+        }
+        return new IssuePage(issues, json.optInt("total_count", issues.size()));
+    }
+
+    public List<Project> getProjects() throws RedmineException {
+        List<Project> projects = new ArrayList<Project>();
+        int totalCount;
+        do {
+            Map<String, String> query = new LinkedHashMap<String, String>();
+            query.put("offset", String.valueOf(projects.size()));
+            query.put("limit", String.valueOf(PAGE_SIZE));
+            JSONObject json = http.getJSON("projects.json", query, apiKey);
+
+            JSONArray array = json.optJSONArray("projects");
+            if (array == null || array.isEmpty()) {
+                break;
+            }
+            for (int i = 0; i < array.size(); i++) {
+                JSONObject o = array.getJSONObject(i);
+                Project proj = new Project();
+                proj.setId(o.getInt("id"));
+                proj.setIdentifier(o.optString("identifier", null));
+                proj.setName(o.optString("name", null));
+                projects.add(proj);
+            }
+            totalCount = json.optInt("total_count", projects.size());
+        } while (projects.size() < totalCount);
+        return projects;
+    }
+
+    public List<Version> getVersions(int projectId) throws RedmineException {
+        JSONObject json = http.getJSON("projects/" + projectId + "/versions.json",
+                Collections.<String, String>emptyMap(), apiKey);
+        List<Version> versions = new ArrayList<Version>();
+        JSONArray array = json.optJSONArray("versions");
+        if (array != null) {
+            for (int i = 0; i < array.size(); i++) {
+                JSONObject o = array.getJSONObject(i);
+                Version v = new Version();
+                v.setId(o.getInt("id"));
+                v.setName(o.optString("name", null));
+                versions.add(v);
+            }
+        }
+        return versions;
+    }
+
+    public List<Tracker> getTrackers() throws RedmineException {
+        JSONObject json = http.getJSON("trackers.json", Collections.<String, String>emptyMap(), apiKey);
+        List<Tracker> trackers = new ArrayList<Tracker>();
+        JSONArray array = json.optJSONArray("trackers");
+        if (array != null) {
+            for (int i = 0; i < array.size(); i++) {
+                JSONObject o = array.getJSONObject(i);
+                Tracker tracker = new Tracker();
+                tracker.setId(o.getInt("id"));
+                tracker.setName(o.optString("name", null));
+                trackers.add(tracker);
+            }
+        }
+        return trackers;
+    }
+
+    public List<IssueStatus> getStatuses() throws RedmineException {
+        JSONObject json = http.getJSON("issue_statuses.json", Collections.<String, String>emptyMap(), apiKey);
+        List<IssueStatus> statuses = new ArrayList<IssueStatus>();
+        JSONArray array = json.optJSONArray("issue_statuses");
+        if (array != null) {
+            for (int i = 0; i < array.size(); i++) {
+                JSONObject o = array.getJSONObject(i);
+                statuses.add(new IssueStatus(o.getInt("id"), o.optString("name", null)));
+            }
+        }
+        return statuses;
+    }
+
+    public static final class IssuePage {
+        private final List<IssueRecord> issues;
+        private final int totalCount;
+
+        IssuePage(List<IssueRecord> issues, int totalCount) {
+            this.issues = Collections.unmodifiableList(issues);
+            this.totalCount = totalCount;
+        }
+
+        public List<IssueRecord> getIssues() {
+            return issues;
+        }
+
+        /**
+         * Number of issues matching the filter across all pages.
+         */
+        public int getTotalCount() {
+            return totalCount;
+        }
+    }
+
+    static String toQueryString(Map<String, String> params) {
+        if (params.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Entry<String, String> e : params.entrySet()) {
+            sb.append(sb.length() == 0 ? '?' : '&');
+            sb.append(encode(e.getKey())).append('=').append(encode(e.getValue()));
+        }
+        return sb.toString();
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
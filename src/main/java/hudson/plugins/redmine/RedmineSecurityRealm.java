@@ -11,16 +11,26 @@ import hudson.security.GroupDetails;
 import hudson.security.SecurityRealm;
 import hudson.util.Secret;
 
+import java.sql.Timestamp;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.servlet.Filter;
+import javax.servlet.FilterConfig;
+
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.authentication.dao.AbstractUserDetailsAuthenticationProvider;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
@@ -65,6 +75,60 @@ public class RedmineSecurityRealm extends AbstractPasswordBasedSecurityRealm {
     /** Redmine Salt Field */
     private final String saltField;
 
+    /** Maximum Database Connections */
+    private Integer maxConnections;
+
+    /** Seconds login results are cached for, 0 to disable the cache */
+    private Integer cacheTtlSeconds;
+
+    /** Whether logins are checked against an in-memory copy of the login table */
+    private boolean userDirectory;
+
+    /** Seconds between two syncs of the in-memory user directory */
+    private Integer directorySyncSeconds;
+
+    /** Logins waiting for the database beyond the connection limit */
+    private Integer loginQueueSize;
+
+    /** Seconds a login waits for the database */
+    private Integer loginQueueTimeoutSeconds;
+
+    /** Login bulkhead of the current configuration; guarded by the class. */
+    private static LoginBulkhead bulkhead;
+
+    /** Configuration {@link #bulkhead} was created for. */
+    private static String bulkheadKey;
+
+    /** Whether Redmine groups are granted as authorities */
+    private boolean redmineGroups;
+
+    /** Seconds between two reloads of the Redmine groups */
+    private Integer groupSyncSeconds;
+
+    /** Group directory of the current configuration; guarded by the class. */
+    private static GroupDirectory groupDirectory;
+
+    /** Configuration {@link #groupDirectory} was created for. */
+    private static String groupDirectoryKey;
+
+    /** User directory of the current configuration; guarded by the class. */
+    private static UserDirectory directory;
+
+    /** Configuration {@link #directory} was created for. */
+    private static String directoryKey;
+
+    /** Authentication cache, created on first use. */
+    private transient volatile AuthCache authCache;
+
+    /** User lookup, created on first use; a new configuration checks the schema again. */
+    private transient volatile UserLookup userLookup;
+
+    /** Connection pool of the current configuration; guarded by the class. */
+    private static ConnectionPool pool;
+
+    /** Configuration {@link #pool} was created for. */
+    private static String poolKey;
+
     /**
      * Constructor
      * @param dbms         Redmine DBMS
@@ -121,6 +185,12 @@ public class RedmineSecurityRealm extends AbstractPasswordBasedSecurityRealm {
         return new DescriptorImpl();
     }
 
+    @Override
+    public Filter createFilter(FilterConfig filterConfig) {
+        startDirectories();
+        return super.createFilter(filterConfig);
+    }
+
     /**
      *
      * @author Yasuyuki Saito
@@ -145,50 +215,95 @@ public class RedmineSecurityRealm extends AbstractPasswordBasedSecurityRealm {
      */
     @Override
     protected UserDetails authenticate2(String username, String password) throws AuthenticationException {
+        long start = System.nanoTime();
+        try {
+            return authenticateRedmineUser(username, password);
+        } finally {
+            LoginMetrics.record(LoginMetrics.Phase.LOGIN, start);
+        }
+    }
+
+    /**
+     *
+     * @param username Login UserName
+     * @param password Login Password
+     */
+    private UserDetails authenticateRedmineUser(String username, String password) throws AuthenticationException {
+        AuthCache cache = getAuthCache();
+        UserDetails cached = cache.getLogin(username, password);
+        if (cached != null) {
+            return cached;
+        }
+        if (cache.isUnknown(username)) {
+            throw new UsernameNotFoundException("RedmineSecurity: User not found");
+        }
+
         AbstractAuthDao dao = null;
+        LoginBulkhead permit = null;
 
         try {
-            dao = createAuthDao(this.dbms);
-
             LOGGER.info("Redmine DBMS      : " + this.dbms);
             LOGGER.info("DB Server         : " + this.dbServer);
             LOGGER.info("DB Port           : " + this.port);
             LOGGER.info("Database Name     : " + this.databaseName);
 
-            dao.open(this.dbServer, this.port, this.databaseName, this.dbUserName, this.dbPassword.getPlainText());
-
-            if (!dao.isTable(this.loginTable)) {
-                throw new RedmineAuthenticationException("RedmineSecurity: Invalid Login Table");
-            }
-
-            if (!dao.isField(this.loginTable, this.userField)) {
-                throw new RedmineAuthenticationException("RedmineSecurity: Invalid User Field");
+            RedmineUserData userData = getUserDirectoryData(username);
+            boolean fromDirectory = userData != null;
+            if (userData == null) {
+                LoginBulkhead loginBulkhead = getLoginBulkhead();
+                if (!loginBulkhead.acquire()) {
+                    UserDetails stale = cache.getStaleLogin(username, password);
+                    if (stale != null) {
+                        loginBulkhead.servedStale();
+                        return stale;
+                    }
+                    throw new AuthenticationServiceException("RedmineSecurity: Too many logins, try again later");
+                }
+                permit = loginBulkhead;
+                dao = openAuthDao();
+                userData = getUserLookup().get(dao, username);
             }
 
-            RedmineUserData userData = dao.getRedmineUserData(this.loginTable, this.userField, this.passField, Constants.VERSION_1_2_0.equals(this.version) ? this.saltField : null, username);
-
             if (userData == null) {
                 LOGGER.warning("RedmineSecurity: Invalid Username");
+                cache.putUnknown(username);
                 throw new UsernameNotFoundException("RedmineSecurity: User not found");
             }
 
-            String encryptedPassword = "";
-            if (Constants.VERSION_1_2_0.equals(this.version)) {
-                encryptedPassword = CipherUtil.encodeSHA1(userData.getSalt() + CipherUtil.encodeSHA1(password));
-            } else if (Constants.VERSION_1_1_3.equals(this.version)) {
-                encryptedPassword = CipherUtil.encodeSHA1(password);
+            boolean validPassword = isValidPassword(userData, password);
+            if (!validPassword && fromDirectory) {
+                // the password may have been changed in Redmine since the directory last synced
+                LoginBulkhead loginBulkhead = getLoginBulkhead();
+                if (!loginBulkhead.acquire()) {
+                    throw new AuthenticationServiceException("RedmineSecurity: Too many logins, try again later");
+                }
+                permit = loginBulkhead;
+                dao = openAuthDao();
+                userData = getUserLookup().get(dao, username);
+                validPassword = userData != null && isValidPassword(userData, password);
             }
 
-            LOGGER.info("Redmine Version   : " + this.version);
-            LOGGER.info("User Name         : " + username);
-            LOGGER.info("Encrypted Password: " + encryptedPassword);
-
-            if (!userData.getPassword().equals(encryptedPassword)) {
+            if (!validPassword) {
                 LOGGER.warning("RedmineSecurity: Invalid Password");
                 throw new RedmineAuthenticationException("RedmineSecurity: Invalid Password");
             }
 
-            return getUserDetails(username, userData.getPassword());
+            // the groups may have to be loaded: not while holding a connection and a login permit
+            if (dao != null) {
+                dao.close();
+                dao = null;
+            }
+            if (permit != null) {
+                permit.release();
+                permit = null;
+            }
+
+            Set<GrantedAuthority> authorities = getAuthorities(username);
+            UserDetails details = newUserDetails(username, userData.getPassword(), authorities);
+            if (authorities != null) {
+                cache.putLogin(username, password, details);
+            }
+            return details;
         } catch (AuthenticationException e) {
             throw e;
         } catch (Exception e) {
@@ -197,34 +312,90 @@ public class RedmineSecurityRealm extends AbstractPasswordBasedSecurityRealm {
             if (dao != null) {
                 dao.close();
             }
+            if (permit != null) {
+                permit.release();
+            }
+        }
+    }
+
+    /**
+     * Hash the password the way the configured Redmine version does and compare it with the stored
+     * hash.
+     *
+     * @param userData
+     * @param password Login Password
+     * @return
+     */
+    private boolean isValidPassword(RedmineUserData userData, String password) {
+        long hashStart = System.nanoTime();
+        String encryptedPassword = "";
+        if (Constants.VERSION_1_2_0.equals(this.version)) {
+            encryptedPassword = CipherUtil.encodeSHA1(userData.getSalt() + CipherUtil.encodeSHA1(password));
+        } else if (Constants.VERSION_1_1_3.equals(this.version)) {
+            encryptedPassword = CipherUtil.encodeSHA1(password);
         }
+        boolean validPassword = userData.getPassword().equals(encryptedPassword);
+        LoginMetrics.record(LoginMetrics.Phase.PASSWORD, hashStart);
+
+        LOGGER.info("Redmine Version   : " + this.version);
+        LOGGER.info("User Name         : " + userData.getUsername());
+        LOGGER.info("Encrypted Password: " + encryptedPassword);
+        return validPassword;
     }
 
     @Override
     public UserDetails loadUserByUsername2(String username) throws UsernameNotFoundException {
+        AuthCache cache = getAuthCache();
+        UserDetails cached = cache.getUser(username);
+        if (cached != null) {
+            return cached;
+        }
+        if (cache.isUnknown(username)) {
+            throw new UsernameNotFoundException("RedmineSecurity: User not found");
+        }
+
         AbstractAuthDao dao = null;
+        LoginBulkhead permit = null;
 
         try {
-            dao = createAuthDao(this.dbms);
-
-            dao.open(this.dbServer, this.port, this.databaseName, this.dbUserName, this.dbPassword.getPlainText());
-
-            if (!dao.isTable(this.loginTable)) {
-                throw new RedmineAuthenticationException("RedmineSecurity: Invalid Login Table");
-            }
-
-            if (!dao.isField(this.loginTable, this.userField)) {
-                throw new RedmineAuthenticationException("RedmineSecurity: Invalid User Field");
+            RedmineUserData userData = getUserDirectoryData(username);
+            if (userData == null) {
+                LoginBulkhead loginBulkhead = getLoginBulkhead();
+                if (!loginBulkhead.acquire()) {
+                    UserDetails stale = cache.getStaleUser(username);
+                    if (stale != null) {
+                        loginBulkhead.servedStale();
+                        return stale;
+                    }
+                    throw new AuthenticationServiceException("RedmineSecurity: Too many logins, try again later");
+                }
+                permit = loginBulkhead;
+                dao = openAuthDao();
+                userData = getUserLookup().get(dao, username);
             }
 
-            RedmineUserData userData = dao.getRedmineUserData(this.loginTable, this.userField, this.passField, Constants.VERSION_1_2_0.equals(this.version) ? this.saltField : null, username);
-
             if (userData == null) {
                 LOGGER.warning("RedmineSecurity: Invalid Username");
+                cache.putUnknown(username);
                 throw new UsernameNotFoundException("RedmineSecurity: User not found");
             }
 
-            return getUserDetails(username, userData.getPassword());
+            // the groups may have to be loaded: not while holding a connection and a login permit
+            if (dao != null) {
+                dao.close();
+                dao = null;
+            }
+            if (permit != null) {
+                permit.release();
+                permit = null;
+            }
+
+            Set<GrantedAuthority> authorities = getAuthorities(username);
+            UserDetails details = newUserDetails(username, userData.getPassword(), authorities);
+            if (authorities != null) {
+                cache.putUser(username, details);
+            }
+            return details;
         } catch (AuthenticationException e) {
             throw e;
         } catch (Exception e) {
@@ -233,6 +404,292 @@ public class RedmineSecurityRealm extends AbstractPasswordBasedSecurityRealm {
             if (dao != null) {
                 dao.close();
             }
+            if (permit != null) {
+                permit.release();
+            }
+        }
+    }
+
+    /**
+     * Look up a user in the in-memory directory, if it is enabled and loaded.
+     *
+     * @param username
+     * @return null if the user must be looked up in the database
+     * @throws RedmineAuthenticationException
+     */
+    private RedmineUserData getUserDirectoryData(String username) throws RedmineAuthenticationException {
+        if (!this.userDirectory) {
+            return null;
+        }
+        return getUserDirectory().get(username);
+    }
+
+    /**
+     * In-memory user directory of this configuration, started on first use. The directory of a
+     * previous configuration is stopped when the configuration changes.
+     *
+     * The directory only depends on which rows it reads: it reads them from the connection pool in
+     * use when it syncs, so a new password or pool size does not reload it.
+     *
+     * @return
+     * @throws RedmineAuthenticationException
+     */
+    UserDirectory getUserDirectory() throws RedmineAuthenticationException {
+        AbstractAuthDao dao = createAuthDao(this.dbms);
+        String key = dao.getConnectionString(this.dbServer, this.port, this.databaseName) + '\n' + this.dbUserName
+                + '\n' + this.loginTable + '\n' + this.userField + '\n' + this.passField + '\n' + this.saltField
+                + '\n' + this.version + '\n' + getDirectorySyncSeconds();
+        getConnectionPool(dao);
+        synchronized (RedmineSecurityRealm.class) {
+            if (directory == null || !key.equals(directoryKey)) {
+                if (directory != null) {
+                    directory.stop();
+                }
+                directory = new UserDirectory(newUserSource(this.dbms, this.loginTable, this.userField, this.passField,
+                        Constants.VERSION_1_2_0.equals(this.version) ? this.saltField : null),
+                        UserDirectory.DEFAULT_MAX_USERS);
+                directory.start(getDirectorySyncSeconds(), TimeUnit.SECONDS);
+                directoryKey = key;
+            }
+            return directory;
+        }
+    }
+
+    /**
+     * Source of a user directory. It holds no reference to the realm, which is replaced by every
+     * change of the configuration.
+     *
+     * @param dbms
+     * @param loginTable
+     * @param userField
+     * @param passField
+     * @param saltField null if the passwords are not salted
+     * @return
+     */
+    private static UserDirectory.Source newUserSource(final String dbms, final String loginTable,
+            final String userField, final String passField, final String saltField) {
+        return new UserDirectory.Source() {
+            @Override
+            public void load(Timestamp since, UserVisitor visitor) throws RedmineAuthenticationException {
+                AbstractAuthDao loader = openCurrentAuthDao(dbms);
+                try {
+                    loader.loadUsers(loginTable, userField, passField, saltField, since, visitor);
+                } finally {
+                    loader.close();
+                }
+            }
+
+            @Override
+            public Set<String> loadLogins() throws RedmineAuthenticationException {
+                AbstractAuthDao loader = openCurrentAuthDao(dbms);
+                try {
+                    return loader.loadLogins(loginTable, userField);
+                } finally {
+                    loader.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Redmine groups of this configuration, reloaded in the background. The directory of a
+     * previous configuration is stopped when the configuration changes.
+     *
+     * Like the user directory, it only depends on which rows it reads and reads them from the
+     * connection pool in use when it loads.
+     *
+     * @return
+     * @throws RedmineAuthenticationException
+     */
+    GroupDirectory getGroupDirectory() throws RedmineAuthenticationException {
+        AbstractAuthDao dao = createAuthDao(this.dbms);
+        String key = dao.getConnectionString(this.dbServer, this.port, this.databaseName) + '\n' + this.dbUserName
+                + '\n' + this.loginTable + '\n' + this.userField + '\n' + getGroupSyncSeconds();
+        getConnectionPool(dao);
+        synchronized (RedmineSecurityRealm.class) {
+            if (groupDirectory == null || !key.equals(groupDirectoryKey)) {
+                if (groupDirectory != null) {
+                    groupDirectory.stop();
+                }
+                groupDirectory = new GroupDirectory(newGroupSource(this.dbms, this.loginTable, this.userField),
+                        getGroupSyncSeconds(), TimeUnit.SECONDS);
+                groupDirectory.start(getGroupSyncSeconds(), TimeUnit.SECONDS);
+                groupDirectoryKey = key;
+            }
+            return groupDirectory;
+        }
+    }
+
+    /**
+     * Source of a group directory, holding no reference to the realm either.
+     *
+     * @param dbms
+     * @param loginTable
+     * @param userField
+     * @return
+     */
+    private static GroupDirectory.Source newGroupSource(final String dbms, final String loginTable,
+            final String userField) {
+        return new GroupDirectory.Source() {
+            @Override
+            public void load(GroupVisitor visitor) throws RedmineAuthenticationException {
+                AbstractAuthDao loader = openCurrentAuthDao(dbms);
+                try {
+                    loader.loadGroups(loginTable, userField, visitor);
+                } finally {
+                    loader.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Starts the directories this configuration uses when the realm is put in use, so that they
+     * are loaded in the background rather than by the first logins.
+     */
+    private void startDirectories() {
+        try {
+            if (this.redmineGroups) {
+                getGroupDirectory();
+            }
+            if (this.userDirectory) {
+                getUserDirectory();
+            }
+        } catch (RedmineAuthenticationException e) {
+            LOGGER.log(Level.WARNING, "RedmineSecurity: Cannot start the directories", e);
+        }
+    }
+
+    /**
+     * Login bulkhead of this configuration, letting as many logins query the database at once as
+     * there are connections in the pool.
+     *
+     * @return
+     */
+    LoginBulkhead getLoginBulkhead() {
+        String key = getMaxConnections() + "\n" + getLoginQueueSize() + '\n' + getLoginQueueTimeoutSeconds();
+        synchronized (RedmineSecurityRealm.class) {
+            if (bulkhead == null || !key.equals(bulkheadKey)) {
+                bulkhead = new LoginBulkhead(getMaxConnections(), getLoginQueueSize(), getLoginQueueTimeoutSeconds(),
+                        TimeUnit.SECONDS);
+                bulkheadKey = key;
+            }
+            return bulkhead;
+        }
+    }
+
+    /**
+     * Login bulkhead of the configuration in use, for monitoring.
+     *
+     * @return null if no login reached the database yet
+     */
+    static LoginBulkhead getCurrentLoginBulkhead() {
+        synchronized (RedmineSecurityRealm.class) {
+            return bulkhead;
+        }
+    }
+
+    /**
+     * Authentication cache of this configuration; a new configuration starts with an empty one.
+     *
+     * @return
+     */
+    AuthCache getAuthCache() {
+        AuthCache cache = authCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = authCache;
+                if (cache == null) {
+                    cache = new AuthCache(getCacheTtlSeconds(), TimeUnit.SECONDS);
+                    authCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * User lookup of this configuration, checking the login table and user field before its first
+     * query.
+     *
+     * @return
+     */
+    private UserLookup getUserLookup() {
+        UserLookup lookup = userLookup;
+        if (lookup == null) {
+            synchronized (this) {
+                lookup = userLookup;
+                if (lookup == null) {
+                    lookup = new UserLookup(this.loginTable, this.userField, this.passField,
+                            Constants.VERSION_1_2_0.equals(this.version) ? this.saltField : null);
+                    userLookup = lookup;
+                }
+            }
+        }
+        return lookup;
+    }
+
+    /**
+     * Create Auth Dao with a connection from the pool of the current configuration.
+     *
+     * @return
+     * @throws RedmineAuthenticationException
+     */
+    private AbstractAuthDao openAuthDao() throws RedmineAuthenticationException {
+        AbstractAuthDao dao = createAuthDao(this.dbms);
+        ConnectionPool connectionPool = getConnectionPool(dao);
+        long start = System.nanoTime();
+        try {
+            dao.open(connectionPool);
+        } finally {
+            LoginMetrics.record(LoginMetrics.Phase.CONNECTION, start);
+        }
+        return dao;
+    }
+
+    /**
+     * Create Auth Dao with a connection from the pool in use, for the background loads of the
+     * directories which outlive the realm that started them.
+     *
+     * @param dbms
+     * @return
+     * @throws RedmineAuthenticationException
+     */
+    private static AbstractAuthDao openCurrentAuthDao(String dbms) throws RedmineAuthenticationException {
+        ConnectionPool current;
+        synchronized (RedmineSecurityRealm.class) {
+            current = pool;
+        }
+        if (current == null) {
+            throw new RedmineAuthenticationException("RedmineSecurity: Connection pool closed");
+        }
+        AbstractAuthDao dao = createAuthDao(dbms);
+        dao.open(current);
+        return dao;
+    }
+
+    /**
+     * Connection pool of this configuration. The pool of a previous configuration is closed when
+     * the configuration changes.
+     *
+     * @param dao
+     * @return
+     * @throws RedmineAuthenticationException
+     */
+    private ConnectionPool getConnectionPool(AbstractAuthDao dao) throws RedmineAuthenticationException {
+        String connectionString = dao.getConnectionString(this.dbServer, this.port, this.databaseName);
+        String key = connectionString + '\n' + this.dbUserName + '\n'
+                + Util.getDigestOf(this.dbPassword.getPlainText()) + '\n' + getMaxConnections();
+        synchronized (RedmineSecurityRealm.class) {
+            if (pool == null || !key.equals(poolKey)) {
+                if (pool != null) {
+                    pool.close();
+                }
+                pool = new ConnectionPool(dao.getDriverName(), connectionString, this.dbUserName,
+                        this.dbPassword.getPlainText(), getMaxConnections());
+                poolKey = key;
+            }
+            return pool;
         }
     }
 
@@ -242,7 +699,7 @@ public class RedmineSecurityRealm extends AbstractPasswordBasedSecurityRealm {
      * @param dbms
      * @return
      */
-    private AbstractAuthDao createAuthDao(String dbms) {
+    private static AbstractAuthDao createAuthDao(String dbms) {
         if (Constants.DBMS_MYSQL.equals(dbms)) {
             return new MySQLAuthDao();
         } else if (Constants.DBMS_POSTGRESQL.equals(dbms)) {
@@ -254,19 +711,59 @@ public class RedmineSecurityRealm extends AbstractPasswordBasedSecurityRealm {
 
     @Override
     public GroupDetails loadGroupByGroupname2(String groupname, boolean fetchMembers) throws UsernameNotFoundException {
-        throw new UsernameNotFoundException("RedmineSecurityRealm: Non-supported function");
+        if (!this.redmineGroups) {
+            throw new UsernameNotFoundException("RedmineSecurityRealm: Non-supported function");
+        }
+
+        GroupDirectory.Snapshot snapshot;
+        try {
+            snapshot = getGroupDirectory().get();
+        } catch (RedmineAuthenticationException e) {
+            throw new UsernameNotFoundException("RedmineSecurity: Cannot load groups", e);
+        }
+
+        if (!snapshot.hasGroup(groupname)) {
+            throw new UsernameNotFoundException("RedmineSecurity: Group not found");
+        }
+        return new RedmineGroupDetails(groupname, fetchMembers ? snapshot.getMembers(groupname) : null);
     }
     
     /**
+     * Authorities of a user, with one for each Redmine group of the user when groups are enabled.
+     *
+     * @param username
+     * @return null if the groups cannot be loaded
+     */
+    private Set<GrantedAuthority> getAuthorities(String username) {
+        Set<GrantedAuthority> authorities = new HashSet<GrantedAuthority>();
+        authorities.add(SecurityRealm.AUTHENTICATED_AUTHORITY2);
+        if (this.redmineGroups) {
+            try {
+                for (String group : getGroupDirectory().get().getGroups(username)) {
+                    authorities.add(new SimpleGrantedAuthority(group));
+                }
+            } catch (RedmineAuthenticationException e) {
+                LOGGER.log(Level.WARNING, "RedmineSecurity: Cannot load groups", e);
+                return null;
+            }
+        }
+        return authorities;
+    }
+
+    /**
+     * User details with the given authorities. Groups which cannot be loaded are left out rather
+     * than failing the login; the caller does not cache such details, so the next login has them.
      *
      * @param username
      * @param password
+     * @param authorities null if the groups cannot be loaded
      * @return
      */
-    private UserDetails getUserDetails(String username, String password) {
-        Set<GrantedAuthority> groups = new HashSet<GrantedAuthority>();
-        groups.add(SecurityRealm.AUTHENTICATED_AUTHORITY2);
-        return new RedmineUserDetails(username, password, true, true, true, true, groups);
+    private static UserDetails newUserDetails(String username, String password, Set<GrantedAuthority> authorities) {
+        if (authorities == null) {
+            authorities = Collections.<GrantedAuthority>singleton(SecurityRealm.AUTHENTICATED_AUTHORITY2);
+        }
+        return new RedmineUserDetails(username, password, true, true, true, true, authorities);
     }
 
     /**
@@ -356,4 +853,143 @@ public class RedmineSecurityRealm extends AbstractPasswordBasedSecurityRealm {
     public String getSaltField() {
         return saltField;
     }
+
+    /**
+     *
+     * @return
+     */
+    public int getMaxConnections() {
+        return maxConnections != null && maxConnections > 0 ? maxConnections : Constants.DEFAULT_MAX_CONNECTIONS;
+    }
+
+    /**
+     *
+     * @param maxConnections Maximum Database Connections
+     */
+    @DataBoundSetter
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getCacheTtlSeconds() {
+        return cacheTtlSeconds != null && cacheTtlSeconds >= 0 ? cacheTtlSeconds : AuthCache.DEFAULT_TTL_SECONDS;
+    }
+
+    /**
+     *
+     * @param cacheTtlSeconds Seconds login results are cached for
+     */
+    @DataBoundSetter
+    public void setCacheTtlSeconds(int cacheTtlSeconds) {
+        this.cacheTtlSeconds = cacheTtlSeconds;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isUserDirectory() {
+        return userDirectory;
+    }
+
+    /**
+     *
+     * @param userDirectory Whether logins are checked against an in-memory copy of the login table
+     */
+    @DataBoundSetter
+    public void setUserDirectory(boolean userDirectory) {
+        this.userDirectory = userDirectory;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getDirectorySyncSeconds() {
+        return directorySyncSeconds != null && directorySyncSeconds > 0 ? directorySyncSeconds
+                : Constants.DEFAULT_DIRECTORY_SYNC_SECONDS;
+    }
+
+    /**
+     *
+     * @param directorySyncSeconds Seconds between two syncs of the in-memory user directory
+     */
+    @DataBoundSetter
+    public void setDirectorySyncSeconds(int directorySyncSeconds) {
+        this.directorySyncSeconds = directorySyncSeconds;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getLoginQueueSize() {
+        return loginQueueSize != null && loginQueueSize >= 0 ? loginQueueSize : Constants.DEFAULT_LOGIN_QUEUE_SIZE;
+    }
+
+    /**
+     *
+     * @param loginQueueSize Logins waiting for the database beyond the connection limit
+     */
+    @DataBoundSetter
+    public void setLoginQueueSize(int loginQueueSize) {
+        this.loginQueueSize = loginQueueSize;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getLoginQueueTimeoutSeconds() {
+        return loginQueueTimeoutSeconds != null && loginQueueTimeoutSeconds > 0 ? loginQueueTimeoutSeconds
+                : Constants.DEFAULT_LOGIN_QUEUE_TIMEOUT_SECONDS;
+    }
+
+    /**
+     *
+     * @param loginQueueTimeoutSeconds Seconds a login waits for the database
+     */
+    @DataBoundSetter
+    public void setLoginQueueTimeoutSeconds(int loginQueueTimeoutSeconds) {
+        this.loginQueueTimeoutSeconds = loginQueueTimeoutSeconds;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isRedmineGroups() {
+        return redmineGroups;
+    }
+
+    /**
+     *
+     * @param redmineGroups Whether Redmine groups are granted as authorities
+     */
+    @DataBoundSetter
+    public void setRedmineGroups(boolean redmineGroups) {
+        this.redmineGroups = redmineGroups;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getGroupSyncSeconds() {
+        return groupSyncSeconds != null && groupSyncSeconds > 0 ? groupSyncSeconds
+                : Constants.DEFAULT_GROUP_SYNC_SECONDS;
+    }
+
+    /**
+     *
+     * @param groupSyncSeconds Seconds between two reloads of the Redmine groups
+     */
+    @DataBoundSetter
+    public void setGroupSyncSeconds(int groupSyncSeconds) {
+        this.groupSyncSeconds = groupSyncSeconds;
+    }
 }
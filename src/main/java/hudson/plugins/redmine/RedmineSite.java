@@ -0,0 +1,103 @@
+package hudson.plugins.redmine;
+
+import hudson.Util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Runtime state shared by every job using the same {@link RedmineWebsiteConfig}.
+ *
+ * Instances are created lazily and dropped by {@link #invalidateAll()} whenever the
+ * global Redmine configuration is saved. A dropped site is only no longer handed out: builds which
+ * got it before finish with it, and it is garbage collected after them.
+ */
+public final class RedmineSite {
+
+    private static final ConcurrentMap<String, RedmineSite> SITES = new ConcurrentHashMap<String, RedmineSite>();
+
+    private final String baseUrl;
+    private final int maxConcurrentRequests;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final RedmineHttpClient httpClient;
+    private final ConcurrentMap<String, RedmineDirectoryCache> directories = new ConcurrentHashMap<String, RedmineDirectoryCache>();
+    private final MetricsFetchCoordinator fetches = new MetricsFetchCoordinator();
+    private final FetchExecutors executors;
+
+    private RedmineSite(RedmineWebsiteConfig config) {
+        this.baseUrl = config.getBaseUrl();
+        this.maxConcurrentRequests = config.getMaxConcurrentRequests();
+        this.connectTimeout = config.getConnectTimeout();
+        this.readTimeout = config.getReadTimeout();
+        this.httpClient = new RedmineHttpClient(baseUrl, connectTimeout * 1000, readTimeout * 1000,
+                maxConcurrentRequests);
+        this.executors = new FetchExecutors(maxConcurrentRequests);
+    }
+
+    public static RedmineSite of(RedmineWebsiteConfig config) {
+        RedmineSite site = SITES.get(config.getName());
+        if (site != null && site.matches(config)) {
+            return site;
+        }
+        RedmineSite created = new RedmineSite(config);
+        if (site == null) {
+            site = SITES.putIfAbsent(config.getName(), created);
+            return site == null ? created : site;
+        }
+        if (SITES.replace(config.getName(), site, created)) {
+            return created;
+        }
+        return of(config);
+    }
+
+    static void invalidateAll() {
+        SITES.clear();
+    }
+
+    private boolean matches(RedmineWebsiteConfig config) {
+        return baseUrl.equals(config.getBaseUrl()) && maxConcurrentRequests == config.getMaxConcurrentRequests()
+                && connectTimeout == config.getConnectTimeout() && readTimeout == config.getReadTimeout();
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * Transport shared by every Redmine request made for this site.
+     */
+    public RedmineHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Directories as seen with the given API key, as what Redmine lists depends on who asks.
+     */
+    public RedmineDirectoryCache getDirectory(String apiKey) {
+        String key = Util.getDigestOf(apiKey == null ? "" : apiKey);
+        RedmineDirectoryCache directory = directories.get(key);
+        if (directory == null) {
+            RedmineDirectoryCache created = new RedmineDirectoryCache();
+            directory = directories.putIfAbsent(key, created);
+            if (directory == null) {
+                directory = created;
+            }
+        }
+        return directory;
+    }
+
+    /**
+     * Metrics fetches in flight or recently completed for this site.
+     */
+    MetricsFetchCoordinator getFetches() {
+        return fetches;
+    }
+
+    /**
+     * Threads running the metrics fetches of this site.
+     */
+    FetchExecutors getExecutors() {
+        return executors;
+    }
+}
@@ -16,10 +16,19 @@ import org.kohsuke.stapler.QueryParameter;
  */
 public class RedmineWebsiteConfig extends AbstractDescribableImpl<RedmineWebsiteConfig> {
 
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 8;
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10;
+
+    public static final int DEFAULT_READ_TIMEOUT = 60;
+
     private String name;
     private String baseUrl;
     private String versionNumber;
     private String referencingKeywords;
+    private int maxConcurrentRequests;
+    private int connectTimeout;
+    private int readTimeout;
 
     RedmineLinkAnnotator.LinkMarkup[] linkMarkups;
 
@@ -82,6 +91,42 @@ public class RedmineWebsiteConfig extends AbstractDescribableImpl<RedmineWebsite
         this.linkMarkups = RedmineLinkAnnotator.buildLinkMarkups(versionNumber, referencingKeywords);
     }
 
+    /**
+     * Upper bound of REST requests issued to this Redmine at the same time, across all jobs.
+     */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests > 0 ? maxConcurrentRequests : DEFAULT_MAX_CONCURRENT_REQUESTS;
+    }
+
+    @DataBoundSetter
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * Seconds to wait for a connection to this Redmine.
+     */
+    public int getConnectTimeout() {
+        return connectTimeout > 0 ? connectTimeout : DEFAULT_CONNECT_TIMEOUT;
+    }
+
+    @DataBoundSetter
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Seconds to wait for a response from this Redmine.
+     */
+    public int getReadTimeout() {
+        return readTimeout > 0 ? readTimeout : DEFAULT_READ_TIMEOUT;
+    }
+
+    @DataBoundSetter
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
     @Extension
     public static class DescriptorImpl extends Descriptor<RedmineWebsiteConfig> {
 
@@ -117,5 +162,17 @@ public class RedmineWebsiteConfig extends AbstractDescribableImpl<RedmineWebsite
 
             return FormValidation.ok();
         }
+
+        public FormValidation doCheckMaxConcurrentRequests(@QueryParameter String maxConcurrentRequests) {
+            return FormValidation.validatePositiveInteger(maxConcurrentRequests);
+        }
+
+        public FormValidation doCheckConnectTimeout(@QueryParameter String connectTimeout) {
+            return FormValidation.validatePositiveInteger(connectTimeout);
+        }
+
+        public FormValidation doCheckReadTimeout(@QueryParameter String readTimeout) {
+            return FormValidation.validatePositiveInteger(readTimeout);
+        }
     }
 }
@@ -0,0 +1,156 @@
+package hudson.plugins.redmine;
+
+import hudson.model.Job;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Status names of a job, each with the id {@link MetricsAction} stores its counts under, kept in an
+ * append-only file with one name per line: the id of a name is its line number, starting at 0. The
+ * names of the other dimensions of a {@link MetricsCube} are kept in the same file.
+ *
+ * Names are interned when read, so every build of every job shares one instance of each name.
+ *
+ * An append which did not complete leaves a last line without its newline; it is dropped when the
+ * file is read, so that the next append does not join onto it. Before adding a name the file is
+ * read again if it is not as long as last written, e.g. because it was removed.
+ */
+final class StatusDictionary {
+
+    static final String FILE_NAME = "redmine-metrics-statuses.txt";
+
+    private static final ConcurrentMap<String, StatusDictionary> DICTIONARIES = new ConcurrentHashMap<String, StatusDictionary>();
+
+    private final File file;
+
+    /** Guarded by this. */
+    private List<String> names;
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+    /** Length of the file as of the last read or append; guarded by this. */
+    private long length;
+
+    StatusDictionary(File file) {
+        this.file = file;
+    }
+
+    static StatusDictionary of(Job<?, ?> job) {
+        return of(job.getRootDir());
+    }
+
+    static StatusDictionary of(File jobDir) {
+        File file = new File(jobDir, FILE_NAME);
+        String path = file.getAbsolutePath();
+        StatusDictionary dictionary = DICTIONARIES.get(path);
+        if (dictionary == null) {
+            StatusDictionary created = new StatusDictionary(file);
+            dictionary = DICTIONARIES.putIfAbsent(path, created);
+            if (dictionary == null) {
+                dictionary = created;
+            }
+        }
+        return dictionary;
+    }
+
+    /**
+     * Drops the dictionary of a deleted job, and those of jobs whose directory was moved away by a
+     * rename.
+     */
+    static void evict(File jobDir) {
+        for (Iterator<StatusDictionary> it = DICTIONARIES.values().iterator(); it.hasNext();) {
+            File dir = it.next().file.getParentFile();
+            if (dir.equals(jobDir) || !dir.exists()) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the id of the name, adding it to the file if it is new
+     */
+    synchronized int idOf(String name) throws IOException {
+        if (names != null && file.length() != length) {
+            names = null;
+        }
+        load();
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        if (name.indexOf('\n') >= 0 || name.indexOf('\r') >= 0) {
+            throw new IOException("Status name spans several lines: " + name);
+        }
+        byte[] line = (name + '\n').getBytes(StandardCharsets.UTF_8);
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(line);
+        } finally {
+            out.close();
+        }
+        length += line.length;
+        return add(name.intern());
+    }
+
+    /**
+     * @return <code>null</code> if the id is unknown, e.g. because the file was removed
+     */
+    synchronized String nameOf(int id) throws IOException {
+        load();
+        return id >= 0 && id < names.size() ? names.get(id) : null;
+    }
+
+    private void load() throws IOException {
+        if (names != null) {
+            return;
+        }
+        names = new ArrayList<String>();
+        ids.clear();
+        length = 0;
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file.toPath());
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] != '\n') {
+            end--;
+        }
+        if (end < bytes.length) {
+            // the name of an append which did not complete never got its id
+            RandomAccessFile out = new RandomAccessFile(file, "rw");
+            try {
+                out.setLength(end);
+            } finally {
+                out.close();
+            }
+        }
+        int start = 0;
+        for (int i = 0; i < end; i++) {
+            if (bytes[i] == '\n') {
+                add(new String(bytes, start, i - start, StandardCharsets.UTF_8).intern());
+                start = i + 1;
+            }
+        }
+        length = end;
+    }
+
+    private int add(String name) {
+        int id = names.size();
+        names.add(name);
+        ids.put(name, id);
+        return id;
+    }
+}
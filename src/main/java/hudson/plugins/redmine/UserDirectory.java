@@ -0,0 +1,230 @@
+package hudson.plugins.redmine;
+
+import hudson.plugins.redmine.dao.UserVisitor;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.util.Timer;
+
+/**
+ * Copy of the Redmine login table held in memory, so that logins do not need the database.
+ *
+ * The whole table is loaded once, then only the rows whose <code>updated_on</code> is at or after
+ * the latest one seen are read every sync interval, along with the logins of the table so that
+ * deleted rows are dropped too. The whole table is reloaded every {@link #FULL_RELOAD_INTERVAL}.
+ * Locked users are left out, so they are looked up in the database as before. A password which
+ * does not match may have been changed since the last sync, so the realm checks it against the
+ * database before rejecting it.
+ *
+ * Hashed passwords and salts are kept as bytes, decoded from hex when they are hex. At most
+ * <code>maxUsers</code> users are kept; the others, like any user not found here, are looked up in
+ * the database.
+ */
+final class UserDirectory {
+
+    private static final Logger LOGGER = Logger.getLogger(UserDirectory.class.getName());
+
+    static final long FULL_RELOAD_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    static final int DEFAULT_MAX_USERS = 200000;
+
+    /** Redmine's status of locked users. */
+    static final int STATUS_LOCKED = 3;
+
+    /**
+     * Where the rows come from.
+     */
+    interface Source {
+        /**
+         * @param since only rows updated at or after this time, <code>null</code> for all
+         */
+        void load(Timestamp since, UserVisitor visitor) throws RedmineAuthenticationException;
+
+        /**
+         * Every login of the table, whatever the status of the user.
+         */
+        Set<String> loadLogins() throws RedmineAuthenticationException;
+    }
+
+    /**
+     * Hashed password and salt of one user.
+     */
+    private static final class Record {
+        private final byte[] password;
+        private final byte[] salt;
+
+        Record(String password, String salt) {
+            this.password = encode(password);
+            this.salt = encode(salt);
+        }
+    }
+
+    private final Source source;
+    private final int maxUsers;
+
+    private volatile ConcurrentMap<String, Record> users;
+
+    /** Guarded by this. */
+    private Timestamp watermark;
+    private long lastFullLoad;
+    private boolean overflowLogged;
+
+    private ScheduledFuture<?> sync;
+
+    UserDirectory(Source source, int maxUsers) {
+        this.source = source;
+        this.maxUsers = maxUsers;
+    }
+
+    /**
+     * Loads the table in the background and keeps it current.
+     */
+    synchronized void start(long interval, TimeUnit unit) {
+        if (sync == null) {
+            sync = Timer.get().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        sync();
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "RedmineSecurity: Cannot sync the user directory", e);
+                    }
+                }
+            }, 0, unit.toMillis(interval), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void stop() {
+        if (sync != null) {
+            sync.cancel(false);
+            sync = null;
+        }
+    }
+
+    /**
+     * @return <code>null</code> if the user is not known here, or the table is not loaded yet
+     */
+    RedmineUserData get(String username) {
+        ConcurrentMap<String, Record> current = users;
+        Record record = current == null ? null : current.get(username);
+        if (record == null) {
+            return null;
+        }
+        RedmineUserData userData = new RedmineUserData();
+        userData.setUsername(username);
+        userData.setPassword(decode(record.password));
+        userData.setSalt(decode(record.salt));
+        return userData;
+    }
+
+    boolean isLoaded() {
+        return users != null;
+    }
+
+    int size() {
+        ConcurrentMap<String, Record> current = users;
+        return current == null ? 0 : current.size();
+    }
+
+    /**
+     * Reads the rows updated since the last sync and drops the deleted ones, or reads the whole
+     * table when it is due.
+     */
+    synchronized void sync() throws RedmineAuthenticationException {
+        long now = System.currentTimeMillis();
+        boolean full = users == null || now - lastFullLoad > FULL_RELOAD_INTERVAL;
+        final ConcurrentMap<String, Record> target = full ? new ConcurrentHashMap<String, Record>() : users;
+        final Timestamp[] latest = { full ? null : watermark };
+        source.load(full ? null : watermark, new UserVisitor() {
+            @Override
+            public void visit(String username, String password, String salt, int status, Timestamp updatedOn) {
+                if (updatedOn != null && (latest[0] == null || updatedOn.after(latest[0]))) {
+                    latest[0] = updatedOn;
+                }
+                if (username == null || password == null || status == STATUS_LOCKED) {
+                    if (username != null) {
+                        target.remove(username);
+                    }
+                    return;
+                }
+                if (target.size() >= maxUsers && !target.containsKey(username)) {
+                    if (!overflowLogged) {
+                        LOGGER.warning("RedmineSecurity: More than " + maxUsers
+                                + " users, the others are looked up in the database");
+                        overflowLogged = true;
+                    }
+                    return;
+                }
+                target.put(username, new Record(password, salt));
+            }
+        });
+        if (!full) {
+            Set<String> logins = source.loadLogins();
+            int before = target.size();
+            target.keySet().retainAll(logins);
+            if (target.size() < before) {
+                LOGGER.fine("RedmineSecurity: Dropped " + (before - target.size()) + " deleted users");
+            }
+        }
+        watermark = latest[0];
+        if (full) {
+            users = target;
+            lastFullLoad = now;
+            LOGGER.fine("RedmineSecurity: Loaded " + target.size() + " users");
+        }
+    }
+
+    /**
+     * Hex strings become their bytes behind a <code>0</code> marker, anything else its UTF-8 bytes
+     * behind a <code>1</code>.
+     */
+    static byte[] encode(String value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.length() % 2 == 0 && isLowerHex(value)) {
+            byte[] bytes = new byte[1 + value.length() / 2];
+            for (int i = 0; i < value.length(); i += 2) {
+                bytes[1 + i / 2] = (byte) Integer.parseInt(value.substring(i, i + 2), 16);
+            }
+            return bytes;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[1 + utf8.length];
+        bytes[0] = 1;
+        System.arraycopy(utf8, 0, bytes, 1, utf8.length);
+        return bytes;
+    }
+
+    static String decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes[0] == 1) {
+            return new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8);
+        }
+        StringBuilder sb = new StringBuilder((bytes.length - 1) * 2);
+        for (int i = 1; i < bytes.length; i++) {
+            sb.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16)).append(Character.forDigit(bytes[i] & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private static boolean isLowerHex(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
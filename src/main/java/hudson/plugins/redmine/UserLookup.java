@@ -0,0 +1,58 @@
+package hudson.plugins.redmine;
+
+import hudson.plugins.redmine.dao.AbstractAuthDao;
+
+/**
+ * Looks users up in the login table of one {@link RedmineSecurityRealm} configuration.
+ *
+ * The login table and user field are checked before the first lookup only. A failed lookup checks
+ * them again on the next one, in case the schema changed.
+ */
+final class UserLookup {
+
+    private final String loginTable;
+    private final String userField;
+    private final String passField;
+    private final String saltField;
+
+    /** Whether the login table and user field were found. */
+    private volatile boolean schemaValidated;
+
+    /**
+     * @param saltField null if the passwords are not salted
+     */
+    UserLookup(String loginTable, String userField, String passField, String saltField) {
+        this.loginTable = loginTable;
+        this.userField = userField;
+        this.passField = passField;
+        this.saltField = saltField;
+    }
+
+    /**
+     * @return null if there is no such user
+     */
+    RedmineUserData get(AbstractAuthDao dao, String username) throws RedmineAuthenticationException {
+        if (!schemaValidated) {
+            long checkStart = System.nanoTime();
+            if (!dao.isTable(loginTable)) {
+                throw new RedmineAuthenticationException("RedmineSecurity: Invalid Login Table");
+            }
+
+            if (!dao.isField(loginTable, userField)) {
+                throw new RedmineAuthenticationException("RedmineSecurity: Invalid User Field");
+            }
+            schemaValidated = true;
+            LoginMetrics.record(LoginMetrics.Phase.SCHEMA_CHECK, checkStart);
+        }
+
+        long queryStart = System.nanoTime();
+        try {
+            return dao.getRedmineUserData(loginTable, userField, passField, saltField, username);
+        } catch (RedmineAuthenticationException e) {
+            schemaValidated = false;
+            throw e;
+        } finally {
+            LoginMetrics.record(LoginMetrics.Phase.USER_QUERY, queryStart);
+        }
+    }
+}
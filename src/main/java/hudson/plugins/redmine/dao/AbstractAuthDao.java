@@ -4,12 +4,50 @@ import hudson.plugins.redmine.RedmineAuthenticationException;
 import hudson.plugins.redmine.RedmineUserData;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
 
 /**
  * @author Yasuyuki Saito
  */
 public abstract class AbstractAuthDao {
 
+    /**
+     * Redmine User Status Field
+     */
+    public static final String STATUS_FIELD = "status";
+
+    /**
+     * Redmine Update Time Field
+     */
+    public static final String UPDATED_ON_FIELD = "updated_on";
+
+    /**
+     * Redmine Id Field
+     */
+    public static final String ID_FIELD = "id";
+
+    /**
+     * Redmine Principal Type Field, 'User' or 'Group'
+     */
+    public static final String TYPE_FIELD = "type";
+
+    /**
+     * Redmine Group Name Field
+     */
+    public static final String GROUP_NAME_FIELD = "lastname";
+
+    /**
+     * Redmine Group Membership Table
+     */
+    public static final String GROUPS_USERS_TABLE = "groups_users";
+
     /**
      * DB Connection
      */
@@ -29,17 +67,237 @@ public abstract class AbstractAuthDao {
             throws RedmineAuthenticationException;
 
     /**
-     * DB Conncetion Close.
+     * Pool the connection was borrowed from, null if it was opened directly.
+     */
+    protected ConnectionPool pool = null;
+
+    /**
+     * DB Connection Open from a pool.
+     *
+     * @param pool Connection Pool
+     * @throws RedmineAuthenticationException
+     */
+    public void open(ConnectionPool pool) throws RedmineAuthenticationException {
+        this.pool = pool;
+        this.conn = pool.borrow();
+    }
+
+    /**
+     * DB Conncetion Close, or give it back to its pool.
      */
     public void close() {
         if (conn != null) {
+            if (pool != null) {
+                pool.release(conn);
+            } else {
+                try {
+                    conn.close();
+                } catch (Exception e) {
+                }
+            }
+            conn = null;
+        }
+    }
+
+    /**
+     * User Query: only the columns read by {@link #getRedmineUserData}, in that order.
+     *
+     * @param loginTable
+     * @param userField
+     * @param passField
+     * @param saltField
+     * @return
+     */
+    protected String getUserQuery(String loginTable, String userField, String passField, String saltField) {
+        StringBuilder query = new StringBuilder("SELECT ").append(userField).append(", ").append(passField);
+        if (!StringUtils.isBlank(saltField)) {
+            query.append(", ").append(saltField);
+        }
+        return query.append(" FROM ").append(loginTable).append(" WHERE ").append(userField).append(" = ?").toString();
+    }
+
+    /**
+     * Load Users: streams the login table, or only the rows updated since the given time, with
+     * the status and update time columns of the Redmine users table.
+     *
+     * @param loginTable
+     * @param userField
+     * @param passField
+     * @param saltField
+     * @param since   only rows updated at or after this time, null for all
+     * @param visitor
+     * @throws RedmineAuthenticationException
+     */
+    public void loadUsers(String loginTable, String userField, String passField, String saltField, Timestamp since,
+            UserVisitor visitor) throws RedmineAuthenticationException {
+        StringBuilder query = new StringBuilder("SELECT ").append(userField).append(", ").append(passField)
+                .append(", ").append(StringUtils.isBlank(saltField) ? "NULL" : saltField).append(", ")
+                .append(STATUS_FIELD).append(", ").append(UPDATED_ON_FIELD).append(" FROM ").append(loginTable);
+        if (since != null) {
+            query.append(" WHERE ").append(UPDATED_ON_FIELD).append(" >= ?");
+        }
+
+        PreparedStatement state = null;
+        ResultSet results = null;
+        boolean autoCommit = true;
+
+        try {
+            autoCommit = conn.getAutoCommit();
+            // some drivers only stream results inside a transaction
+            conn.setAutoCommit(false);
+            state = conn.prepareStatement(query.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            state.setFetchSize(getStreamingFetchSize());
+            if (since != null) {
+                state.setTimestamp(1, since);
+            }
+
+            results = state.executeQuery();
+
+            while (results.next()) {
+                visitor.visit(results.getString(1), results.getString(2), results.getString(3), results.getInt(4),
+                        results.getTimestamp(5));
+            }
+        } catch (SQLException e) {
+            throw new RedmineAuthenticationException("RedmineSecurity: Query Error", e);
+        } finally {
+            if (results != null) {
+                try {
+                    results.close();
+                } catch (Exception e) {
+                }
+            }
+            if (state != null) {
+                try {
+                    state.close();
+                } catch (Exception e) {
+                }
+            }
             try {
-                conn.close();
+                conn.commit();
+                conn.setAutoCommit(autoCommit);
             } catch (Exception e) {
             }
         }
     }
 
+    /**
+     * Load Logins: every login of the login table, to find the rows deleted since the last load.
+     *
+     * @param loginTable
+     * @param userField
+     * @return
+     * @throws RedmineAuthenticationException
+     */
+    public Set<String> loadLogins(String loginTable, String userField) throws RedmineAuthenticationException {
+        String query = "SELECT " + userField + " FROM " + loginTable;
+
+        PreparedStatement state = null;
+        ResultSet results = null;
+
+        try {
+            state = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            results = state.executeQuery();
+
+            Set<String> logins = new HashSet<String>();
+            while (results.next()) {
+                logins.add(results.getString(1));
+            }
+            return logins;
+        } catch (SQLException e) {
+            throw new RedmineAuthenticationException("RedmineSecurity: Query Error", e);
+        } finally {
+            if (results != null) {
+                try {
+                    results.close();
+                } catch (Exception e) {
+                }
+            }
+            if (state != null) {
+                try {
+                    state.close();
+                } catch (Exception e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Load Groups: the Redmine groups, which live in the login table, then the login of each of
+     * their members, both in two queries whatever the number of users and groups.
+     *
+     * @param loginTable
+     * @param userField
+     * @param visitor
+     * @throws RedmineAuthenticationException
+     */
+    public void loadGroups(String loginTable, String userField, GroupVisitor visitor) throws RedmineAuthenticationException {
+        String groupQuery = "SELECT " + ID_FIELD + ", " + GROUP_NAME_FIELD + " FROM " + loginTable
+                + " WHERE " + TYPE_FIELD + " = 'Group'";
+        String memberQuery = "SELECT gu.group_id, u." + userField + " FROM " + GROUPS_USERS_TABLE + " gu"
+                + " INNER JOIN " + loginTable + " u ON u." + ID_FIELD + " = gu.user_id"
+                + " WHERE u." + TYPE_FIELD + " = 'User'";
+
+        PreparedStatement state = null;
+        ResultSet results = null;
+
+        try {
+            state = conn.prepareStatement(groupQuery);
+            results = state.executeQuery();
+            while (results.next()) {
+                visitor.visitGroup(results.getInt(1), results.getString(2));
+            }
+            results.close();
+            state.close();
+
+            state = conn.prepareStatement(memberQuery);
+            results = state.executeQuery();
+            while (results.next()) {
+                visitor.visitMember(results.getInt(1), results.getString(2));
+            }
+        } catch (SQLException e) {
+            throw new RedmineAuthenticationException("RedmineSecurity: Group Query Error", e);
+        } finally {
+            if (results != null) {
+                try {
+                    results.close();
+                } catch (Exception e) {
+                }
+            }
+            if (state != null) {
+                try {
+                    state.close();
+                } catch (Exception e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Fetch size making the driver stream rows rather than read the whole table in memory.
+     *
+     * @return
+     */
+    protected int getStreamingFetchSize() {
+        return 1000;
+    }
+
+    /**
+     * JDBC Driver Name.
+     *
+     * @return
+     */
+    public abstract String getDriverName();
+
+    /**
+     * JDBC Connection String.
+     *
+     * @param dbServer DB Server
+     * @param port Database Port
+     * @param databaseName Database Name
+     * @return
+     */
+    public abstract String getConnectionString(String dbServer, String port, String databaseName);
+
     /**
      * Table Check.
      *
@@ -0,0 +1,270 @@
+package hudson.plugins.redmine.dao;
+
+import hudson.plugins.redmine.RedmineAuthenticationException;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.util.Timer;
+
+/**
+ * Bounded pool of connections to the Redmine database.
+ *
+ * At most {@code maxSize} connections are open at a time; callers wait up to
+ * {@link #BORROW_TIMEOUT} for one to be returned. Idle connections are checked with
+ * {@link Connection#isValid(int)} before they are handed out again, and closed once they have been
+ * idle for {@link #IDLE_TIMEOUT}. The JDBC driver is loaded once per pool.
+ *
+ * @see AbstractAuthDao#open(ConnectionPool)
+ */
+public class ConnectionPool {
+
+    /** Logger */
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+
+    /** How long a caller waits for a connection. */
+    static final long BORROW_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    /** Idle connections are closed after this. */
+    static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+    /** Connections returned this recently are handed out again without validation. */
+    static final long VALIDATION_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+    /** Seconds {@link Connection#isValid(int)} may take. */
+    private static final int VALIDATION_TIMEOUT = 2;
+
+    /**
+     * Idle connection.
+     */
+    private static final class Idle {
+        private final Connection connection;
+        private final long since;
+
+        Idle(Connection connection, long since) {
+            this.connection = connection;
+            this.since = since;
+        }
+    }
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final Semaphore permits;
+    private final long borrowTimeout;
+    private final long idleTimeout;
+    private final long validationInterval;
+    private final LongSupplier clock;
+
+    /** Most recently returned first; guarded by itself. */
+    private final Deque<Idle> idle = new ArrayDeque<Idle>();
+
+    /** Connections handed out; guarded by {@link #idle}. */
+    private final Set<Connection> borrowed = Collections.newSetFromMap(new IdentityHashMap<Connection, Boolean>());
+
+    private final ScheduledFuture<?> evictor;
+
+    private volatile boolean closed;
+
+    /**
+     * @param driverName JDBC driver class
+     * @param url        JDBC URL
+     * @param user       Database UserName
+     * @param password   Database Password
+     * @param maxSize    maximum number of open connections
+     * @throws RedmineAuthenticationException if the driver cannot be loaded
+     */
+    public ConnectionPool(String driverName, String url, String user, String password, int maxSize)
+            throws RedmineAuthenticationException {
+        this(driverName, url, user, password, maxSize, BORROW_TIMEOUT, IDLE_TIMEOUT, VALIDATION_INTERVAL,
+                new LongSupplier() {
+                    @Override
+                    public long getAsLong() {
+                        return System.currentTimeMillis();
+                    }
+                });
+    }
+
+    /**
+     * @param clock current time in milliseconds
+     */
+    ConnectionPool(String driverName, String url, String user, String password, int maxSize, long borrowTimeout,
+            long idleTimeout, long validationInterval, LongSupplier clock) throws RedmineAuthenticationException {
+        try {
+            Class.forName(driverName);
+        } catch (ClassNotFoundException e) {
+            throw new RedmineAuthenticationException("RedmineSecurity: Connection Error", e);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = Math.max(1, maxSize);
+        this.permits = new Semaphore(this.maxSize, true);
+        this.borrowTimeout = borrowTimeout;
+        this.idleTimeout = idleTimeout;
+        this.validationInterval = validationInterval;
+        this.clock = clock;
+        this.evictor = Timer.get().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdle();
+            }
+        }, idleTimeout, idleTimeout / 5, TimeUnit.MILLISECONDS);
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Number of connections currently open, idle or borrowed.
+     */
+    public int getOpenCount() {
+        synchronized (idle) {
+            return idle.size() + borrowed.size();
+        }
+    }
+
+    /**
+     * Borrow a connection; give it back with {@link #release(Connection)}.
+     *
+     * @return open connection
+     * @throws RedmineAuthenticationException if no connection can be had in time
+     */
+    public Connection borrow() throws RedmineAuthenticationException {
+        if (closed) {
+            throw new RedmineAuthenticationException("RedmineSecurity: Connection pool closed");
+        }
+        try {
+            if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+                throw new RedmineAuthenticationException("RedmineSecurity: No database connection available");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedmineAuthenticationException("RedmineSecurity: Connection Error", e);
+        }
+        try {
+            Connection conn = takeValidIdle();
+            if (conn == null) {
+                conn = DriverManager.getConnection(url, user, password);
+            }
+            synchronized (idle) {
+                borrowed.add(conn);
+            }
+            return conn;
+        } catch (SQLException e) {
+            permits.release();
+            throw new RedmineAuthenticationException("RedmineSecurity: Connection Error", e);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Give back a connection obtained from {@link #borrow()}.
+     *
+     * @param conn connection, not used by the caller any more
+     */
+    public void release(Connection conn) {
+        synchronized (idle) {
+            if (!borrowed.remove(conn)) {
+                return;
+            }
+            if (!closed) {
+                idle.push(new Idle(conn, clock.getAsLong()));
+                conn = null;
+            }
+        }
+        if (conn != null) {
+            closeQuietly(conn);
+        }
+        permits.release();
+    }
+
+    /**
+     * Close the idle connections; borrowed ones are closed when they are released.
+     */
+    public void close() {
+        closed = true;
+        evictor.cancel(false);
+        List<Connection> open = new ArrayList<Connection>();
+        synchronized (idle) {
+            for (Idle i : idle) {
+                open.add(i.connection);
+            }
+            idle.clear();
+        }
+        for (Connection conn : open) {
+            closeQuietly(conn);
+        }
+    }
+
+    private Connection takeValidIdle() {
+        while (true) {
+            Idle candidate;
+            synchronized (idle) {
+                candidate = idle.poll();
+            }
+            if (candidate == null) {
+                return null;
+            }
+            if (clock.getAsLong() - candidate.since < validationInterval || isValid(candidate.connection)) {
+                return candidate.connection;
+            }
+            LOGGER.fine("RedmineSecurity: Dropping broken connection");
+            closeQuietly(candidate.connection);
+        }
+    }
+
+    private static boolean isValid(Connection conn) {
+        try {
+            return conn.isValid(VALIDATION_TIMEOUT);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    void evictIdle() {
+        long limit = clock.getAsLong() - idleTimeout;
+        List<Connection> expired = new ArrayList<Connection>();
+        synchronized (idle) {
+            for (Iterator<Idle> it = idle.descendingIterator(); it.hasNext();) {
+                Idle i = it.next();
+                if (i.since > limit) {
+                    // the rest was returned more recently
+                    break;
+                }
+                it.remove();
+                expired.add(i.connection);
+            }
+        }
+        for (Connection conn : expired) {
+            closeQuietly(conn);
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "RedmineSecurity: Cannot close connection", e);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package hudson.plugins.redmine.dao;
+
+/**
+ * Receives the Redmine groups and memberships read by {@link AbstractAuthDao#loadGroups}.
+ *
+ * @see hudson.plugins.redmine.GroupDirectory
+ */
+public interface GroupVisitor {
+
+    /**
+     * One group; all groups are visited before the first member.
+     *
+     * @param groupId Redmine Group Id
+     * @param name    Group Name
+     */
+    void visitGroup(int groupId, String name);
+
+    /**
+     * One member of a group.
+     *
+     * @param groupId  Redmine Group Id
+     * @param username Login UserName
+     */
+    void visitMember(int groupId, String username);
+}
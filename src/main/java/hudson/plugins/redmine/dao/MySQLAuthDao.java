@@ -16,13 +16,31 @@ import org.apache.commons.lang.StringUtils;
  */
 public class MySQLAuthDao extends AbstractAuthDao {
 
+    @Override
+    public String getDriverName() {
+        return Constants.JDBC_DRIVER_NAME_MYSQL;
+    }
+
+    @Override
+    public String getConnectionString(String dbServer, String port, String databaseName) {
+        return String.format(Constants.CONNECTION_STRING_FORMAT_MYSQL, dbServer, port, databaseName);
+    }
+
+    /**
+     * Connector/J streams rows one by one only with this fetch size.
+     */
+    @Override
+    protected int getStreamingFetchSize() {
+        return Integer.MIN_VALUE;
+    }
+
     @Override
     public void open(String dbServer, String port, String databaseName, String dbUserName, String dbPassword)
             throws RedmineAuthenticationException {
         try {
-            String connectionString = String.format(Constants.CONNECTION_STRING_FORMAT_MYSQL, dbServer, port, databaseName);
+            String connectionString = getConnectionString(dbServer, port, databaseName);
 
-            Class.forName(Constants.JDBC_DRIVER_NAME_MYSQL).newInstance();
+            Class.forName(getDriverName()).newInstance();
             conn = DriverManager.getConnection(connectionString, dbUserName, dbPassword);
         } catch (SQLException e) {
             throw new RedmineAuthenticationException("RedmineSecurity: Connection Error", e);
@@ -116,7 +134,7 @@ public class MySQLAuthDao extends AbstractAuthDao {
         ResultSet results = null;
 
         try {
-            String query = String.format("SELECT * FROM %s WHERE %s = ?", loginTable, userField);
+            String query = getUserQuery(loginTable, userField, passField, saltField);
 
             state = conn.prepareStatement(query);
             state.setString(1, username);
@@ -125,11 +143,11 @@ public class MySQLAuthDao extends AbstractAuthDao {
 
             if (results.next()) {
                 RedmineUserData userData = new RedmineUserData();
-                userData.setUsername(results.getString(userField));
-                userData.setPassword(results.getString(passField));
+                userData.setUsername(results.getString(1));
+                userData.setPassword(results.getString(2));
 
                 if (!StringUtils.isBlank(saltField)) {
-                    userData.setSalt(results.getString(saltField));
+                    userData.setSalt(results.getString(3));
                 }
 
                 return userData;
@@ -16,13 +16,23 @@ import org.apache.commons.lang.StringUtils;
  */
 public class PostgreSQLAuthDao extends AbstractAuthDao {
 
+    @Override
+    public String getDriverName() {
+        return Constants.JDBC_DRIVER_NAME_POSTGRESQL;
+    }
+
+    @Override
+    public String getConnectionString(String dbServer, String port, String databaseName) {
+        return String.format(Constants.CONNECTION_STRING_FORMAT_POSTGRESQL, dbServer, port, databaseName);
+    }
+
     @Override
     public void open(String dbServer, String port, String databaseName, String dbUserName, String dbPassword)
             throws RedmineAuthenticationException {
         try {
-            String connectionString = String.format(Constants.CONNECTION_STRING_FORMAT_POSTGRESQL, dbServer, port, databaseName);
+            String connectionString = getConnectionString(dbServer, port, databaseName);
 
-            Class.forName(Constants.JDBC_DRIVER_NAME_POSTGRESQL).newInstance();
+            Class.forName(getDriverName()).newInstance();
             conn = DriverManager.getConnection(connectionString, dbUserName, dbPassword);
         } catch (SQLException e) {
             throw new RedmineAuthenticationException("RedmineSecurity: Connection Error", e);
@@ -120,7 +130,7 @@ public class PostgreSQLAuthDao extends AbstractAuthDao {
         ResultSet results = null;
 
         try {
-            String query = String.format("SELECT * FROM %s WHERE %s = ?", loginTable, userField);
+            String query = getUserQuery(loginTable, userField, passField, saltField);
 
             state = conn.prepareStatement(query);
             state.setString(1, username);
@@ -129,11 +139,11 @@ public class PostgreSQLAuthDao extends AbstractAuthDao {
 
             if (results.next()) {
                 RedmineUserData userData = new RedmineUserData();
-                userData.setUsername(results.getString(userField));
-                userData.setPassword(results.getString(passField));
+                userData.setUsername(results.getString(1));
+                userData.setPassword(results.getString(2));
 
                 if (!StringUtils.isBlank(saltField)) {
-                    userData.setSalt(results.getString(saltField));
+                    userData.setSalt(results.getString(3));
                 }
 
                 return userData;
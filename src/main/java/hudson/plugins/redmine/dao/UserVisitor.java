@@ -0,0 +1,22 @@
+package hudson.plugins.redmine.dao;
+
+import java.sql.Timestamp;
+
+/**
+ * Receives the rows of the login table read by {@link AbstractAuthDao#loadUsers}.
+ *
+ * @see hudson.plugins.redmine.UserDirectory
+ */
+public interface UserVisitor {
+
+    /**
+     * One user.
+     *
+     * @param username  Login UserName
+     * @param password  Hashed Password
+     * @param salt      Salt, null before Redmine 1.2.0
+     * @param status    Redmine User Status
+     * @param updatedOn Last Update
+     */
+    void visit(String username, String password, String salt, int status, Timestamp updatedOn);
+}
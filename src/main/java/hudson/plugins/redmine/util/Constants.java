@@ -88,4 +88,29 @@ public abstract class Constants {
      */
     public static final String JDBC_DRIVER_NAME_POSTGRESQL = "org.postgresql.Driver";
 
+    /**
+     * Default Maximum Database Connections
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 10;
+
+    /**
+     * Default Seconds Between User Directory Syncs
+     */
+    public static final int DEFAULT_DIRECTORY_SYNC_SECONDS = 60;
+
+    /**
+     * Default Seconds Between Group Reloads
+     */
+    public static final int DEFAULT_GROUP_SYNC_SECONDS = 300;
+
+    /**
+     * Default Logins Waiting For The Database
+     */
+    public static final int DEFAULT_LOGIN_QUEUE_SIZE = 20;
+
+    /**
+     * Default Seconds A Login Waits For The Database
+     */
+    public static final int DEFAULT_LOGIN_QUEUE_TIMEOUT_SECONDS = 2;
+
 }
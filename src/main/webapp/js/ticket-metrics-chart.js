@@ -0,0 +1,93 @@
+/*
+ * Draws the ticket metrics trend of a job as a stacked area chart, from the counts served by
+ * metricsProject/chartData, on every canvas with a data-url attribute and the ticket-metrics-chart class.
+ */
+(function () {
+    var COLORS = ["#3465a4", "#f57900", "#73d216", "#cc0000", "#75507b", "#c4a000", "#06989a", "#555753"];
+
+    function draw(canvas, data) {
+        var ctx = canvas.getContext("2d");
+        var left = 50, right = 150, top = 10, bottom = 60;
+        var w = canvas.width - left - right, h = canvas.height - top - bottom;
+        var n = data.labels.length;
+        if (n === 0) {
+            return;
+        }
+        var totals = [], max = 1, i, s;
+        for (i = 0; i < n; i++) {
+            totals[i] = 0;
+            for (s = 0; s < data.series.length; s++) {
+                totals[i] += data.series[s].counts[i];
+            }
+            max = Math.max(max, totals[i]);
+        }
+        function x(i) {
+            return left + (n === 1 ? w / 2 : i * w / (n - 1));
+        }
+        function y(v) {
+            return top + h - v * h / max;
+        }
+
+        ctx.strokeStyle = "#ccc";
+        ctx.fillStyle = "#000";
+        ctx.font = "10px sans-serif";
+        var step = Math.max(1, Math.ceil(max / 8));
+        for (var v = 0; v <= max; v += step) {
+            ctx.beginPath();
+            ctx.moveTo(left, y(v));
+            ctx.lineTo(left + w, y(v));
+            ctx.stroke();
+            ctx.fillText(String(v), 5, y(v) + 3);
+        }
+
+        var base = [];
+        for (i = 0; i < n; i++) {
+            base[i] = 0;
+        }
+        for (s = 0; s < data.series.length; s++) {
+            var counts = data.series[s].counts;
+            ctx.beginPath();
+            ctx.moveTo(x(0), y(base[0]));
+            for (i = 0; i < n; i++) {
+                ctx.lineTo(x(i), y(base[i] + counts[i]));
+            }
+            for (i = n - 1; i >= 0; i--) {
+                ctx.lineTo(x(i), y(base[i]));
+            }
+            ctx.closePath();
+            ctx.fillStyle = COLORS[s % COLORS.length];
+            ctx.fill();
+            for (i = 0; i < n; i++) {
+                base[i] += counts[i];
+            }
+            ctx.fillRect(left + w + 10, top + s * 16, 10, 10);
+            ctx.fillStyle = "#000";
+            ctx.fillText(data.series[s].status, left + w + 25, top + s * 16 + 9);
+        }
+
+        var every = Math.max(1, Math.ceil(n * 12 / w));
+        for (i = 0; i < n; i += every) {
+            ctx.save();
+            ctx.translate(x(i) + 3, top + h + 5);
+            ctx.rotate(Math.PI / 2);
+            ctx.fillText(data.labels[i], 0, 0);
+            ctx.restore();
+        }
+    }
+
+    function load(canvas) {
+        var req = new XMLHttpRequest();
+        req.open("GET", canvas.getAttribute("data-url"));
+        req.onload = function () {
+            if (req.status === 200) {
+                draw(canvas, JSON.parse(req.responseText));
+            }
+        };
+        req.send();
+    }
+
+    var canvases = document.querySelectorAll("canvas.ticket-metrics-chart[data-url]");
+    for (var c = 0; c < canvases.length; c++) {
+        load(canvases[c]);
+    }
+})();
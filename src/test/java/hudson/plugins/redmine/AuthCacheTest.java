@@ -0,0 +1,81 @@
+package hudson.plugins.redmine;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+public class AuthCacheTest {
+
+    private final UserDetails alice = new User("alice", "hash", Collections.<GrantedAuthority>emptyList());
+
+    @Test
+    public void testLoginNeedsTheSamePassword() {
+        AuthCache cache = new AuthCache(60, TimeUnit.SECONDS);
+        assertNull(cache.getLogin("alice", "secret"));
+        cache.putLogin("alice", "secret", alice);
+
+        assertSame(alice, cache.getLogin("alice", "secret"));
+        assertNull(cache.getLogin("alice", "wrong"));
+        assertSame(alice, cache.getUser("alice"));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        cache.flush();
+        assertNull(cache.getUser("alice"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testUnknownUsers() {
+        AuthCache cache = new AuthCache(60, TimeUnit.SECONDS);
+        assertFalse(cache.isUnknown("bob"));
+        cache.putUnknown("bob");
+        assertTrue(cache.isUnknown("bob"));
+        assertNull(cache.getUser("bob"));
+    }
+
+    @Test
+    public void testLoginsSurviveAFloodOfUnknownUsers() {
+        AuthCache cache = new AuthCache(60, TimeUnit.SECONDS);
+        cache.putLogin("alice", "secret", alice);
+        for (int i = 0; i < 10 * AuthCache.MAX_ENTRIES; i++) {
+            cache.putUnknown("nobody" + i);
+        }
+
+        assertSame(alice, cache.getLogin("alice", "secret"));
+        assertTrue(cache.isUnknown("nobody" + (10 * AuthCache.MAX_ENTRIES - 1)));
+        assertFalse(cache.isUnknown("nobody0"));
+        assertEquals(2 + AuthCache.MAX_UNKNOWN, cache.getSize());
+    }
+
+    @Test
+    public void testExpiredLoginsAreOnlyServedStale() throws Exception {
+        AuthCache cache = new AuthCache(1, TimeUnit.MILLISECONDS);
+        cache.putLogin("alice", "secret", alice);
+        Thread.sleep(10);
+
+        assertNull(cache.getLogin("alice", "secret"));
+        assertNull(cache.getUser("alice"));
+        assertSame(alice, cache.getStaleLogin("alice", "secret"));
+        assertNull(cache.getStaleLogin("alice", "wrong"));
+        assertSame(alice, cache.getStaleUser("alice"));
+
+        cache.flush();
+        assertNull(cache.getStaleLogin("alice", "secret"));
+    }
+
+    @Test
+    public void testDisabled() {
+        AuthCache cache = new AuthCache(0, TimeUnit.SECONDS);
+        cache.putLogin("alice", "secret", alice);
+        cache.putUnknown("bob");
+        assertNull(cache.getLogin("alice", "secret"));
+        assertFalse(cache.isUnknown("bob"));
+    }
+}
@@ -0,0 +1,109 @@
+package hudson.plugins.redmine;
+
+import static org.junit.Assert.*;
+
+import hudson.plugins.redmine.dao.GroupVisitor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.junit.Test;
+
+public class GroupDirectoryTest {
+
+    @Test
+    public void testMembershipBothWays() throws Exception {
+        GroupDirectory directory = new GroupDirectory(new GroupDirectory.Source() {
+            @Override
+            public void load(GroupVisitor visitor) {
+                visitor.visitGroup(10, "developers");
+                visitor.visitGroup(11, "reporters");
+                visitor.visitGroup(12, "empty");
+                visitor.visitMember(10, "alice");
+                visitor.visitMember(11, "alice");
+                visitor.visitMember(10, "bob");
+                // not a group
+                visitor.visitMember(99, "carol");
+            }
+        }, 1, TimeUnit.MINUTES);
+
+        GroupDirectory.Snapshot snapshot = directory.get();
+        assertEquals(Arrays.asList("developers", "reporters"), snapshot.getGroups("alice"));
+        assertEquals(Collections.singletonList("developers"), snapshot.getGroups("bob"));
+        assertEquals(Collections.emptyList(), snapshot.getGroups("carol"));
+        assertEquals(new TreeSet<String>(Arrays.asList("alice", "bob")), snapshot.getMembers("developers"));
+        assertEquals(Collections.emptySet(), snapshot.getMembers("empty"));
+        assertTrue(snapshot.hasGroup("empty"));
+        assertNull(snapshot.getMembers("admins"));
+        assertEquals(3, snapshot.getMembershipCount());
+    }
+
+    @Test
+    public void testStartLoadsInTheBackground() throws Exception {
+        final CountDownLatch loaded = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger();
+        GroupDirectory directory = new GroupDirectory(new GroupDirectory.Source() {
+            @Override
+            public void load(GroupVisitor visitor) {
+                loads.incrementAndGet();
+                visitor.visitGroup(10, "developers");
+                visitor.visitMember(10, "alice");
+                loaded.countDown();
+            }
+        }, 1, TimeUnit.MINUTES);
+
+        directory.start(1, TimeUnit.HOURS);
+        try {
+            assertTrue(loaded.await(10, TimeUnit.SECONDS));
+            assertEquals(Collections.singletonList("developers"), directory.get().getGroups("alice"));
+            assertEquals(1, loads.get());
+        } finally {
+            directory.stop();
+        }
+    }
+
+    @Test
+    public void testFailedLoadIsRetriedAfterTheDelay() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        final AtomicLong now = new AtomicLong(1000000);
+        GroupDirectory directory = new GroupDirectory(new GroupDirectory.Source() {
+            @Override
+            public void load(GroupVisitor visitor) throws RedmineAuthenticationException {
+                if (loads.incrementAndGet() == 1) {
+                    throw new RedmineAuthenticationException("RedmineSecurity: Connection refused");
+                }
+                visitor.visitGroup(10, "developers");
+                visitor.visitMember(10, "alice");
+            }
+        }, 1, TimeUnit.MINUTES, new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return now.get();
+            }
+        });
+
+        try {
+            directory.get();
+            fail();
+        } catch (RedmineAuthenticationException e) {
+            // not loaded
+        }
+        try {
+            directory.get();
+            fail();
+        } catch (RedmineAuthenticationException e) {
+            // not tried again yet
+        }
+        assertEquals(1, loads.get());
+
+        now.addAndGet(TimeUnit.MINUTES.toMillis(1));
+        assertEquals(Collections.singletonList("developers"), directory.get().getGroups("alice"));
+        assertEquals(2, loads.get());
+    }
+}
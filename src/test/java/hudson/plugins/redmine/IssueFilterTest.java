@@ -0,0 +1,56 @@
+package hudson.plugins.redmine;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.taskadapter.redmineapi.bean.IssueStatus;
+import com.taskadapter.redmineapi.bean.Tracker;
+
+public class IssueFilterTest {
+
+    @Test
+    public void testNoExclusion() {
+        IssueFilter filter = new IssueFilter("", null);
+        assertFalse(filter.ignoresTrackers());
+        assertFalse(filter.ignoresStatuses());
+        assertNull(filter.getTrackerQuery());
+        assertEquals("*", filter.getStatusQuery());
+        assertTrue(filter.accepts(1, "Bug", 1, "Open"));
+    }
+
+    @Test
+    public void testByName() {
+        IssueFilter filter = new IssueFilter("Support", "Rejected,Closed");
+        assertTrue(filter.ignoresTrackers());
+        assertTrue(filter.ignoresStatuses());
+        assertNull(filter.getTrackerQuery());
+        assertEquals("*", filter.getStatusQuery());
+        assertFalse(filter.accepts(1, "Support", 1, "Open"));
+        assertFalse(filter.accepts(2, "Bug", 5, "Closed"));
+        assertTrue(filter.accepts(2, "Bug", 1, "Open"));
+    }
+
+    @Test
+    public void testById() {
+        IssueFilter filter = new IssueFilter("Support", "Rejected");
+        filter.resolveTrackers(Arrays.asList(tracker(1, "Bug"), tracker(3, "Support")));
+        filter.resolveStatuses(Arrays.asList(new IssueStatus(1, "Open"), new IssueStatus(6, "Rejected")));
+
+        assertEquals("!3", filter.getTrackerQuery());
+        assertEquals("!6", filter.getStatusQuery());
+        assertFalse(filter.isIgnored(new IssueStatus(1, "Open")));
+        assertTrue(filter.isIgnored(new IssueStatus(6, "Rejected")));
+        assertFalse(filter.accepts(3, "Renamed", 1, "Open"));
+        assertTrue(filter.accepts(1, "Bug", 1, "Open"));
+    }
+
+    private static Tracker tracker(int id, String name) {
+        Tracker tracker = new Tracker();
+        tracker.setId(id);
+        tracker.setName(name);
+        return tracker;
+    }
+}
@@ -0,0 +1,139 @@
+package hudson.plugins.redmine;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.taskadapter.redmineapi.RedmineException;
+
+public class IssuePagesTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testPagesComeInOrder() throws Exception {
+        final CountDownLatch thirdPageFetched = new CountDownLatch(1);
+        StubClient client = new StubClient(350) {
+            @Override
+            void beforePage(int offset) throws InterruptedException {
+                // the second page is only done after the third one
+                if (offset == 100) {
+                    assertTrue(thirdPageFetched.await(10, TimeUnit.SECONDS));
+                } else if (offset == 200) {
+                    thirdPageFetched.countDown();
+                }
+            }
+        };
+        IssuePages pages = new IssuePages(client, Collections.<String, String>emptyMap(), 2, executor);
+
+        List<Integer> ids = new ArrayList<Integer>();
+        List<IssueRecord> page;
+        while ((page = pages.next()) != null) {
+            for (IssueRecord issue : page) {
+                ids.add(issue.getId());
+            }
+        }
+        assertEquals(350, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i, ids.get(i).intValue());
+        }
+        assertEquals(4, client.requests.get());
+    }
+
+    @Test
+    public void testFirstPageErrorIsThrown() throws Exception {
+        StubClient client = new StubClient(350) {
+            @Override
+            void beforePage(int offset) throws RedmineException {
+                throw new RedmineException("page " + offset);
+            }
+        };
+        IssuePages pages = new IssuePages(client, Collections.<String, String>emptyMap(), 2, executor);
+        try {
+            pages.next();
+            fail();
+        } catch (RedmineException e) {
+            assertEquals("page 0", e.getMessage());
+        }
+        assertEquals(1, client.requests.get());
+    }
+
+    @Test
+    public void testFailedPageCancelsThePagesInFlight() throws Exception {
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch interrupted = new CountDownLatch(2);
+        StubClient client = new StubClient(500) {
+            @Override
+            void beforePage(int offset) throws RedmineException {
+                if (offset == 100) {
+                    throw new RedmineException("page " + offset);
+                }
+                if (offset > 100) {
+                    started.countDown();
+                    try {
+                        new CountDownLatch(1).await();
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                }
+            }
+        };
+        IssuePages pages = new IssuePages(client, Collections.<String, String>emptyMap(), 3, executor);
+        assertEquals(100, pages.next().size());
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        try {
+            pages.next();
+            fail();
+        } catch (RedmineException e) {
+            assertEquals("page 100", e.getMessage());
+        }
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Serves <code>total</code> issues whose ids are their positions.
+     */
+    private static class StubClient extends RedmineRestClient {
+        private final int total;
+        final AtomicInteger requests = new AtomicInteger();
+
+        StubClient(int total) {
+            super((RedmineHttpClient) null, "APIKEY");
+            this.total = total;
+        }
+
+        void beforePage(int offset) throws RedmineException, InterruptedException {
+        }
+
+        @Override
+        public IssuePage getIssuePage(Map<String, String> params, int offset, int limit) throws RedmineException {
+            requests.incrementAndGet();
+            try {
+                beforePage(offset);
+            } catch (InterruptedException e) {
+                throw new RedmineException("interrupted", e);
+            }
+            List<IssueRecord> issues = new ArrayList<IssueRecord>();
+            for (int id = offset; id < Math.min(offset + limit, total); id++) {
+                issues.add(new IssueRecord(id, 1, "Bug", 1, "Open", 0));
+            }
+            return new IssuePage(issues, total);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package hudson.plugins.redmine;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverEveryValue() {
+        for (long value : new long[] { 0, 1, 3, 4, 7, 8, 9, 1000, 123456789, Long.MAX_VALUE }) {
+            int index = LatencyHistogram.index(value);
+            assertTrue(value + " <= bound", value <= LatencyHistogram.upperBound(index));
+            if (index > 0) {
+                assertTrue(value + " > previous bound", value > LatencyHistogram.upperBound(index - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500500.0, snapshot.getMean(), 0.1);
+        assertEquals(1000000, snapshot.getMax());
+        assertEquals(500000, snapshot.getPercentile(0.5), 500000 * 0.25);
+        assertEquals(990000, snapshot.getPercentile(0.99), 990000 * 0.25);
+        assertEquals(1000000, snapshot.getPercentile(1));
+
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getPercentile(0.5));
+    }
+}
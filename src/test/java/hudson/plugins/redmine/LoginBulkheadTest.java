@@ -0,0 +1,44 @@
+package hudson.plugins.redmine;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class LoginBulkheadTest {
+
+    @Test
+    public void testTimeoutThenQueueFull() throws Exception {
+        final LoginBulkhead bulkhead = new LoginBulkhead(1, 1, 50, TimeUnit.MILLISECONDS);
+        assertTrue(bulkhead.acquire());
+        assertFalse(bulkhead.acquire());
+        assertEquals(1, bulkhead.getTimeoutRejections());
+
+        final LoginBulkhead slow = new LoginBulkhead(1, 1, 10, TimeUnit.SECONDS);
+        assertTrue(slow.acquire());
+        final AtomicBoolean acquired = new AtomicBoolean();
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                acquired.set(slow.acquire());
+            }
+        };
+        waiter.start();
+        while (slow.getQueueDepth() == 0) {
+            Thread.sleep(1);
+        }
+        // the only queue slot is taken
+        assertFalse(slow.acquire());
+        assertEquals(1, slow.getQueueFullRejections());
+
+        slow.release();
+        waiter.join();
+        assertTrue(acquired.get());
+        assertEquals(0, slow.getQueueDepth());
+        assertEquals(1, slow.getPeakQueueDepth());
+        slow.release();
+        assertEquals(1, slow.getAvailablePermits());
+    }
+}
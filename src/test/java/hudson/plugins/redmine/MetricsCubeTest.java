@@ -0,0 +1,90 @@
+package hudson.plugins.redmine;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import hudson.plugins.redmine.MetricsCube.Dimension;
+
+public class MetricsCubeTest {
+
+    @Test
+    public void testSlices() {
+        MetricsCube cube = new MetricsCube();
+        cube.add(new IssueRecord(1, 1, "Bug", 1, "Open", 10, "v1", 2, "Normal", 5, "Alice"));
+        cube.add(new IssueRecord(2, 1, "Bug", 2, "Closed", 10, "v1", 3, "High", 5, "Alice"));
+        cube.add(new IssueRecord(3, 2, "Feature", 1, "Open", 0, null, 2, "Normal", 0, null));
+        cube.add(new IssueRecord(4, 1, "Bug", 1, "Open", 10, "v1", 2, "Normal", 5, "Alice"));
+
+        assertEquals(4, cube.getTotal());
+
+        Map<String, Integer> byStatus = cube.countBy(Dimension.STATUS);
+        assertEquals(Integer.valueOf(1), byStatus.get("Closed"));
+        assertEquals(Integer.valueOf(3), byStatus.get("Open"));
+
+        Map<String, Integer> byAssignee = cube.countBy(Dimension.ASSIGNEE);
+        assertEquals(Integer.valueOf(3), byAssignee.get("Alice"));
+        assertEquals(Integer.valueOf(1), byAssignee.get(MetricsCube.NONE));
+
+        Map<String, Map<String, Integer>> statusByTracker = cube.countBy(Dimension.TRACKER, Dimension.STATUS);
+        assertEquals(Integer.valueOf(2), statusByTracker.get("Bug").get("Open"));
+        assertEquals(Integer.valueOf(1), statusByTracker.get("Bug").get("Closed"));
+        assertNull(statusByTracker.get("Feature").get("Closed"));
+
+        List<MetricsResult> metrics = cube.toMetricsList();
+        assertEquals(2, metrics.size());
+        assertEquals("Closed", metrics.get(0).getStatus());
+        assertEquals(3, metrics.get(1).getCount());
+    }
+
+    @Test
+    public void testAddAllReencodes() {
+        MetricsCube a = new MetricsCube();
+        a.add("Open", "Bug", "v1", "Normal", "Alice", 2);
+        MetricsCube b = new MetricsCube();
+        b.add("Closed", "Feature", "v2", "High", "Bob", 1);
+        b.add("Open", "Bug", "v1", "Normal", "Alice", 3);
+
+        a.addAll(b);
+        assertEquals(6, a.getTotal());
+        assertEquals(Integer.valueOf(5), a.countBy(Dimension.ASSIGNEE).get("Alice"));
+        assertEquals(Integer.valueOf(1), a.countBy(Dimension.VERSION).get("v2"));
+    }
+
+    @Test
+    public void testRebuiltFromIdsAndCounts() {
+        MetricsCube cube = new MetricsCube();
+        cube.add("Open", "Bug", "v1", "Normal", "Alice", 2);
+        cube.add("Closed", "Feature", null, "High", "Bob", 1);
+        List<List<String>> names = new ArrayList<List<String>>();
+        for (Dimension dimension : Dimension.values()) {
+            names.add(cube.getNames(dimension));
+        }
+
+        MetricsCube rebuilt = new MetricsCube(names, cube.getKeys(), cube.getCounts());
+        assertEquals(cube.countBy(Dimension.TRACKER, Dimension.ASSIGNEE),
+                rebuilt.countBy(Dimension.TRACKER, Dimension.ASSIGNEE));
+        assertEquals(Integer.valueOf(1), rebuilt.countBy(Dimension.VERSION).get(MetricsCube.NONE));
+        rebuilt.add("Open", "Bug", "v1", "Normal", "Alice", 1);
+        assertEquals(Integer.valueOf(3), rebuilt.countBy(Dimension.STATUS).get("Open"));
+        assertEquals(2, rebuilt.getKeys().length);
+    }
+
+    @Test
+    public void testManyCellsAndOverflow() {
+        MetricsCube cube = new MetricsCube();
+        for (int i = 0; i < 300; i++) {
+            cube.add("Status " + i, "Bug", "v" + (i % 7), null, "User " + i, 1);
+        }
+        assertEquals(300, cube.getTotal());
+        Map<String, Integer> byStatus = cube.countBy(Dimension.STATUS);
+        // the status dimension holds 255 names, the rest is counted as other
+        assertEquals(256, byStatus.size());
+        assertEquals(Integer.valueOf(300 - 255), byStatus.get(MetricsCube.OTHER));
+        assertEquals(300, cube.countBy(Dimension.ASSIGNEE).size());
+    }
+}
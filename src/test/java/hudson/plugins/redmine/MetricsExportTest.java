@@ -0,0 +1,44 @@
+package hudson.plugins.redmine;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import hudson.model.Result;
+
+import org.junit.Test;
+
+public class MetricsExportTest {
+
+    private final List<MetricsHistory.Entry> entries = Arrays.asList(
+            new MetricsHistory.Entry(1, 100L, Arrays.asList(new MetricsResult("New", 1)), Result.SUCCESS),
+            new MetricsHistory.Entry(2, 200L, Arrays.asList(new MetricsResult("New", 2),
+                    new MetricsResult("On hold, waiting", 1))),
+            new MetricsHistory.Entry(4, 400L, Arrays.asList(new MetricsResult("Closed", 4))));
+
+    @Test
+    public void testCsvRange() throws Exception {
+        StringWriter out = new StringWriter();
+        new MetricsExport(2, Integer.MAX_VALUE, Long.MIN_VALUE, 300L, 0, 10).write(entries,
+                MetricsExport.Format.CSV, out);
+        assertEquals("build,timestamp,result,status,count\n"
+                + "2,200,,New,2\n"
+                + "2,200,,\"On hold, waiting\",1\n", out.toString());
+    }
+
+    @Test
+    public void testJsonPaging() throws Exception {
+        StringWriter out = new StringWriter();
+        new MetricsExport(0, Integer.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, 0, 1).write(entries,
+                MetricsExport.Format.JSON, out);
+        assertEquals("{\"offset\":0,\"limit\":1,\"builds\":[{\"number\":1,\"timestamp\":100,\"result\":\"SUCCESS\","
+                + "\"metrics\":{\"New\":1}}],\"next\":1}", out.toString());
+
+        out = new StringWriter();
+        new MetricsExport(0, 3, Long.MIN_VALUE, Long.MAX_VALUE, 1, 1).write(entries, MetricsExport.Format.JSON, out);
+        assertEquals("{\"offset\":1,\"limit\":1,\"builds\":[{\"number\":2,\"timestamp\":200,\"result\":null,"
+                + "\"metrics\":{\"New\":2,\"On hold, waiting\":1}}],\"next\":null}", out.toString());
+    }
+}
@@ -0,0 +1,117 @@
+package hudson.plugins.redmine;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class MetricsFetchCoordinatorTest {
+
+    private final MetricsFetchCoordinator coordinator = new MetricsFetchCoordinator();
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    private final Callable<MetricsFetchCoordinator.Result> fetch = new Callable<MetricsFetchCoordinator.Result>() {
+        @Override
+        public MetricsFetchCoordinator.Result call() {
+            fetches.incrementAndGet();
+            return new MetricsFetchCoordinator.Result(Collections.singletonList(new MetricsResult("New", 1)), null);
+        }
+    };
+
+    @Test
+    public void testFreshResultIsReused() throws Exception {
+        MetricsFetchCoordinator.Result first = coordinator.fetch("a", 60000, fetch);
+        assertSame(first, coordinator.fetch("a", 60000, fetch));
+        assertEquals(1, fetches.get());
+
+        coordinator.fetch("b", 60000, fetch);
+        assertEquals(2, fetches.get());
+
+        // without a freshness window only running fetches are shared
+        Thread.sleep(5);
+        assertNotSame(first, coordinator.fetch("a", 0, fetch));
+        assertEquals(3, fetches.get());
+    }
+
+    @Test
+    public void testFailureIsNotKept() throws Exception {
+        Callable<MetricsFetchCoordinator.Result> failing = new Callable<MetricsFetchCoordinator.Result>() {
+            @Override
+            public MetricsFetchCoordinator.Result call() throws MetricsException {
+                fetches.incrementAndGet();
+                throw new MetricsException("down", null);
+            }
+        };
+        try {
+            coordinator.fetch("a", 60000, failing);
+            fail();
+        } catch (MetricsException e) {
+            assertEquals("down", e.getMessage());
+        }
+        coordinator.fetch("a", 60000, fetch);
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void testAbortedLeaderDoesNotFailTheJoinedBuilds() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final Callable<MetricsFetchCoordinator.Result> blocking = new Callable<MetricsFetchCoordinator.Result>() {
+            @Override
+            public MetricsFetchCoordinator.Result call() throws MetricsException {
+                fetches.incrementAndGet();
+                started.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                    throw new AssertionError();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MetricsException("Interrupted while collecting ticket metrics", e);
+                }
+            }
+        };
+        final AtomicReference<Throwable> leaderFailure = new AtomicReference<Throwable>();
+        Thread leader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    coordinator.fetch("a", 0, blocking);
+                } catch (Throwable t) {
+                    leaderFailure.set(t);
+                }
+            }
+        };
+        final AtomicReference<Object> joined = new AtomicReference<Object>();
+        Thread joiner = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    joined.set(coordinator.fetch("a", 0, fetch));
+                } catch (Throwable t) {
+                    joined.set(t);
+                }
+            }
+        };
+
+        leader.start();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        joiner.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (joiner.getState() != Thread.State.WAITING) {
+            assertTrue("the build did not join the fetch", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+
+        leader.interrupt();
+        leader.join(10000);
+        joiner.join(10000);
+        assertTrue(leaderFailure.get() instanceof MetricsException);
+        assertTrue(joined.get() instanceof MetricsFetchCoordinator.Result);
+        assertEquals(2, fetches.get());
+    }
+}
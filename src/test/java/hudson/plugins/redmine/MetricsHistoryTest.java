@@ -0,0 +1,142 @@
+package hudson.plugins.redmine;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import hudson.model.Result;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MetricsHistoryTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testAppendReplaceAndDelete() throws Exception {
+        File file = new File(tmp.getRoot(), MetricsHistory.FILE_NAME);
+        MetricsHistory history = new MetricsHistory(file);
+        history.create(Collections.singletonList(new MetricsHistory.Entry(1, 100L,
+                Arrays.asList(new MetricsResult("Open", 3)))));
+
+        history.append(2, 200L, Arrays.asList(new MetricsResult("Open", 2), new MetricsResult("Closed", 1)));
+        history.append(3, 300L, Arrays.asList(new MetricsResult("Closed", 4)));
+        history.append(2, 250L, Arrays.asList(new MetricsResult("Open", 1)));
+        history.delete(1);
+
+        // a fresh instance reads everything back from the file
+        List<MetricsHistory.Entry> entries = new MetricsHistory(file).getEntries();
+        assertEquals(2, entries.size());
+        assertEquals(2, entries.get(0).getBuildNumber());
+        assertEquals(250L, entries.get(0).getTimestamp());
+        assertEquals(1, entries.get(0).getMetrics().size());
+        assertEquals(3, entries.get(1).getBuildNumber());
+        assertEquals("Closed", entries.get(1).getMetrics().get(0).getStatus());
+        assertEquals(4, entries.get(1).getMetrics().get(0).getCount());
+    }
+
+    @Test
+    public void testTruncatedAppendIsDropped() throws Exception {
+        File file = new File(tmp.getRoot(), MetricsHistory.FILE_NAME);
+        MetricsHistory history = new MetricsHistory(file);
+        history.create(Collections.<MetricsHistory.Entry>emptyList());
+        history.append(1, 100L, Arrays.asList(new MetricsResult("Open", 3)));
+        long complete = file.length();
+        history.append(2, 200L, Arrays.asList(new MetricsResult("Open", 5)));
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(file.length() - 3);
+        raf.close();
+
+        history = new MetricsHistory(file);
+        assertEquals(1, history.getEntries().size());
+        assertEquals(complete, file.length());
+
+        history.append(3, 300L, Arrays.asList(new MetricsResult("New", 1)));
+        List<MetricsHistory.Entry> entries = new MetricsHistory(file).getEntries();
+        assertEquals(2, entries.size());
+        assertEquals("New", entries.get(1).getMetrics().get(0).getStatus());
+    }
+
+    @Test
+    public void testResultsAndPreviousLookup() throws Exception {
+        File file = new File(tmp.getRoot(), MetricsHistory.FILE_NAME);
+        MetricsHistory history = new MetricsHistory(file);
+        history.create(Arrays.asList(
+                new MetricsHistory.Entry(1, 100L, Arrays.asList(new MetricsResult("Open", 1)), Result.SUCCESS),
+                new MetricsHistory.Entry(3, 300L, Arrays.asList(new MetricsResult("Open", 3)))));
+        history.append(5, 500L, Arrays.asList(new MetricsResult("Open", 5)));
+        history.setResult(3, Result.FAILURE);
+        history.setResult(5, Result.SUCCESS);
+
+        List<MetricsHistory.Entry> entries = new MetricsHistory(file).getEntries();
+        assertEquals(Result.SUCCESS, entries.get(0).getResult());
+        assertEquals(Result.FAILURE, entries.get(1).getResult());
+        assertEquals(Result.SUCCESS, entries.get(2).getResult());
+
+        assertEquals(-1, MetricsAction.indexBefore(entries, 1));
+        assertEquals(0, MetricsAction.indexBefore(entries, 2));
+        assertEquals(0, MetricsAction.indexBefore(entries, 3));
+        assertEquals(1, MetricsAction.indexBefore(entries, 5));
+        assertEquals(2, MetricsAction.indexBefore(entries, 6));
+    }
+
+    @Test
+    public void testRevisionChangesWithTheHistory() throws Exception {
+        File file = new File(tmp.getRoot(), MetricsHistory.FILE_NAME);
+        MetricsHistory history = new MetricsHistory(file);
+        history.create(Arrays.asList(new MetricsHistory.Entry(1, 100L, Arrays.asList(new MetricsResult("Open", 1))),
+                new MetricsHistory.Entry(2, 200L, Arrays.asList(new MetricsResult("Open", 2)))));
+        String created = history.getRevision();
+        assertEquals(created, history.getRevision());
+
+        // the latest build stays the same through all of these
+        history.delete(1);
+        String deleted = history.getRevision();
+        assertFalse(created.equals(deleted));
+        history.append(2, 200L, Arrays.asList(new MetricsResult("Open", 3)));
+        String replaced = history.getRevision();
+        assertFalse(deleted.equals(replaced));
+        history.create(history.getEntries());
+        assertFalse(replaced.equals(history.getRevision()));
+    }
+
+    @Test
+    public void testCorruptFileIsRebuiltOnce() throws Exception {
+        File file = new File(tmp.getRoot(), MetricsHistory.FILE_NAME);
+        MetricsHistory history = new MetricsHistory(file);
+        history.create(Collections.<MetricsHistory.Entry>emptyList());
+        history.append(1, 100L, Arrays.asList(new MetricsResult("Open", 3)));
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.writeInt(0);
+        raf.close();
+
+        final AtomicInteger loads = new AtomicInteger();
+        Supplier<List<MetricsHistory.Entry>> builds = new Supplier<List<MetricsHistory.Entry>>() {
+            @Override
+            public List<MetricsHistory.Entry> get() {
+                loads.incrementAndGet();
+                return Arrays.asList(new MetricsHistory.Entry(1, 100L, Arrays.asList(new MetricsResult("Open", 3))),
+                        new MetricsHistory.Entry(2, 200L, Arrays.asList(new MetricsResult("Closed", 1))));
+            }
+        };
+        history = new MetricsHistory(file);
+        assertEquals(2, history.getEntries(builds).size());
+        assertEquals(2, history.getEntries(builds).size());
+        assertEquals(1, loads.get());
+
+        List<MetricsHistory.Entry> entries = new MetricsHistory(file).getEntries();
+        assertEquals(2, entries.size());
+        assertEquals("Closed", entries.get(1).getMetrics().get(0).getStatus());
+    }
+}
@@ -0,0 +1,69 @@
+package hudson.plugins.redmine;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class MetricsRenderPoolTest {
+
+    @Test
+    public void testConcurrentRequestsShareOneRendering() throws Exception {
+        final AtomicInteger renderings = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<MetricsGraphCache.Rendering> render = new Callable<MetricsGraphCache.Rendering>() {
+            @Override
+            public MetricsGraphCache.Rendering call() throws Exception {
+                renderings.incrementAndGet();
+                started.countDown();
+                release.await();
+                return new MetricsGraphCache.Rendering("1", new byte[0], "");
+            }
+        };
+        final AtomicReference<Thread> joining = new AtomicReference<Thread>();
+        ExecutorService requests = Executors.newFixedThreadPool(2);
+        try {
+            Future<MetricsGraphCache.Rendering> first = requests.submit(new Callable<MetricsGraphCache.Rendering>() {
+                @Override
+                public MetricsGraphCache.Rendering call() throws Exception {
+                    return MetricsRenderPool.render("job@1@640x480", render);
+                }
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Future<MetricsGraphCache.Rendering> second = requests.submit(new Callable<MetricsGraphCache.Rendering>() {
+                @Override
+                public MetricsGraphCache.Rendering call() throws Exception {
+                    joining.set(Thread.currentThread());
+                    return MetricsRenderPool.render("job@1@640x480", render);
+                }
+            });
+            awaitWaiting(joining);
+            release.countDown();
+            assertSame(first.get(), second.get());
+            assertEquals(1, renderings.get());
+        } finally {
+            requests.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits until the thread is set and blocked in the only timed wait of its request, which is the
+     * wait for the rendering in progress.
+     */
+    private static void awaitWaiting(AtomicReference<Thread> thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (thread.get() == null || thread.get().getState() != Thread.State.TIMED_WAITING) {
+            assertTrue("the request did not join the rendering", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package hudson.plugins.redmine;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MetricsSnapshotTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final IssueFilter NONE = new IssueFilter("", "");
+
+    @Test
+    public void testApplyUpdatesAndAppends() {
+        MetricsSnapshot snapshot = new MetricsSnapshot("key");
+        List<IssueRecord> issues = new ArrayList<IssueRecord>();
+        issues.add(issue(3, 1, "Open", 1, "Bug", 10));
+        issues.add(issue(1, 1, "Open", 2, "Support", 10));
+        issues.add(issue(2, 2, "Closed", 1, "Bug", 0));
+        snapshot.startSync(true);
+        snapshot.merge(issues);
+        snapshot.finishSync(100L);
+
+        List<IssueRecord> delta = new ArrayList<IssueRecord>();
+        delta.add(issue(3, 2, "Closed", 1, "Bug", 10));
+        delta.add(issue(5, 1, "Open", 1, "Bug", 10));
+        snapshot.startSync(false);
+        snapshot.merge(delta);
+        // the same new issue again on a shifted page
+        snapshot.merge(Collections.singletonList(issue(5, 1, "Open", 1, "Bug", 10)));
+        snapshot.finishSync(200L);
+
+        assertEquals(4, snapshot.size());
+        assertEquals(100L, snapshot.getLastFullSync());
+        assertEquals(200L, snapshot.getLastSync());
+
+        Map<String, Integer> counts = countByStatus(snapshot, new HashSet<Integer>(Arrays.asList(0, 10)), NONE);
+        assertEquals(Integer.valueOf(2), counts.get("Open"));
+        assertEquals(Integer.valueOf(2), counts.get("Closed"));
+
+        counts = countByStatus(snapshot, Collections.singleton(10), new IssueFilter("Support", ""));
+        assertEquals(Integer.valueOf(1), counts.get("Open"));
+        assertEquals(Integer.valueOf(1), counts.get("Closed"));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File file = new File(tmp.getRoot(), MetricsSnapshot.FILE_NAME);
+        assertNull(MetricsSnapshot.load(file));
+
+        MetricsSnapshot snapshot = new MetricsSnapshot("key");
+        snapshot.startSync(true);
+        snapshot.merge(Arrays.asList(issue(1, 1, "Open", 1, "Bug", 0), issue(2, 3, "Rejected", 1, "Bug", 0)));
+        snapshot.finishSync(100L);
+        snapshot.save(file);
+
+        MetricsSnapshot loaded = MetricsSnapshot.load(file);
+        assertEquals("key", loaded.getKey());
+        assertEquals(100L, loaded.getLastSync());
+        assertEquals(2, loaded.size());
+        Map<String, Integer> counts = countByStatus(loaded, Collections.singleton(0), new IssueFilter("", "Rejected"));
+        assertEquals(1, counts.size());
+        assertEquals(Integer.valueOf(1), counts.get("Open"));
+    }
+
+    @Test
+    public void testLocksAreForgottenOnceReleased() throws Exception {
+        final File file = new File(tmp.getRoot(), MetricsSnapshot.FILE_NAME);
+        MetricsSnapshot.lock(file);
+        final AtomicBoolean locked = new AtomicBoolean();
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    MetricsSnapshot.lock(file);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                locked.set(true);
+                MetricsSnapshot.unlock(file);
+            }
+        };
+        other.start();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (other.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        assertFalse(locked.get());
+        assertEquals(1, MetricsSnapshot.getLockCount());
+
+        MetricsSnapshot.unlock(file);
+        other.join(10000);
+        assertTrue(locked.get());
+        assertEquals(0, MetricsSnapshot.getLockCount());
+    }
+
+    private static Map<String, Integer> countByStatus(MetricsSnapshot snapshot, Set<Integer> versionIds,
+            IssueFilter filter) {
+        MetricsCube cube = new MetricsCube();
+        snapshot.fillCube(versionIds, filter, cube);
+        return cube.countBy(MetricsCube.Dimension.STATUS);
+    }
+
+    private static IssueRecord issue(int id, int statusId, String statusName, int trackerId, String trackerName,
+            int versionId) {
+        return new IssueRecord(id, trackerId, trackerName, statusId, statusName, versionId);
+    }
+}
@@ -0,0 +1,89 @@
+package hudson.plugins.redmine;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MetricsWindowTest {
+
+    private static final MetricsWindow ALL = new MetricsWindow(0, Long.MIN_VALUE, Long.MAX_VALUE, null);
+
+    @Test
+    public void testSelectLastBuildsAndDateRange() {
+        List<MetricsHistory.Entry> entries = entries(10, 1000L);
+
+        List<MetricsWindow.Point> points = new MetricsWindow(3, Long.MIN_VALUE, Long.MAX_VALUE, null).select(entries,
+                640);
+        assertEquals(3, points.size());
+        assertEquals("#8", points.get(0).getLabel());
+
+        points = new MetricsWindow(0, 3000L, 5000L, null).select(entries, 640);
+        assertEquals(3, points.size());
+        assertEquals(3, points.get(0).getEntry().getBuildNumber());
+        assertEquals(5, points.get(2).getEntry().getBuildNumber());
+    }
+
+    @Test
+    public void testDownsampleBoundedByWidth() {
+        List<MetricsHistory.Entry> entries = entries(5000, 1000L);
+        List<MetricsWindow.Point> points = ALL.select(entries, 400);
+        assertEquals(400 / MetricsWindow.MIN_POINT_WIDTH, points.size());
+        assertEquals(1, points.get(0).getEntry().getBuildNumber());
+        assertEquals(5000, points.get(points.size() - 1).getEntry().getBuildNumber());
+    }
+
+    @Test
+    public void testDownsampleKeepsPeak() {
+        List<MetricsHistory.Entry> entries = new ArrayList<MetricsHistory.Entry>();
+        for (int i = 1; i <= 1000; i++) {
+            int count = i == 500 ? 1000 : 10;
+            entries.add(new MetricsHistory.Entry(i, i * 1000L, Arrays.asList(new MetricsResult("Open", count))));
+        }
+        boolean peak = false;
+        for (MetricsWindow.Point point : ALL.select(entries, 80)) {
+            peak |= point.getEntry().getBuildNumber() == 500;
+        }
+        assertTrue(peak);
+    }
+
+    @Test
+    public void testBucketByDayKeepsLastBuild() {
+        Calendar cal = Calendar.getInstance();
+        cal.set(2026, Calendar.MARCH, 2, 9, 0, 0);
+        long morning = cal.getTimeInMillis();
+        List<MetricsHistory.Entry> entries = Arrays.asList(
+                new MetricsHistory.Entry(1, morning, Arrays.asList(new MetricsResult("Open", 1))),
+                new MetricsHistory.Entry(2, morning + 3600000L, Arrays.asList(new MetricsResult("Open", 2))),
+                new MetricsHistory.Entry(3, morning + 86400000L, Arrays.asList(new MetricsResult("Open", 3))));
+
+        List<MetricsWindow.Point> points = new MetricsWindow(0, Long.MIN_VALUE, Long.MAX_VALUE,
+                MetricsWindow.Bucket.DAY).select(entries, 640);
+        assertEquals(2, points.size());
+        assertEquals("2026-03-02", points.get(0).getLabel());
+        assertEquals(2, points.get(0).getEntry().getBuildNumber());
+        assertEquals("2026-03-03", points.get(1).getLabel());
+    }
+
+    @Test
+    public void testQueryStringHoldsOnlyTheParsedWindow() {
+        assertEquals("", ALL.toQueryString());
+        long from = MetricsWindow.parseDate("2026-03-02", Long.MIN_VALUE);
+        long to = MetricsWindow.parseDate("2026-03-09", Long.MAX_VALUE) + 86400000L - 1;
+        assertEquals("?builds=100&from=2026-03-02&to=2026-03-09&bucket=week",
+                new MetricsWindow(100, from, to, MetricsWindow.Bucket.WEEK).toQueryString());
+    }
+
+    private static List<MetricsHistory.Entry> entries(int n, long interval) {
+        List<MetricsHistory.Entry> entries = new ArrayList<MetricsHistory.Entry>();
+        for (int i = 1; i <= n; i++) {
+            entries.add(new MetricsHistory.Entry(i, i * interval,
+                    Arrays.asList(new MetricsResult("Open", i % 17), new MetricsResult("Closed", i))));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,190 @@
+package hudson.plugins.redmine;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.junit.Test;
+
+import com.taskadapter.redmineapi.RedmineException;
+import com.taskadapter.redmineapi.bean.IssueStatus;
+import com.taskadapter.redmineapi.bean.Project;
+import com.taskadapter.redmineapi.bean.Tracker;
+import com.taskadapter.redmineapi.bean.Version;
+
+public class RedmineDirectoryCacheTest {
+
+    private static final long TTL = 1000;
+    private static final long MISS_RELOAD_INTERVAL = 100;
+
+    private final AtomicLong now = new AtomicLong(1000000);
+    private final List<Runnable> refreshes = new ArrayList<Runnable>();
+    private final StubSource source = new StubSource();
+
+    private final RedmineDirectoryCache cache = new RedmineDirectoryCache(TTL, MISS_RELOAD_INTERVAL,
+            new LongSupplier() {
+                @Override
+                public long getAsLong() {
+                    return now.get();
+                }
+            }, new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    refreshes.add(command);
+                }
+            });
+
+    @Test
+    public void testEntriesLiveForTheTtl() throws RedmineException {
+        source.projects.add(project(1, "example"));
+        assertEquals(1, cache.getProjectId(source, "example"));
+        now.addAndGet(TTL / 2);
+        assertEquals(1, cache.getProjectId(source, "EXAMPLE"));
+        assertEquals(1, source.projectLoads);
+
+        source.projects.set(0, project(2, "example"));
+        now.addAndGet(TTL);
+        assertEquals(2, cache.getProjectId(source, "example"));
+        assertEquals(2, source.projectLoads);
+        assertTrue(refreshes.isEmpty());
+    }
+
+    @Test
+    public void testRefreshAheadServesTheCachedCopy() throws RedmineException {
+        source.statuses.add(new IssueStatus(1, "Open"));
+        assertEquals(1, cache.getStatuses(source).size());
+
+        source.statuses.add(new IssueStatus(2, "Closed"));
+        now.addAndGet(TTL * 9 / 10);
+        assertEquals(1, cache.getStatuses(source).size());
+        assertEquals(1, cache.getStatuses(source).size());
+        assertEquals("one refresh at a time", 1, refreshes.size());
+        assertEquals(1, source.statusLoads);
+
+        refreshes.remove(0).run();
+        assertEquals(2, source.statusLoads);
+        assertEquals(2, cache.getStatuses(source).size());
+        assertTrue(refreshes.isEmpty());
+    }
+
+    @Test
+    public void testMissReloadsOncePerIntervalAndName() throws RedmineException {
+        source.projects.add(project(1, "example"));
+        assertEquals(1, cache.getProjectId(source, "example"));
+
+        try {
+            cache.getProjectId(source, "created");
+            fail();
+        } catch (RedmineException e) {
+            assertEquals(2, source.projectLoads);
+        }
+
+        source.projects.add(project(2, "created"));
+        try {
+            cache.getProjectId(source, "created");
+            fail();
+        } catch (RedmineException e) {
+            assertEquals("the name just reloaded", 2, source.projectLoads);
+        }
+
+        source.projects.add(project(3, "other"));
+        assertEquals("another name reloads", 3, cache.getProjectId(source, "other"));
+        assertEquals(3, source.projectLoads);
+        assertEquals(2, cache.getProjectId(source, "created"));
+
+        now.addAndGet(MISS_RELOAD_INTERVAL);
+        try {
+            cache.getProjectId(source, "missing");
+            fail();
+        } catch (RedmineException e) {
+            assertEquals(4, source.projectLoads);
+        }
+    }
+
+    @Test
+    public void testVersionsTrackersAndStatusesReloadOnMiss() throws RedmineException {
+        source.versions.add(version(10, "1.0"));
+        source.trackers.add(tracker(1, "Bug"));
+        source.statuses.add(new IssueStatus(1, "Open"));
+        assertTrue(cache.getVersions(source, 1, Collections.<String>emptySet()).contains("1.0"));
+        assertEquals(1, cache.getTrackers(source).size());
+        assertEquals(1, cache.getStatuses(source).size());
+
+        source.versions.add(version(11, "1.1"));
+        source.trackers.add(tracker(2, "Feature"));
+        source.statuses.add(new IssueStatus(6, "Rejected"));
+        assertEquals(Arrays.asList(11), cache.getVersions(source, 1, Arrays.asList("1.0", "1.1")).getIds("1.1"));
+        assertEquals(2, cache.getTrackers(source, Collections.singleton("Feature")).size());
+        assertEquals(2, cache.getStatuses(source, Collections.singleton("Rejected")).size());
+        assertEquals(2, source.versionLoads);
+        assertEquals(2, source.trackerLoads);
+        assertEquals(2, source.statusLoads);
+
+        // names which are there do not reload
+        cache.getTrackers(source, Collections.singleton("Bug"));
+        assertEquals(2, source.trackerLoads);
+    }
+
+    private static Project project(int id, String identifier) {
+        Project project = new Project();
+        project.setId(id);
+        project.setIdentifier(identifier);
+        project.setName(identifier);
+        return project;
+    }
+
+    private static Version version(int id, String name) {
+        Version version = new Version();
+        version.setId(id);
+        version.setName(name);
+        return version;
+    }
+
+    private static Tracker tracker(int id, String name) {
+        Tracker tracker = new Tracker();
+        tracker.setId(id);
+        tracker.setName(name);
+        return tracker;
+    }
+
+    private static final class StubSource implements RedmineDirectoryCache.Source {
+        final List<Project> projects = new ArrayList<Project>();
+        final List<Version> versions = new ArrayList<Version>();
+        final List<Tracker> trackers = new ArrayList<Tracker>();
+        final List<IssueStatus> statuses = new ArrayList<IssueStatus>();
+        int projectLoads;
+        int versionLoads;
+        int trackerLoads;
+        int statusLoads;
+
+        @Override
+        public List<Project> getProjects() {
+            projectLoads++;
+            return new ArrayList<Project>(projects);
+        }
+
+        @Override
+        public List<Version> getVersions(int projectId) {
+            versionLoads++;
+            return new ArrayList<Version>(versions);
+        }
+
+        @Override
+        public List<Tracker> getTrackers() {
+            trackerLoads++;
+            return new ArrayList<Tracker>(trackers);
+        }
+
+        @Override
+        public List<IssueStatus> getStatuses() {
+            statusLoads++;
+            return new ArrayList<IssueStatus>(statuses);
+        }
+    }
+}
@@ -2,30 +2,44 @@ package hudson.plugins.redmine;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import mockit.NonStrictExpectations;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import com.taskadapter.redmineapi.RedmineException;
-import com.taskadapter.redmineapi.RedmineManager;
-import com.taskadapter.redmineapi.bean.Issue;
+import com.taskadapter.redmineapi.bean.IssueStatus;
 import com.taskadapter.redmineapi.bean.Project;
 import com.taskadapter.redmineapi.bean.Version;
 
 public class RedmineMetricsCalculatorTest {
 
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
     @Test
     public void testCalc() throws MetricsException, RedmineException {
         new NonStrictExpectations() {
-            RedmineManager redmineManager;
+            RedmineRestClient restClient;
 
             {
-                redmineManager.getProjects();
+                restClient.getProjects();
                 ArrayList<Project> projects = new ArrayList<Project>();
                 Project p = new Project();
                 p.setId(1);
@@ -33,7 +47,7 @@ public class RedmineMetricsCalculatorTest {
                 projects.add(p);
                 returns(projects);
 
-                redmineManager.getVersions(p.getId());
+                restClient.getVersions(p.getId());
                 ArrayList<Version> versions = new ArrayList<Version>();
                 Version v = new Version();
                 v.setId(1);
@@ -45,15 +59,10 @@ public class RedmineMetricsCalculatorTest {
                 params.put("project_id", p.getId().toString());
                 params.put("fixed_version_id", "1");
                 params.put("status_id", "*");
-                redmineManager.getIssues(params);
-                List<Issue> issues = new ArrayList<Issue>();
-                Issue issue = new Issue();
-                issue.setStatusId(1);
-                issue.setId(1);
-                issue.setSubject("Hello");
-                issue.setStatusName("Open");
-                issues.add(issue);
-                returns(issues);
+                restClient.getIssuePage(params, 0, IssuePages.PAGE_SIZE);
+                List<IssueRecord> issues = new ArrayList<IssueRecord>();
+                issues.add(new IssueRecord(1, 1, "Bug", 1, "Open", 1));
+                returns(new RedmineRestClient.IssuePage(issues, 1));
             }
         };
 
@@ -62,12 +71,127 @@ public class RedmineMetricsCalculatorTest {
         assertEquals(1, rmc.calc().size());
     }
 
+    @Test
+    public void testCalcCountOnly() throws MetricsException, RedmineException {
+        new NonStrictExpectations() {
+            RedmineRestClient restClient;
+
+            {
+                restClient.getProjects();
+                ArrayList<Project> projects = new ArrayList<Project>();
+                Project p = new Project();
+                p.setId(1);
+                p.setName("Example");
+                projects.add(p);
+                returns(projects);
+
+                restClient.getVersions(p.getId());
+                ArrayList<Version> versions = new ArrayList<Version>();
+                Version v = new Version();
+                v.setId(1);
+                v.setName("v1");
+                versions.add(v);
+                returns(versions);
+
+                restClient.getStatuses();
+                ArrayList<IssueStatus> statuses = new ArrayList<IssueStatus>();
+                statuses.add(new IssueStatus(1, "Open"));
+                statuses.add(new IssueStatus(2, "Closed"));
+                statuses.add(new IssueStatus(3, "Rejected"));
+                returns(statuses);
+
+                Map<String, String> params = new HashMap<String, String>();
+                params.put("project_id", "1");
+                params.put("fixed_version_id", "1");
+                params.put("status_id", "1");
+                restClient.getIssueCount(params);
+                returns(5);
+
+                params = new HashMap<String, String>();
+                params.put("project_id", "1");
+                params.put("fixed_version_id", "1");
+                params.put("status_id", "2");
+                restClient.getIssueCount(params);
+                returns(0);
+            }
+        };
+
+        RedmineMetricsCalculator rmc = new RedmineMetricsCalculator(
+                "http://example.com/", "APIKEY", "Example", "v1", "", "Rejected");
+        rmc.setCountOnly(true);
+        List<MetricsResult> results = rmc.calc();
+        assertEquals(1, results.size());
+        assertEquals("Open", results.get(0).getStatus());
+        assertEquals(5, results.get(0).getCount());
+    }
+
+    @Test
+    public void testCalcIncremental() throws Exception {
+        final List<IssueRecord> all = new ArrayList<IssueRecord>();
+        all.add(new IssueRecord(1, 1, "Bug", 1, "Open", 1));
+        all.add(new IssueRecord(2, 1, "Bug", 1, "Open", 1));
+        all.add(new IssueRecord(3, 1, "Bug", 1, "Open", 2));
+        final List<IssueRecord> updated = new ArrayList<IssueRecord>();
+        updated.add(new IssueRecord(2, 1, "Bug", 2, "Closed", 1));
+
+        new NonStrictExpectations() {
+            RedmineRestClient restClient;
+
+            {
+                restClient.getProjects();
+                ArrayList<Project> projects = new ArrayList<Project>();
+                Project p = new Project();
+                p.setId(1);
+                p.setName("Example");
+                projects.add(p);
+                returns(projects);
+
+                restClient.getVersions(p.getId());
+                ArrayList<Version> versions = new ArrayList<Version>();
+                Version v = new Version();
+                v.setId(1);
+                v.setName("v1");
+                versions.add(v);
+                returns(versions);
+
+                // all the issues of the project, then the ones updated since
+                restClient.getIssuePage((Map<String, String>) any, anyInt, anyInt);
+                returns(new RedmineRestClient.IssuePage(all, all.size()),
+                        new RedmineRestClient.IssuePage(updated, updated.size()));
+            }
+        };
+
+        File file = new File(tmp.getRoot(), MetricsSnapshot.FILE_NAME);
+        RedmineMetricsCalculator rmc = new RedmineMetricsCalculator(
+                "http://example.com/", "APIKEY", "Example", "v1", "", "");
+        rmc.setSnapshotFile(file);
+
+        List<MetricsResult> results = rmc.calc();
+        assertEquals(1, results.size());
+        assertEquals("Open", results.get(0).getStatus());
+        assertEquals(2, results.get(0).getCount());
+        long fullSync = MetricsSnapshot.load(file).getLastFullSync();
+
+        // the update is merged into the issues kept from the first build
+        results = rmc.calc();
+        assertEquals(2, results.size());
+        assertEquals("Closed", results.get(0).getStatus());
+        assertEquals(1, results.get(0).getCount());
+        assertEquals("Open", results.get(1).getStatus());
+        assertEquals(1, results.get(1).getCount());
+
+        MetricsSnapshot snapshot = MetricsSnapshot.load(file);
+        assertEquals(3, snapshot.size());
+        assertEquals(fullSync, snapshot.getLastFullSync());
+        assertEquals(0, MetricsSnapshot.getLockCount());
+    }
+
     @Test(expected = MetricsException.class)
     public void testNoSuchProject() throws MetricsException, RedmineException {
         new NonStrictExpectations() {
-            RedmineManager redmineManager;
+            RedmineRestClient restClient;
             {
-                redmineManager.getProjects();
+                restClient.getProjects();
                 ArrayList<Project> projects = new ArrayList<Project>();
                 Project p = new Project();
                 p.setId(1);
@@ -82,4 +206,102 @@ public class RedmineMetricsCalculatorTest {
         rmc.calc();
     }
 
+    @Test
+    public void testForEachVersionRunsEveryVersionOnceWithinThreads() throws Exception {
+        final List<String> versions = Arrays.asList("1", "2", "3", "4", "5", "6", "7", "8", "9");
+        final List<String> done = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger started = new AtomicInteger();
+        // the first three versions only finish once they all run at the same time
+        final CyclicBarrier together = new CyclicBarrier(3);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            RedmineMetricsCalculator.forEachVersion(versions, 3, executor, new RedmineMetricsCalculator.VersionTask() {
+                @Override
+                public void run(String version) throws InterruptedException {
+                    int now = running.incrementAndGet();
+                    int max = maxRunning.get();
+                    while (now > max && !maxRunning.compareAndSet(max, now)) {
+                        max = maxRunning.get();
+                    }
+                    try {
+                        if (started.incrementAndGet() <= 3) {
+                            together.await(10, TimeUnit.SECONDS);
+                        }
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    running.decrementAndGet();
+                    done.add(version);
+                }
+            });
+        } finally {
+            executor.shutdownNow();
+        }
+        Collections.sort(done);
+        assertEquals(versions, done);
+        assertEquals(3, maxRunning.get());
+    }
+
+    @Test
+    public void testForEachVersionRunsOnCallerWhenExecutorIsBusy() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                release.await();
+                return null;
+            }
+        });
+        final List<String> done = new ArrayList<String>();
+        try {
+            RedmineMetricsCalculator.forEachVersion(Arrays.asList("1", "2", "3"), 2, executor,
+                    new RedmineMetricsCalculator.VersionTask() {
+                        @Override
+                        public void run(String version) {
+                            done.add(version);
+                        }
+                    });
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+        assertEquals(Arrays.asList("1", "2", "3"), done);
+    }
+
+    @Test
+    public void testForEachVersionStopsAtFirstFailure() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                release.await();
+                return null;
+            }
+        });
+        final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+        try {
+            RedmineMetricsCalculator.forEachVersion(Arrays.asList("1", "2", "3"), 2, executor,
+                    new RedmineMetricsCalculator.VersionTask() {
+                        @Override
+                        public void run(String version) throws RedmineException {
+                            started.add(version);
+                            throw new RedmineException("version " + version);
+                        }
+                    });
+            fail();
+        } catch (RedmineException e) {
+            assertEquals("version 1", e.getMessage());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        // the worker queued behind the busy thread was cancelled before taking a version
+        assertEquals(Arrays.asList("1"), started);
+    }
+
 }
@@ -0,0 +1,73 @@
+package hudson.plugins.redmine;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class RedmineSiteTest {
+
+    private HttpServer server;
+    private RedmineWebsiteConfig config;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/projects.json", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = "{\"projects\":[],\"total_count\":0}".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        config = new RedmineWebsiteConfig("redmine", "http://127.0.0.1:" + server.getAddress().getPort() + "/",
+                "1.0", "refs,references");
+    }
+
+    @After
+    public void tearDown() {
+        RedmineSite.invalidateAll();
+        server.stop(0);
+    }
+
+    @Test
+    public void testSameConfigSharesTheSite() {
+        RedmineSite site = RedmineSite.of(config);
+        assertSame(site, RedmineSite.of(config));
+        assertSame(site.getDirectory("APIKEY"), RedmineSite.of(config).getDirectory("APIKEY"));
+        assertNotSame(site.getDirectory("APIKEY"), site.getDirectory("OTHER"));
+    }
+
+    @Test
+    public void testReplacedSiteKeepsServingItsBuilds() throws Exception {
+        RedmineSite site = RedmineSite.of(config);
+        RedmineHttpClient client = site.getHttpClient();
+
+        config.setReadTimeout(30);
+        RedmineSite replaced = RedmineSite.of(config);
+        assertNotSame(site, replaced);
+        assertSame(replaced, RedmineSite.of(config));
+        // a build which got the site before the change finishes with it
+        assertEquals(0, client.getJSON("projects.json", Collections.<String, String>emptyMap(), null)
+                .getInt("total_count"));
+
+        RedmineSite.invalidateAll();
+        assertNotSame(replaced, RedmineSite.of(config));
+        assertEquals(0, replaced.getHttpClient().getJSON("projects.json", Collections.<String, String>emptyMap(), null)
+                .getInt("total_count"));
+    }
+}
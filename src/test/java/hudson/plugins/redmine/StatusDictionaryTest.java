@@ -0,0 +1,104 @@
+package hudson.plugins.redmine;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StatusDictionaryTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testIdsSurviveReload() throws Exception {
+        File file = new File(tmp.getRoot(), StatusDictionary.FILE_NAME);
+        StatusDictionary dictionary = new StatusDictionary(file);
+        assertEquals(0, dictionary.idOf("New"));
+        assertEquals(1, dictionary.idOf("Closed"));
+        assertEquals(0, dictionary.idOf("New"));
+
+        StatusDictionary reloaded = new StatusDictionary(file);
+        assertSame("New".intern(), reloaded.nameOf(0));
+        assertEquals("Closed", reloaded.nameOf(1));
+        assertNull(reloaded.nameOf(2));
+        assertEquals(2, reloaded.idOf("Resolved"));
+    }
+
+    @Test
+    public void testEvictDeletedAndMovedJobs() throws Exception {
+        File deleted = tmp.newFolder("deleted");
+        File renamed = tmp.newFolder("renamed");
+        File kept = tmp.newFolder("kept");
+        StatusDictionary dictionary = StatusDictionary.of(deleted);
+        StatusDictionary moved = StatusDictionary.of(renamed);
+        StatusDictionary other = StatusDictionary.of(kept);
+        assertSame(dictionary, StatusDictionary.of(deleted));
+
+        assertTrue(renamed.renameTo(new File(tmp.getRoot(), "new-name")));
+        StatusDictionary.evict(deleted);
+        assertNotSame(dictionary, StatusDictionary.of(deleted));
+        assertNotSame(moved, StatusDictionary.of(renamed));
+        assertSame(other, StatusDictionary.of(kept));
+    }
+
+    @Test
+    public void testPartialLastLineIsDropped() throws Exception {
+        File file = new File(tmp.getRoot(), StatusDictionary.FILE_NAME);
+        append(file, "New\nClosed\nRes");
+
+        StatusDictionary dictionary = new StatusDictionary(file);
+        assertEquals("Closed", dictionary.nameOf(1));
+        assertNull(dictionary.nameOf(2));
+        assertEquals(2, dictionary.idOf("Resolved"));
+        assertEquals("New\nClosed\nResolved\n", read(file));
+    }
+
+    @Test
+    public void testFailedAppendIsRepairedBeforeTheNext() throws Exception {
+        File file = new File(tmp.getRoot(), StatusDictionary.FILE_NAME);
+        StatusDictionary dictionary = new StatusDictionary(file);
+        assertEquals(0, dictionary.idOf("New"));
+        assertEquals(1, dictionary.idOf("Closed"));
+        // as left by a write which failed halfway
+        append(file, "Rej");
+
+        assertEquals(2, dictionary.idOf("Resolved"));
+        assertEquals("Resolved", new StatusDictionary(file).nameOf(2));
+    }
+
+    @Test
+    public void testRemovedFileIsReadAgain() throws Exception {
+        File file = new File(tmp.getRoot(), StatusDictionary.FILE_NAME);
+        StatusDictionary dictionary = new StatusDictionary(file);
+        assertEquals(0, dictionary.idOf("New"));
+        assertEquals(1, dictionary.idOf("Closed"));
+        assertTrue(file.delete());
+
+        assertEquals(0, dictionary.idOf("Resolved"));
+        assertEquals(1, dictionary.idOf("New"));
+        StatusDictionary reloaded = new StatusDictionary(file);
+        assertEquals("Resolved", reloaded.nameOf(0));
+        assertEquals("New", reloaded.nameOf(1));
+    }
+
+    private static void append(File file, String text) throws IOException {
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,91 @@
+package hudson.plugins.redmine;
+
+import static org.junit.Assert.*;
+
+import hudson.plugins.redmine.dao.UserVisitor;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class UserDirectoryTest {
+
+    private static final String HASH = "2fd4e1c67a2d28fced849ee1bb76e7391b93eb12";
+    private static final String SALT = "7b3a2f5c9d1e4a6b8c0d2e4f6a8b0c1d";
+
+    private final List<Object[]> rows = new ArrayList<Object[]>();
+    private final List<Timestamp> queries = new ArrayList<Timestamp>();
+    private final Set<String> logins = new HashSet<String>(Arrays.asList("alice", "bob", "carol"));
+
+    private final UserDirectory directory = new UserDirectory(new UserDirectory.Source() {
+        @Override
+        public void load(Timestamp since, UserVisitor visitor) {
+            queries.add(since);
+            for (Object[] row : rows) {
+                visitor.visit((String) row[0], (String) row[1], (String) row[2], (Integer) row[3], (Timestamp) row[4]);
+            }
+            rows.clear();
+        }
+
+        @Override
+        public Set<String> loadLogins() {
+            return new HashSet<String>(logins);
+        }
+    }, 2);
+
+    @Test
+    public void testFullLoadThenDelta() throws Exception {
+        assertNull(directory.get("alice"));
+        rows.add(new Object[] { "alice", HASH, SALT, 1, new Timestamp(1000) });
+        rows.add(new Object[] { "bob", "not hex", null, 1, new Timestamp(2000) });
+        rows.add(new Object[] { "carol", HASH, SALT, 1, new Timestamp(1500) });
+        directory.sync();
+
+        assertNull(queries.get(0));
+        assertEquals(HASH, directory.get("alice").getPassword());
+        assertEquals(SALT, directory.get("alice").getSalt());
+        assertEquals("not hex", directory.get("bob").getPassword());
+        assertNull(directory.get("bob").getSalt());
+        // beyond the bound
+        assertNull(directory.get("carol"));
+
+        rows.add(new Object[] { "alice", HASH, SALT, UserDirectory.STATUS_LOCKED, new Timestamp(3000) });
+        directory.sync();
+        assertEquals(new Timestamp(2000), queries.get(1));
+        assertNull(directory.get("alice"));
+        assertEquals(1, directory.size());
+    }
+
+    @Test
+    public void testLockedUserComesBackOnceUnlocked() throws Exception {
+        rows.add(new Object[] { "alice", HASH, SALT, UserDirectory.STATUS_LOCKED, new Timestamp(1000) });
+        rows.add(new Object[] { "bob", HASH, SALT, 1, new Timestamp(1000) });
+        directory.sync();
+        assertNull(directory.get("alice"));
+        assertNotNull(directory.get("bob"));
+
+        rows.add(new Object[] { "alice", HASH, SALT, 1, new Timestamp(2000) });
+        directory.sync();
+        assertEquals(HASH, directory.get("alice").getPassword());
+    }
+
+    @Test
+    public void testDeletedUserIsDroppedOnDelta() throws Exception {
+        rows.add(new Object[] { "alice", HASH, SALT, 1, new Timestamp(1000) });
+        rows.add(new Object[] { "bob", HASH, SALT, 1, new Timestamp(1000) });
+        directory.sync();
+
+        // a deleted row leaves no updated_on behind
+        logins.remove("alice");
+        directory.sync();
+        assertEquals(new Timestamp(1000), queries.get(1));
+        assertNull(directory.get("alice"));
+        assertNotNull(directory.get("bob"));
+        assertEquals(1, directory.size());
+    }
+}
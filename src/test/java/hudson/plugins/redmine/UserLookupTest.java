@@ -0,0 +1,114 @@
+package hudson.plugins.redmine;
+
+import static org.junit.Assert.*;
+
+import hudson.plugins.redmine.dao.AbstractAuthDao;
+
+import org.junit.Test;
+
+public class UserLookupTest {
+
+    @Test
+    public void testSchemaIsCheckedOnce() {
+        StubDao dao = new StubDao();
+        UserLookup lookup = new UserLookup("users", "login", "hashed_password", "salt");
+        assertEquals("alice", lookup.get(dao, "alice").getUsername());
+        assertNull(lookup.get(dao, "nobody"));
+        assertEquals("bob", lookup.get(dao, "bob").getUsername());
+        assertEquals(1, dao.tableChecks);
+        assertEquals(1, dao.fieldChecks);
+        assertEquals(3, dao.queries);
+    }
+
+    @Test
+    public void testQueryErrorChecksTheSchemaAgain() {
+        StubDao dao = new StubDao();
+        UserLookup lookup = new UserLookup("users", "login", "hashed_password", null);
+        lookup.get(dao, "alice");
+
+        dao.failQueries = true;
+        try {
+            lookup.get(dao, "alice");
+            fail();
+        } catch (RedmineAuthenticationException e) {
+            assertEquals(1, dao.tableChecks);
+        }
+
+        dao.failQueries = false;
+        lookup.get(dao, "alice");
+        lookup.get(dao, "alice");
+        assertEquals(2, dao.tableChecks);
+        assertEquals(2, dao.fieldChecks);
+    }
+
+    @Test
+    public void testInvalidSchemaIsCheckedAgain() {
+        StubDao dao = new StubDao();
+        dao.userField = "mail";
+        UserLookup lookup = new UserLookup("users", "login", "hashed_password", null);
+        try {
+            lookup.get(dao, "alice");
+            fail();
+        } catch (RedmineAuthenticationException e) {
+            assertEquals("RedmineSecurity: Invalid User Field", e.getMessage());
+        }
+        assertEquals(0, dao.queries);
+
+        dao.userField = "login";
+        assertEquals("alice", lookup.get(dao, "alice").getUsername());
+        assertEquals(2, dao.fieldChecks);
+    }
+
+    /**
+     * Knows the users table, and every user but <code>nobody</code>.
+     */
+    private static final class StubDao extends AbstractAuthDao {
+        String userField = "login";
+        boolean failQueries;
+        int tableChecks;
+        int fieldChecks;
+        int queries;
+
+        @Override
+        public void open(String dbServer, String port, String databaseName, String dbUserName, String dbPassword) {
+        }
+
+        @Override
+        public String getDriverName() {
+            return "stub";
+        }
+
+        @Override
+        public String getConnectionString(String dbServer, String port, String databaseName) {
+            return "jdbc:stub:" + databaseName;
+        }
+
+        @Override
+        public boolean isTable(String table) {
+            tableChecks++;
+            return table.equals("users");
+        }
+
+        @Override
+        public boolean isField(String table, String field) {
+            fieldChecks++;
+            return field.equals(userField);
+        }
+
+        @Override
+        public RedmineUserData getRedmineUserData(String loginTable, String userField, String passField,
+                String saltField, String username) {
+            queries++;
+            if (failQueries) {
+                throw new RedmineAuthenticationException("RedmineSecurity: Query Error");
+            }
+            if (username.equals("nobody")) {
+                return null;
+            }
+            RedmineUserData userData = new RedmineUserData();
+            userData.setUsername(username);
+            userData.setPassword("hash");
+            return userData;
+        }
+    }
+}
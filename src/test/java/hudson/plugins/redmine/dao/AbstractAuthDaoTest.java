@@ -0,0 +1,24 @@
+package hudson.plugins.redmine.dao;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class AbstractAuthDaoTest {
+
+    @Test
+    public void testUserQuerySelectsTheUserColumns() {
+        AbstractAuthDao dao = new MySQLAuthDao();
+        assertEquals("SELECT login, hashed_password, salt FROM users WHERE login = ?",
+                dao.getUserQuery("users", "login", "hashed_password", "salt"));
+    }
+
+    @Test
+    public void testUserQueryWithoutSalt() {
+        AbstractAuthDao dao = new PostgreSQLAuthDao();
+        assertEquals("SELECT login, hashed_password FROM users WHERE login = ?",
+                dao.getUserQuery("users", "login", "hashed_password", null));
+        assertEquals("SELECT login, hashed_password FROM users WHERE login = ?",
+                dao.getUserQuery("users", "login", "hashed_password", " "));
+    }
+}
@@ -0,0 +1,237 @@
+package hudson.plugins.redmine.dao;
+
+import static org.junit.Assert.*;
+
+import hudson.plugins.redmine.RedmineAuthenticationException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ConnectionPoolTest {
+
+    private static final long IDLE_TIMEOUT = 60000;
+    private static final long VALIDATION_INTERVAL = 1000;
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private final AtomicLong now = new AtomicLong(1000000);
+    private final String url = "jdbc:stub:" + DATABASES.incrementAndGet();
+    private ConnectionPool pool;
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testBorrowTimesOut() throws Exception {
+        pool = newPool(1, 50);
+        Connection conn = pool.borrow();
+        long start = System.nanoTime();
+        try {
+            pool.borrow();
+            fail();
+        } catch (RedmineAuthenticationException e) {
+            assertTrue(System.nanoTime() - start >= 50000000L);
+        }
+
+        pool.release(conn);
+        assertSame(conn, pool.borrow());
+        assertEquals(1, StubDriver.opened(url).size());
+    }
+
+    @Test
+    public void testBrokenIdleConnectionIsDropped() throws Exception {
+        pool = newPool(2, 50);
+        Connection conn = pool.borrow();
+        pool.release(conn);
+        StubDriver.opened(url).get(0).broken = true;
+
+        // returned too recently to be checked
+        assertSame(conn, pool.borrow());
+        pool.release(conn);
+
+        now.addAndGet(VALIDATION_INTERVAL);
+        Connection replaced = pool.borrow();
+        assertNotSame(conn, replaced);
+        assertTrue(StubDriver.opened(url).get(0).closed);
+        assertEquals(2, StubDriver.opened(url).size());
+        assertEquals(1, pool.getOpenCount());
+
+        // a valid connection is handed out again after the check
+        pool.release(replaced);
+        now.addAndGet(VALIDATION_INTERVAL);
+        assertSame(replaced, pool.borrow());
+    }
+
+    @Test
+    public void testIdleConnectionsAreEvicted() throws Exception {
+        pool = newPool(2, 50);
+        Connection first = pool.borrow();
+        Connection second = pool.borrow();
+        pool.release(first);
+        now.addAndGet(IDLE_TIMEOUT / 2);
+        pool.release(second);
+
+        now.addAndGet(IDLE_TIMEOUT / 2);
+        pool.evictIdle();
+        assertTrue(StubDriver.opened(url).get(0).closed);
+        assertFalse(StubDriver.opened(url).get(1).closed);
+        assertEquals(1, pool.getOpenCount());
+        assertSame(second, pool.borrow());
+    }
+
+    @Test
+    public void testCloseWithBorrowedConnections() throws Exception {
+        pool = newPool(2, 50);
+        Connection idle = pool.borrow();
+        Connection borrowed = pool.borrow();
+        pool.release(idle);
+
+        pool.close();
+        assertTrue(StubDriver.opened(url).get(0).closed);
+        assertFalse("still in use", StubDriver.opened(url).get(1).closed);
+        assertEquals(1, pool.getOpenCount());
+        try {
+            pool.borrow();
+            fail();
+        } catch (RedmineAuthenticationException e) {
+            // closed
+        }
+
+        pool.release(borrowed);
+        assertTrue(StubDriver.opened(url).get(1).closed);
+        assertEquals(0, pool.getOpenCount());
+    }
+
+    private ConnectionPool newPool(int maxSize, long borrowTimeout) {
+        return new ConnectionPool(StubDriver.class.getName(), url, "redmine", "secret", maxSize, borrowTimeout,
+                IDLE_TIMEOUT, VALIDATION_INTERVAL, new LongSupplier() {
+                    @Override
+                    public long getAsLong() {
+                        return now.get();
+                    }
+                });
+    }
+
+    /**
+     * Driver of <code>jdbc:stub:</code> URLs, whose connections only know whether they are closed or
+     * broken.
+     */
+    public static final class StubDriver implements Driver {
+        private static final List<StubConnection> OPENED = new ArrayList<StubConnection>();
+
+        static {
+            try {
+                DriverManager.registerDriver(new StubDriver());
+            } catch (SQLException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        static List<StubConnection> opened(String url) {
+            List<StubConnection> result = new ArrayList<StubConnection>();
+            synchronized (OPENED) {
+                for (StubConnection conn : OPENED) {
+                    if (conn.url.equals(url)) {
+                        result.add(conn);
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            StubConnection conn = new StubConnection(url);
+            synchronized (OPENED) {
+                OPENED.add(conn);
+            }
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, conn);
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:stub:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() {
+            return Logger.getLogger(StubDriver.class.getName());
+        }
+    }
+
+    static final class StubConnection implements InvocationHandler {
+        final String url;
+        volatile boolean closed;
+        volatile boolean broken;
+
+        StubConnection(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("close")) {
+                closed = true;
+                return null;
+            }
+            if (name.equals("isValid")) {
+                return !closed && !broken;
+            }
+            if (name.equals("isClosed")) {
+                return closed;
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            throw new UnsupportedOperationException(name);
+        }
+    }
+}